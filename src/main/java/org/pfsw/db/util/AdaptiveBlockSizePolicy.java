@@ -0,0 +1,145 @@
+// ===========================================================================
+// CONTENT  : CLASS AdaptiveBlockSizePolicy
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+/**
+ * A policy that determines the size of the next ID block from the observed
+ * consumption rate. The goal is that each block lasts for a target time window.
+ * <p>
+ * The rate is derived from the size of the previous block and the time elapsed
+ * since it has been reserved. To avoid oscillation the block size changes by at most
+ * a factor of 2 per refill. It always stays within the configured bounds.
+ * <p>
+ * An instance holds the state of exactly one ID sequence, so it must not be shared
+ * between generators of different categories.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class AdaptiveBlockSizePolicy
+{
+  private static final int MAX_CHANGE_FACTOR = 2;
+
+  private final int minBlockSize;
+  private final int maxBlockSize;
+  private final long targetWindowMillis;
+  private boolean writeBack = false;
+  private long lastRefillTime = -1L;
+  private int lastBlockSize = 0;
+
+  /**
+   * Creates a new policy with the given bounds and target window.
+   *
+   * @param minBlockSize The smallest block size to be used (must be > 0).
+   * @param maxBlockSize The biggest block size to be used (must be >= minBlockSize).
+   * @param targetWindowMillis The time in milliseconds a block should last (must be > 0).
+   */
+  public static AdaptiveBlockSizePolicy create(int minBlockSize, int maxBlockSize, long targetWindowMillis)
+  {
+    return new AdaptiveBlockSizePolicy(minBlockSize, maxBlockSize, targetWindowMillis);
+  }
+
+  public AdaptiveBlockSizePolicy(int minBlockSize, int maxBlockSize, long targetWindowMillis)
+  {
+    super();
+    if ((minBlockSize <= 0) || (maxBlockSize < minBlockSize) || (targetWindowMillis <= 0))
+    {
+      throw new IllegalArgumentException(String.format("Invalid adaptive block size bounds: min=%d, max=%d, window=%d ms",
+          minBlockSize, maxBlockSize, targetWindowMillis));
+    }
+    this.minBlockSize = minBlockSize;
+    this.maxBlockSize = maxBlockSize;
+    this.targetWindowMillis = targetWindowMillis;
+  }
+
+  /**
+   * Returns the size for the block that is reserved now.
+   *
+   * @param initialBlockSize The block size to start with if there was no previous block.
+   */
+  public int nextBlockSize(int initialBlockSize)
+  {
+    return nextBlockSize(initialBlockSize, System.currentTimeMillis());
+  }
+
+  public int getMinBlockSize()
+  {
+    return this.minBlockSize;
+  }
+
+  public int getMaxBlockSize()
+  {
+    return this.maxBlockSize;
+  }
+
+  public long getTargetWindowMillis()
+  {
+    return this.targetWindowMillis;
+  }
+
+  /**
+   * Returns true if the chosen block size should be written back to the block size
+   * column of the category's row.
+   */
+  public boolean isWriteBack()
+  {
+    return this.writeBack;
+  }
+
+  /**
+   * Defines whether the chosen block size should be written back to the block size
+   * column of the category's row.
+   */
+  public AdaptiveBlockSizePolicy setWriteBack(boolean writeBack)
+  {
+    this.writeBack = writeBack;
+    return this;
+  }
+
+  /**
+   * Returns the most recently chosen block size or 0 if there was none yet.
+   */
+  public synchronized int getLastBlockSize()
+  {
+    return this.lastBlockSize;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(min=%d, max=%d, window=%d ms, last=%d)", getClass().getSimpleName(), getMinBlockSize(),
+        getMaxBlockSize(), getTargetWindowMillis(), getLastBlockSize());
+  }
+
+  protected synchronized int nextBlockSize(int initialBlockSize, long timestamp)
+  {
+    long size;
+    long elapsed;
+
+    if (lastRefillTime < 0)
+    {
+      size = initialBlockSize;
+    }
+    else
+    {
+      elapsed = Math.max(1L, timestamp - lastRefillTime);
+      size = lastBlockSize * getTargetWindowMillis() / elapsed;
+      size = limit(size, lastBlockSize / MAX_CHANGE_FACTOR, (long)lastBlockSize * MAX_CHANGE_FACTOR);
+    }
+    lastRefillTime = timestamp;
+    lastBlockSize = (int)limit(size, getMinBlockSize(), getMaxBlockSize());
+    return lastBlockSize;
+  }
+
+  protected long limit(long value, long min, long max)
+  {
+    return Math.max(min, Math.min(max, value));
+  }
+}
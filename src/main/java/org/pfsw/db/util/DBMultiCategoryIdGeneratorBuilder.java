@@ -1,28 +1,52 @@
 // ===========================================================================
 // CONTENT  : CLASS DBMultiCategoryIdGeneratorBuilder
 // AUTHOR   : Manfred Duchrow
-// VERSION  : 1.0 - 18/04/2020
+// VERSION  : 1.1 - 17/10/2026
 // HISTORY  :
 //  18/04/2020  mdu  CREATED
+//  17/10/2026  mdu  added -> adaptiveBlockSize()
+//  17/10/2026  mdu  added -> blockAllocation()
+//  17/10/2026  mdu  added -> useNativeSequences()
+//  17/10/2026  mdu  added -> rangeJournal()
+//  17/10/2026  mdu  added -> sharedRegion()
+//  17/10/2026  mdu  added -> stride()
+//  17/10/2026  mdu  added -> rowStripes()
+//  17/10/2026  mdu  added -> blockStore()
+//  17/10/2026  mdu  added -> coalesceRefills()
+//  17/10/2026  mdu  added -> refillScheduler()
+//  17/10/2026  mdu  added -> persistentConnections()
+//  17/10/2026  mdu  added -> warmUp()
+//  17/10/2026  mdu  added -> migratePrimaryKey()
+//  17/10/2026  mdu  added -> sharedRegion(File)
+//  17/10/2026  mdu  changed -> sharedRegion(File, int) accepts 0 and rejects negative chunk sizes
+//  17/10/2026  mdu  doc   -> useNativeSequences() takes the increment of an existing sequence as block size
 //
-// Copyright (c) 2020, by MDCS. All rights reserved.
+// Copyright (c) 2020-2026, by MDCS. All rights reserved.
 // ===========================================================================
 package org.pfsw.db.util;
 
 import static org.pfsw.text.StringUtil.*;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.sql.DataSource;
 
+import org.pfsw.db.DatabaseAccessException;
+
 /**
  * A builder supporting fluent API to create a database backed multi-category
  * identifier generator where the generators for the different categories all
  * share the same database table.
  *
  * @author Manfred Duchrow
- * @version 1.0
+ * @version 1.1
  */
 public class DBMultiCategoryIdGeneratorBuilder
 {
@@ -31,6 +55,23 @@ public class DBMultiCategoryIdGeneratorBuilder
   private final DefaultMultiCategoryIdentifierGenerator multiCategoryIdGenerator = new DefaultMultiCategoryIdentifierGenerator();
   private IdGeneratorTableSpec tableSpec = IdGeneratorTableSpec.create();
   private boolean isTableAlreadyCreated = false;
+  private AdaptiveBlockSizePolicy adaptiveBlockSizeTemplate = null;
+  private IdBlockAllocation blockAllocation = null;
+  private boolean useNativeSequences = false;
+  private File journalDirectory = null;
+  private int journalChunkSize = IdRangeJournal.DEFAULT_CHUNK_SIZE;
+  private File regionDirectory = null;
+  private int regionChunkSize = 0;
+  private int strideNodeCount = 1;
+  private int strideNodeIndex = 0;
+  private int rowStripeCount = 0;
+  private IdBlockStore blockStore = null;
+  private IdRefillCoalescer refillCoalescer = null;
+  private IdRefillScheduler refillScheduler = null;
+  private boolean persistentConnections = false;
+  private boolean migratePrimaryKey = false;
+  private int warmUpThreadCount = 0;
+  private final List<ObjectIdentifierDB> idGenerators = new ArrayList<ObjectIdentifierDB>();
 
   public static DBMultiCategoryIdGeneratorBuilder create(DataSource dataSource)
   {
@@ -155,27 +196,331 @@ public class DBMultiCategoryIdGeneratorBuilder
     return this;
   }
 
+  /**
+   * Lets the block size of each category adapt to its observed consumption rate,
+   * so that each block lasts for about the given time window.
+   * The block size of the category specifications is used for the first block.
+   *
+   * @param minBlockSize The smallest block size to be used (must be > 0).
+   * @param maxBlockSize The biggest block size to be used (must be >= minBlockSize).
+   * @param targetWindowMillis The time in milliseconds a block should last (must be > 0).
+   * @param writeBack If true the chosen block size is written to the block size column as well.
+   */
+  public DBMultiCategoryIdGeneratorBuilder adaptiveBlockSize(int minBlockSize, int maxBlockSize, long targetWindowMillis, boolean writeBack)
+  {
+    setAdaptiveBlockSizeTemplate(AdaptiveBlockSizePolicy.create(minBlockSize, maxBlockSize, targetWindowMillis).setWriteBack(writeBack));
+    return this;
+  }
+
+  /**
+   * Defines which SQL statements are used to reserve the ID blocks of all categories.
+   * By default {@link IdBlockAllocation#SELECT_FOR_UPDATE} is used.
+   */
+  public DBMultiCategoryIdGeneratorBuilder blockAllocation(IdBlockAllocation allocation)
+  {
+    setBlockAllocation(allocation);
+    return this;
+  }
+
+  /**
+   * Lets each category be backed by a native database sequence instead of a row in
+   * the ID table (see {@link SequenceIdentifierDB}). The name of each sequence is the
+   * table name and the category name concatenated by an underscore.
+   * If a sequence exists already, its increment replaces the block size of the category spec.
+   */
+  public DBMultiCategoryIdGeneratorBuilder useNativeSequences()
+  {
+    setUseNativeSequences(true);
+    return this;
+  }
+
+  /**
+   * Lets each category record its current ID range in a journal file in the given
+   * directory, so that the unused IDs can be consumed after an abrupt termination
+   * (see {@link IdRangeJournal}).
+   *
+   * @param directory The directory of the journal files (must not be null).
+   * @param chunkSize The maximum number of IDs per category lost on abrupt termination (must be > 0).
+   */
+  public DBMultiCategoryIdGeneratorBuilder rangeJournal(File directory, int chunkSize)
+  {
+    this.journalDirectory = directory;
+    this.journalChunkSize = chunkSize;
+    return this;
+  }
+
+  /**
+   * Lets each category share the blocks reserved in the database with other processes
+   * on the same host that use the same region directory (see {@link SharedIdRegion}).
+   * <p>
+   * Each chunk costs a lock and unlock system call on the region file plus a monitor,
+   * so the chunk size should be a multiple of the number of IDs a category typically
+   * consumes between two refills. If in doubt use {@link #sharedRegion(File)}.
+   *
+   * @param directory The directory of the region files (must not be null).
+   * @param chunkSize The number of IDs taken at once from a region or 0 to derive it
+   *                  from the consumption rate like {@link #sharedRegion(File)} does (must not be negative).
+   * @throws IllegalArgumentException if chunkSize is negative.
+   */
+  public DBMultiCategoryIdGeneratorBuilder sharedRegion(File directory, int chunkSize)
+  {
+    if (chunkSize < 0)
+    {
+      throw new IllegalArgumentException("chunkSize must not be negative but is " + chunkSize);
+    }
+    this.regionDirectory = directory;
+    this.regionChunkSize = chunkSize;
+    return this;
+  }
+
+  /**
+   * Like {@link #sharedRegion(File, int)}, but the chunks of each category are sized to last
+   * {@link ObjectIdentifierDB#DEFAULT_SHARED_CHUNK_WINDOW_MILLIS} at its observed consumption rate.
+   *
+   * @param directory The directory of the region files (must not be null).
+   */
+  public DBMultiCategoryIdGeneratorBuilder sharedRegion(File directory)
+  {
+    return sharedRegion(directory, 0);
+  }
+
+  /**
+   * Lets each category generate only IDs that are congruent to nodeIndex modulo nodeCount
+   * from its own row (see {@link ObjectIdentifierDB#setStride(int, int)}).
+   *
+   * @param nodeCount The number of nodes (must be > 0).
+   * @param nodeIndex The index of this node (0 .. nodeCount - 1).
+   */
+  public DBMultiCategoryIdGeneratorBuilder stride(int nodeCount, int nodeIndex)
+  {
+    this.strideNodeCount = nodeCount;
+    this.strideNodeIndex = nodeIndex;
+    return this;
+  }
+
+  /**
+   * Splits each category into the given number of rows that are used for the refills
+   * in round-robin order (see {@link ObjectIdentifierDB#setRowStripeCount(int)}).
+   */
+  public DBMultiCategoryIdGeneratorBuilder rowStripes(int count)
+  {
+    this.rowStripeCount = count;
+    return this;
+  }
+
+  /**
+   * Lets all categories reserve their blocks in the given store instead of the
+   * ID table (see {@link IdBlockStore}).
+   */
+  public DBMultiCategoryIdGeneratorBuilder blockStore(IdBlockStore store)
+  {
+    this.blockStore = store;
+    return this;
+  }
+
+  /**
+   * Lets all categories reserve the blocks they need within the given window
+   * together in one transaction (see {@link IdRefillCoalescer}).
+   *
+   * @param windowMillis The time the first refill of a batch waits for further ones.
+   */
+  public DBMultiCategoryIdGeneratorBuilder coalesceRefills(long windowMillis)
+  {
+    this.refillCoalescer = IdRefillCoalescer.create(getDataSource()).setWindowMillis(windowMillis);
+    return this;
+  }
+
+  /**
+   * Lets all categories prefetch their blocks by the given scheduler, which bounds
+   * the number of concurrent refills and serves the categories that run out first
+   * with priority (see {@link IdRefillScheduler}).
+   */
+  public DBMultiCategoryIdGeneratorBuilder refillScheduler(IdRefillScheduler scheduler)
+  {
+    this.refillScheduler = scheduler;
+    return this;
+  }
+
+  /**
+   * Lets each category keep one connection with its prepared statements open across
+   * the refills (see {@link ObjectIdentifierDB#setPersistentConnection(boolean)}).
+   */
+  public DBMultiCategoryIdGeneratorBuilder persistentConnections()
+  {
+    this.persistentConnections = true;
+    return this;
+  }
+
+  /**
+   * Lets the generators add the primary key on the category column to an existing table
+   * that has none (see {@link ObjectIdentifierDB#setPrimaryKeyMigration(boolean)}).
+   */
+  public DBMultiCategoryIdGeneratorBuilder migratePrimaryKey()
+  {
+    this.migratePrimaryKey = true;
+    return this;
+  }
+
+  /**
+   * Lets {@link #build()} create the table and the rows of all categories if necessary
+   * and load the first block of each category, so the first identifiers are served
+   * from memory (see {@link ObjectIdentifierDB#warmUp()}). The categories are warmed
+   * up in parallel and build() returns when all of them are done.
+   *
+   * @param threadCount The maximum number of categories warmed up at the same time (must be > 0).
+   */
+  public DBMultiCategoryIdGeneratorBuilder warmUp(int threadCount)
+  {
+    if (threadCount <= 0)
+    {
+      throw new IllegalArgumentException("threadCount must be > 0 but is " + threadCount);
+    }
+    this.warmUpThreadCount = threadCount;
+    return this;
+  }
+
+  /**
+   * Returns the multi-category generator with the ID producers of all added categories.
+   *
+   * @throws DatabaseAccessException if a warm-up is requested and fails for any category.
+   */
   public MultiCategoryIdentifierGenerator build()
   {
     for (IdGeneratorCategorySpec categorySpec : getCategorySpecs())
     {
       regsiterIdGenerator(categorySpec);
     }
+    if ((warmUpThreadCount > 0) && !getIdGenerators().isEmpty())
+    {
+      warmUpIdGenerators();
+    }
     return getMultiCategoryIdGenerator();
   }
 
   protected void regsiterIdGenerator(IdGeneratorCategorySpec categorySpec)
   {
     ObjectIdentifierDBBuilder builder;
+    ObjectIdentifierDB idGenerator;
 
     //@formatter:off
-    builder = ObjectIdentifierDBBuilder.create(getDataSource())
+    builder = createIdGeneratorBuilder()
         .setTableSpec(getTableSpec())
         .tableAlreadyCreated(isTableAlreadyCreated())
         .configureCategory(categorySpec)
+        .setBlockAllocation(getBlockAllocation())
     ;
     //@formatter:on
-    getMultiCategoryIdGenerator().register(categorySpec.getCategoryName(), builder.build());
+    if (getAdaptiveBlockSizeTemplate() != null)
+    {
+      // Each category needs its own policy instance because the policy keeps track of the consumption
+      //@formatter:off
+      builder.adaptiveBlockSize(getAdaptiveBlockSizeTemplate().getMinBlockSize(), getAdaptiveBlockSizeTemplate().getMaxBlockSize(), 
+          getAdaptiveBlockSizeTemplate().getTargetWindowMillis(), getAdaptiveBlockSizeTemplate().isWriteBack());
+      //@formatter:on
+    }
+    if (journalDirectory != null)
+    {
+      builder.rangeJournal(journalDirectory, journalChunkSize);
+    }
+    if (regionDirectory != null)
+    {
+      builder.sharedRegion(regionDirectory, regionChunkSize);
+    }
+    if (strideNodeCount > 1)
+    {
+      builder.stride(strideNodeCount, strideNodeIndex);
+    }
+    if (rowStripeCount > 1)
+    {
+      builder.rowStripes(rowStripeCount);
+    }
+    if (blockStore != null)
+    {
+      builder.setBlockStore(blockStore);
+    }
+    if (refillCoalescer != null)
+    {
+      builder.setRefillCoalescer(refillCoalescer);
+    }
+    if (refillScheduler != null)
+    {
+      builder.setRefillScheduler(refillScheduler);
+    }
+    if (persistentConnections)
+    {
+      builder.persistentConnection();
+    }
+    if (migratePrimaryKey)
+    {
+      builder.migratePrimaryKey();
+    }
+    idGenerator = builder.build();
+    getIdGenerators().add(idGenerator);
+    getMultiCategoryIdGenerator().register(categorySpec.getCategoryName(), idGenerator);
+  }
+
+  /**
+   * Warms up all created generators with up to the configured number of threads
+   * and waits until all of them are done. The first failure is rethrown.
+   */
+  protected void warmUpIdGenerators()
+  {
+    ExecutorService executor;
+    List<Future<ObjectIdentifierDB>> results = new ArrayList<Future<ObjectIdentifierDB>>();
+
+    executor = Executors.newFixedThreadPool(Math.min(warmUpThreadCount, getIdGenerators().size()));
+    try
+    {
+      for (final ObjectIdentifierDB idGenerator : getIdGenerators())
+      {
+        results.add(executor.submit(new Callable<ObjectIdentifierDB>()
+        {
+          @Override
+          public ObjectIdentifierDB call()
+          {
+            return idGenerator.warmUp();
+          }
+        }));
+      }
+      for (Future<ObjectIdentifierDB> result : results)
+      {
+        awaitWarmUp(result);
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  protected void awaitWarmUp(Future<ObjectIdentifierDB> result)
+  {
+    try
+    {
+      result.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new DatabaseAccessException(e, "Interrupted while warming up the ID generators");
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException)e.getCause();
+      }
+      throw new DatabaseAccessException(e.getCause(), "Warming up an ID generator failed");
+    }
+  }
+
+  protected ObjectIdentifierDBBuilder createIdGeneratorBuilder()
+  {
+    if (isUseNativeSequences())
+    {
+      return ObjectIdentifierDBBuilder.createForSequence(getDataSource());
+    }
+    return ObjectIdentifierDBBuilder.create(getDataSource());
   }
 
   /**
@@ -213,6 +558,11 @@ public class DBMultiCategoryIdGeneratorBuilder
     return this.categorySpecs;
   }
 
+  protected List<ObjectIdentifierDB> getIdGenerators()
+  {
+    return this.idGenerators;
+  }
+
   protected DefaultMultiCategoryIdentifierGenerator getMultiCategoryIdGenerator()
   {
     return this.multiCategoryIdGenerator;
@@ -227,4 +577,34 @@ public class DBMultiCategoryIdGeneratorBuilder
   {
     this.isTableAlreadyCreated = isTableCreated;
   }
+
+  protected AdaptiveBlockSizePolicy getAdaptiveBlockSizeTemplate()
+  {
+    return this.adaptiveBlockSizeTemplate;
+  }
+
+  protected void setAdaptiveBlockSizeTemplate(AdaptiveBlockSizePolicy policy)
+  {
+    this.adaptiveBlockSizeTemplate = policy;
+  }
+
+  protected IdBlockAllocation getBlockAllocation()
+  {
+    return this.blockAllocation;
+  }
+
+  protected void setBlockAllocation(IdBlockAllocation allocation)
+  {
+    this.blockAllocation = allocation;
+  }
+
+  protected boolean isUseNativeSequences()
+  {
+    return this.useNativeSequences;
+  }
+
+  protected void setUseNativeSequences(boolean useSequences)
+  {
+    this.useNativeSequences = useSequences;
+  }
 }
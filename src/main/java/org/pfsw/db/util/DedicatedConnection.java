@@ -0,0 +1,279 @@
+// ===========================================================================
+// CONTENT  : CLASS DedicatedConnection
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.pfsw.db.LoggerProvider;
+import org.pfsw.logging.Logger2;
+
+/**
+ * A database connection with autoCommit=false that is kept open and used exclusively by
+ * one owner at a time, together with the statements prepared on it.
+ * The connection is opened with the first {@link #acquire()} and validated before it
+ * gets used after being idle or after a rollback. If it has been closed or is no longer
+ * valid it is replaced by a new one transparently.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class DedicatedConnection
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final long DEFAULT_VALIDATION_IDLE_MILLIS = 1000L;
+
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final DataSource dataSource;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+  private long validationIdleMillis = DEFAULT_VALIDATION_IDLE_MILLIS;
+  private Connection connection = null;
+  private long lastUseTime = 0L;
+  private boolean validationRequired = false;
+  private long connectCount = 0L;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  public static DedicatedConnection create(DataSource ds)
+  {
+    return new DedicatedConnection(ds);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public DedicatedConnection(DataSource ds)
+  {
+    super();
+    this.dataSource = ds;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Returns the connection for the exclusive use by the current thread until
+   * {@link #release()} is called. Calls can be nested by the same thread.
+   */
+  public Connection acquire() throws SQLException
+  {
+    lock.lock();
+    try
+    {
+      if (lock.getHoldCount() == 1)
+      {
+        ensureValidConnection();
+      }
+      return connection;
+    }
+    catch (SQLException ex)
+    {
+      lock.unlock();
+      throw ex;
+    }
+    catch (RuntimeException ex)
+    {
+      lock.unlock();
+      throw ex;
+    }
+  }
+
+  /**
+   * Ends the use of the connection that has been acquired before.
+   */
+  public void release()
+  {
+    if (lock.getHoldCount() == 1)
+    {
+      lastUseTime = System.currentTimeMillis();
+    }
+    lock.unlock();
+  }
+
+  /**
+   * Returns true if the given connection is the one held by this object.
+   */
+  public boolean isConnection(Connection conn)
+  {
+    return (conn != null) && (conn == connection);
+  }
+
+  /**
+   * Returns a statement for the given SQL, prepared only once per physical connection.
+   * Must only be called while the connection is acquired.
+   */
+  public PreparedStatement prepareStatement(String sql) throws SQLException
+  {
+    PreparedStatement statement;
+
+    statement = statements.get(sql);
+    if (statement == null)
+    {
+      statement = connection.prepareStatement(sql);
+      statements.put(sql, statement);
+    }
+    return statement;
+  }
+
+  /**
+   * Returns true if the given statement is kept for further use.
+   */
+  public boolean isCached(Statement statement)
+  {
+    return lock.isHeldByCurrentThread() && statements.containsValue(statement);
+  }
+
+  /**
+   * Forces the validation of the connection before its next use.
+   */
+  public void invalidate()
+  {
+    validationRequired = true;
+  }
+
+  public long getValidationIdleMillis()
+  {
+    return this.validationIdleMillis;
+  }
+
+  /**
+   * Sets the idle time after which the connection gets validated before its next use.
+   * A value of 0 validates it before each use.
+   */
+  public DedicatedConnection setValidationIdleMillis(long millis)
+  {
+    if (millis >= 0)
+    {
+      this.validationIdleMillis = millis;
+    }
+    return this;
+  }
+
+  /**
+   * Returns how often a physical connection has been opened.
+   */
+  public long getConnectCount()
+  {
+    return this.connectCount;
+  }
+
+  /**
+   * Closes the statements and the connection. A later {@link #acquire()} opens a new one.
+   */
+  public void close()
+  {
+    lock.lock();
+    try
+    {
+      disconnect();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  protected void ensureValidConnection() throws SQLException
+  {
+    if ((connection != null) && !isValid(isValidationRequired()))
+    {
+      logger().infof("Replacing broken dedicated DB connection");
+      disconnect();
+    }
+    if (connection == null)
+    {
+      connection = getDataSource().getConnection();
+      connection.setAutoCommit(false);
+      connectCount++;
+    }
+    validationRequired = false;
+  }
+
+  protected boolean isValidationRequired()
+  {
+    return validationRequired || ((System.currentTimeMillis() - lastUseTime) >= getValidationIdleMillis());
+  }
+
+  /**
+   * Returns false if the connection has been closed or, with a round trip to the database,
+   * if it is no longer usable.
+   */
+  protected boolean isValid(boolean withRoundTrip)
+  {
+    try
+    {
+      if (connection.isClosed())
+      {
+        return false;
+      }
+      return !withRoundTrip || connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    }
+    catch (SQLException ex)
+    {
+      return false;
+    }
+  }
+
+  protected void disconnect()
+  {
+    for (PreparedStatement statement : statements.values())
+    {
+      try
+      {
+        statement.close();
+      }
+      catch (SQLException ex)
+      {
+        // The connection might be broken anyway
+      }
+    }
+    statements.clear();
+    if (connection != null)
+    {
+      try
+      {
+        connection.close();
+      }
+      catch (SQLException ex)
+      {
+        logger().warnf(ex, "Closing DB connection failed");
+      }
+      connection = null;
+    }
+  }
+
+  protected Logger2 logger()
+  {
+    return LoggerProvider.getLogger();
+  }
+
+  protected DataSource getDataSource()
+  {
+    return this.dataSource;
+  }
+}
@@ -1,16 +1,20 @@
 // ===========================================================================
 // CONTENT  : CLASS DefaultMultiCategoryIdentifierGenerator
 // AUTHOR   : Manfred Duchrow
-// VERSION  : 1.0 - 18/04/2020
+// VERSION  : 1.2 - 17/10/2026
 // HISTORY  :
 //  18/04/2020  mdu  CREATED
+//  17/10/2026  mdu  added -> reserveIdentifiers()
+//  17/10/2026  mdu  added -> close()
 //
-// Copyright (c) 2020, by MDCS. All rights reserved.
+// Copyright (c) 2020-2026, by MDCS. All rights reserved.
 // ===========================================================================
 package org.pfsw.db.util;
 
 import static org.pfsw.text.StringUtil.*;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,11 +29,14 @@ import org.pfsw.logging.Logger2;
  * ID producers once and then will be used with that setup for ID generation.
  * Registering further ID producers at a later time might cause errors because the
  * underlying ID producer registry is not thread-safe.
+ * <p>
+ * On orderly shutdown {@link #close()} should be called to let the registered ID producers
+ * release their resources and unused identifiers.
  *
  * @author Manfred Duchrow
- * @version 1.0
+ * @version 1.2
  */
-public class DefaultMultiCategoryIdentifierGenerator implements MultiCategoryIdentifierGenerator
+public class DefaultMultiCategoryIdentifierGenerator implements MultiCategoryIdentifierGenerator, Closeable
 {
   private final Map<String, ObjectIdentifierProducer> generatorRegistry = new HashMap<String, ObjectIdentifierProducer>();
 
@@ -72,6 +79,50 @@ public class DefaultMultiCategoryIdentifierGenerator implements MultiCategoryIde
     }
   }
   
+  @Override
+  public IdRange reserveIdentifiers(String category, int count)
+  {
+    try
+    {
+      return getIdProducer(category).reserveIdentifiers(count);
+    }
+    catch (IdentifierGenerationException e)
+    {
+      throw e;
+    }
+    catch (RuntimeException e)
+    {
+      throw new IdentifierGenerationException(e, "Unable to reserve %d identifiers for category '%s'", count, category);
+    }
+  }
+
+  /**
+   * Closes all registered ID producers that implement {@link Closeable}.
+   * Failures are logged and do not prevent closing the other ID producers.
+   */
+  @Override
+  public void close()
+  {
+    for (ObjectIdentifierProducer idProducer : getGeneratorRegistry().values())
+    {
+      if (idProducer instanceof Closeable)
+      {
+        try
+        {
+          ((Closeable)idProducer).close();
+        }
+        catch (IOException e)
+        {
+          log().warnf(e, "Closing %s failed", idProducer);
+        }
+        catch (RuntimeException e)
+        {
+          log().warnf(e, "Closing %s failed", idProducer);
+        }
+      }
+    }
+  }
+
   /**
    * Registers the given identifier producer for the specified category.
    * If the category is null or blank or the ID producer is null, a warning will be logged
@@ -0,0 +1,121 @@
+// ===========================================================================
+// CONTENT  : CLASS FileIdBlockStore
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.pfsw.bif.identifier.IdentifierGenerationException;
+
+/**
+ * A block store that keeps the next identifier of each category in a local
+ * memory-mapped file (see {@link ObjectIdentifierFile}). The files are locked
+ * exclusively, so only one store at a time can use a directory.
+ * {@link #close()} writes the exact next identifiers to the files and releases them.
+ * <p>
+ * In any critical situation this class throws an {@link IdentifierGenerationException}.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class FileIdBlockStore implements IdBlockStore, Closeable
+{
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final File directory;
+  private final Map<String, ObjectIdentifierFile> files = new ConcurrentHashMap<String, ObjectIdentifierFile>();
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new store with its files in the given directory.
+   *
+   * @param directory The directory of the files. It gets created if necessary (must not be null).
+   */
+  public static FileIdBlockStore create(File directory)
+  {
+    return new FileIdBlockStore(directory);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public FileIdBlockStore(File directory)
+  {
+    super();
+    this.directory = directory;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Opens the category's file. It gets created if necessary.
+   */
+  @Override
+  public synchronized boolean initializeCategory(String category, long startId, int blockSize)
+  {
+    if (!files.containsKey(category))
+    {
+      files.put(category, ObjectIdentifierFile.open(getDirectory(), category, startId).setBlockSize(blockSize));
+    }
+    return true;
+  }
+
+  @Override
+  public IdRange reserveRange(String category, int count)
+  {
+    ObjectIdentifierFile file;
+
+    file = files.get(category);
+    if (file == null)
+    {
+      return null;
+    }
+    return file.reserveBlock(count);
+  }
+
+  /**
+   * The files only contain a high-water mark, so this always returns false.
+   */
+  @Override
+  public boolean releaseRange(String category, IdRange range)
+  {
+    return false;
+  }
+
+  /**
+   * Closes the files of all categories.
+   */
+  @Override
+  public synchronized void close()
+  {
+    for (ObjectIdentifierFile file : files.values())
+    {
+      file.close();
+    }
+    files.clear();
+  }
+
+  public File getDirectory()
+  {
+    return this.directory;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s('%s')", getClass().getSimpleName(), getDirectory().getPath());
+  }
+}
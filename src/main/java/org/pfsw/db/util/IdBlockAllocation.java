@@ -0,0 +1,80 @@
+// ===========================================================================
+// CONTENT  : ENUM IdBlockAllocation
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.1 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  added -> OPTIMISTIC
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+/**
+ * Defines the SQL statements that are used to reserve the next block of IDs
+ * in the database table.
+ *
+ * @author Manfred Duchrow
+ * @version 1.1
+ */
+public enum IdBlockAllocation
+{
+  /**
+   * Reads the next ID with SELECT ... FOR UPDATE, writes the new value with a
+   * separate UPDATE and commits. This works with all databases but needs three
+   * round trips while holding the row lock.
+   */
+  SELECT_FOR_UPDATE,
+  /**
+   * Increments the next ID with UPDATE ... SET NEXTID = NEXTID + ? and reads the
+   * new value with a SELECT in the same transaction. The row lock is acquired by
+   * the UPDATE, so it is held for one round trip less than with {@link #SELECT_FOR_UPDATE}.
+   */
+  UPDATE_THEN_SELECT,
+  /**
+   * Increments the next ID and returns the new value with a single
+   * UPDATE ... RETURNING statement. Supported by PostgreSQL, Firebird and SQLite for example.
+   */
+  UPDATE_RETURNING,
+  /**
+   * Reads the next ID without any lock and writes the new value with
+   * UPDATE ... WHERE NEXTID = &lt;value read&gt;. If another process changed the row
+   * in the meantime, no row gets updated and the allocation is retried after a
+   * randomized backoff. No row lock is held between the round trips.
+   */
+  OPTIMISTIC,
+  /**
+   * Uses {@link #UPDATE_RETURNING} if the database is known to support it,
+   * otherwise {@link #UPDATE_THEN_SELECT}. {@link #OPTIMISTIC} is never chosen automatically.
+   */
+  AUTO;
+
+  private static final String[] DATABASES_WITH_UPDATE_RETURNING = { "postgresql", "firebird", "sqlite" };
+
+  /**
+   * Returns the allocation that is best suited for the database with the given product name
+   * (see java.sql.DatabaseMetaData.getDatabaseProductName()).
+   * Returns this allocation for all values but {@link #AUTO}.
+   */
+  public IdBlockAllocation resolve(String databaseProductName)
+  {
+    String name;
+
+    if (this != AUTO)
+    {
+      return this;
+    }
+    if (databaseProductName != null)
+    {
+      name = databaseProductName.toLowerCase();
+      for (String database : DATABASES_WITH_UPDATE_RETURNING)
+      {
+        if (name.contains(database))
+        {
+          return UPDATE_RETURNING;
+        }
+      }
+    }
+    return UPDATE_THEN_SELECT;
+  }
+}
@@ -0,0 +1,145 @@
+// ===========================================================================
+// CONTENT  : CLASS IdBlockAllocationStatistics
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters about the reservation of ID blocks in the database by one generator.
+ * They allow to compare the different {@link IdBlockAllocation} modes for a specific workload.
+ * The conflict, retry and failure counters are only used by {@link IdBlockAllocation#OPTIMISTIC}.
+ * <p>
+ * All counters are updated atomically, so they can be read at any time.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class IdBlockAllocationStatistics
+{
+  private final AtomicLong allocationCount = new AtomicLong(0);
+  private final AtomicLong allocationNanos = new AtomicLong(0);
+  private final AtomicLong conflictCount = new AtomicLong(0);
+  private final AtomicLong retryCount = new AtomicLong(0);
+  private final AtomicLong failureCount = new AtomicLong(0);
+  private final AtomicLong backoffMillis = new AtomicLong(0);
+
+  public IdBlockAllocationStatistics()
+  {
+    super();
+  }
+
+  /**
+   * Returns the number of blocks that have been reserved successfully.
+   */
+  public long getAllocationCount()
+  {
+    return allocationCount.get();
+  }
+
+  /**
+   * Returns the total time in nanoseconds spent for the successful reservations,
+   * including all retries and backoff.
+   */
+  public long getAllocationNanos()
+  {
+    return allocationNanos.get();
+  }
+
+  /**
+   * Returns the average time in microseconds a successful reservation took.
+   */
+  public long getAverageAllocationMicros()
+  {
+    long count = getAllocationCount();
+
+    if (count == 0)
+    {
+      return 0;
+    }
+    return getAllocationNanos() / count / 1000;
+  }
+
+  /**
+   * Returns how often a conditional update found the next ID changed by someone else.
+   */
+  public long getConflictCount()
+  {
+    return conflictCount.get();
+  }
+
+  /**
+   * Returns how often a reservation has been attempted again after a conflict.
+   */
+  public long getRetryCount()
+  {
+    return retryCount.get();
+  }
+
+  /**
+   * Returns how often a reservation has been given up after the maximum number of retries.
+   */
+  public long getFailureCount()
+  {
+    return failureCount.get();
+  }
+
+  /**
+   * Returns the total time in milliseconds spent sleeping between retries.
+   */
+  public long getBackoffMillis()
+  {
+    return backoffMillis.get();
+  }
+
+  /**
+   * Sets all counters back to 0.
+   */
+  public void reset()
+  {
+    allocationCount.set(0);
+    allocationNanos.set(0);
+    conflictCount.set(0);
+    retryCount.set(0);
+    failureCount.set(0);
+    backoffMillis.set(0);
+  }
+
+  @Override
+  public String toString()
+  {
+    //@formatter:off
+    return String.format("%s(allocations=%d, avg=%d us, conflicts=%d, retries=%d, failures=%d, backoff=%d ms)",
+        getClass().getSimpleName(), getAllocationCount(), getAverageAllocationMicros(), getConflictCount(), 
+        getRetryCount(), getFailureCount(), getBackoffMillis());
+    //@formatter:on
+  }
+
+  protected void recordAllocation(long nanos)
+  {
+    allocationCount.incrementAndGet();
+    allocationNanos.addAndGet(nanos);
+  }
+
+  protected void recordConflict()
+  {
+    conflictCount.incrementAndGet();
+  }
+
+  protected void recordRetry(long sleptMillis)
+  {
+    retryCount.incrementAndGet();
+    backoffMillis.addAndGet(sleptMillis);
+  }
+
+  protected void recordFailure()
+  {
+    failureCount.incrementAndGet();
+  }
+}
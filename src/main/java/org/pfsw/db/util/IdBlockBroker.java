@@ -0,0 +1,503 @@
+// ===========================================================================
+// CONTENT  : CLASS IdBlockBroker
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  bugfix -> ranges are served from the segments of the broker, released ranges are taken back
+//  17/10/2026  mdu  bugfix -> a range is only taken back from the connection it has been handed out to
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.pfsw.bif.identifier.IdentifierGenerationException;
+import org.pfsw.db.LoggerProvider;
+import org.pfsw.logging.Logger2;
+
+/**
+ * A local server that reserves large blocks of identifiers in the ID table and
+ * hands out sub-ranges of them to many processes on the same host. These processes use
+ * an {@link IdBlockBrokerClient} as block store of their {@link ObjectIdentifierDB}
+ * generators. So the ID table is only accessed by the broker, with far fewer and
+ * larger reservations.
+ * <p>
+ * Per category the broker uses a double-buffered {@link ObjectIdentifierDB}. The ranges
+ * are cut out of its current segment and the next block is reserved in the background
+ * as soon as that segment runs low. So a block of the broker serves many client requests.
+ * A range returned by a client is taken back if no other range has been handed out since
+ * and it has been handed out via the same connection.
+ * {@link #close()} returns the unused IDs of the broker to the table.
+ * <p>
+ * The broker listens on the loopback interface only. It can be started as a separate
+ * process with {@link #main(String[])}.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class IdBlockBroker implements Closeable
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final int DEFAULT_BLOCK_SIZE = 10000;
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final DataSource dataSource;
+  private final IdGeneratorTableSpec tableSpec;
+  private int blockSize = DEFAULT_BLOCK_SIZE;
+  private final Map<String, ObjectIdentifierDB> categories = new ConcurrentHashMap<String, ObjectIdentifierDB>();
+  private final Set<Socket> clientSockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+  private ServerSocket serverSocket = null;
+  private volatile boolean closed = false;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Starts a broker on the given port that uses the default ID table in the given database.
+   * It runs until the process gets terminated.
+   * <p>
+   * Arguments: port jdbc-url [user password [block-size]]
+   */
+  public static void main(String[] args)
+  {
+    final IdBlockBroker broker;
+    DataSource dataSource;
+
+    if ((args.length != 2) && (args.length != 4) && (args.length != 5))
+    {
+      logger().errorf("Usage: IdBlockBroker <port> <jdbc-url> [<user> <password> [<block-size>]]");
+      System.exit(1);
+      return;
+    }
+    dataSource = (args.length == 2) ? new DataSourceProxy(args[1]) : new DataSourceProxy(args[1], args[2], args[3]);
+    broker = create(dataSource);
+    if (args.length == 5)
+    {
+      broker.setBlockSize(Integer.parseInt(args[4]));
+    }
+    broker.start(Integer.parseInt(args[0]));
+    Runtime.getRuntime().addShutdownHook(new Thread("pf-db-id-broker-shutdown")
+    {
+      @Override
+      public void run()
+      {
+        broker.close();
+      }
+    });
+    logger().infof("%s started", broker);
+  }
+
+  /**
+   * Creates a new broker that uses the default ID table.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   */
+  public static IdBlockBroker create(DataSource ds)
+  {
+    return create(ds, IdGeneratorTableSpec.create());
+  }
+
+  /**
+   * Creates a new broker that uses the specified ID table.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   * @param tableSpec The name and columns of the ID table (must not be null).
+   */
+  public static IdBlockBroker create(DataSource ds, IdGeneratorTableSpec tableSpec)
+  {
+    return new IdBlockBroker(ds, tableSpec);
+  }
+
+  protected static Logger2 logger()
+  {
+    return LoggerProvider.getLogger();
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public IdBlockBroker(DataSource ds, IdGeneratorTableSpec tableSpec)
+  {
+    super();
+    this.dataSource = ds;
+    this.tableSpec = tableSpec;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Returns the number of IDs the broker reserves at once in the ID table.
+   */
+  public int getBlockSize()
+  {
+    return this.blockSize;
+  }
+
+  /**
+   * Sets the number of IDs the broker reserves at once in the ID table.
+   * It is only used for categories that get initialized afterwards.
+   * If a client initializes a category with a bigger block size, that one is used.
+   */
+  public IdBlockBroker setBlockSize(int newValue)
+  {
+    if (newValue > 0)
+    {
+      this.blockSize = newValue;
+    }
+    return this;
+  }
+
+  /**
+   * Starts listening on the given port of the loopback interface.
+   * A port of 0 selects a free port (see {@link #getPort()}).
+   *
+   * @throws IdentifierGenerationException if the port cannot be opened.
+   */
+  public synchronized IdBlockBroker start(int port)
+  {
+    if (serverSocket != null)
+    {
+      throw new IllegalStateException("ID broker has already been started");
+    }
+    try
+    {
+      serverSocket = new ServerSocket();
+      serverSocket.bind(new InetSocketAddress(InetAddress.getByName(null), port));
+    }
+    catch (IOException e)
+    {
+      throw new IdentifierGenerationException(e, "ID broker cannot listen on port %d", port);
+    }
+    startThread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        acceptClients();
+      }
+    }, "pf-db-id-broker");
+    return this;
+  }
+
+  /**
+   * Returns the port the broker is listening on or -1 if it has not been started.
+   */
+  public synchronized int getPort()
+  {
+    return (serverSocket == null) ? -1 : serverSocket.getLocalPort();
+  }
+
+  /**
+   * Stops the broker, disconnects all clients and returns the unused IDs to the ID table.
+   * Calling this method more than once has no effect.
+   */
+  @Override
+  public void close()
+  {
+    synchronized (this)
+    {
+      if (closed)
+      {
+        return;
+      }
+      closed = true;
+    }
+    closeQuietly(serverSocket);
+    for (Socket socket : clientSockets)
+    {
+      closeQuietly(socket);
+    }
+    for (ObjectIdentifierDB idGenerator : categories.values())
+    {
+      idGenerator.close();
+    }
+  }
+
+  /**
+   * Returns true if {@link #close()} has been called.
+   */
+  public boolean isClosed()
+  {
+    return this.closed;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(port=%d, blockSize=%d)", getClass().getSimpleName(), getPort(), getBlockSize());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  protected void acceptClients()
+  {
+    final Socket socket;
+
+    try
+    {
+      socket = serverSocket.accept();
+    }
+    catch (IOException e)
+    {
+      if (!isClosed())
+      {
+        logger().errorf(e, "%s stopped accepting clients", this);
+      }
+      return;
+    }
+    startThread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        acceptClients();
+      }
+    }, "pf-db-id-broker");
+    serveClient(socket);
+  }
+
+  /**
+   * Answers the requests of a client until it disconnects.
+   * The responses are flushed whenever no further request is waiting.
+   */
+  protected void serveClient(Socket socket)
+  {
+    DataInputStream in;
+    DataOutputStream out;
+    Map<String, IdRange> lastRanges = new HashMap<String, IdRange>();
+
+    clientSockets.add(socket);
+    try
+    {
+      if (isClosed())
+      {
+        return;
+      }
+      socket.setTcpNoDelay(true);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      IdBlockBrokerProtocol.exchangeMagic(out, in);
+      while (!isClosed())
+      {
+        serveRequest(in, out, lastRanges);
+        if (in.available() == 0)
+        {
+          out.flush();
+        }
+      }
+    }
+    catch (@SuppressWarnings("unused") EOFException e)
+    {
+      // Client has disconnected
+    }
+    catch (IOException e)
+    {
+      if (!isClosed())
+      {
+        logger().warnf(e, "%s lost connection to client %s", this, socket.getRemoteSocketAddress());
+      }
+    }
+    finally
+    {
+      clientSockets.remove(socket);
+      closeQuietly(socket);
+    }
+  }
+
+  /**
+   * Reads one request and writes its response.
+   *
+   * @param lastRanges The last range per category that has been handed out via this connection.
+   */
+  protected void serveRequest(DataInputStream in, DataOutputStream out, Map<String, IdRange> lastRanges) throws IOException
+  {
+    int correlationId;
+    byte operation;
+    String category;
+    long longArg;
+    int intArg;
+    IdRange range;
+
+    correlationId = in.readInt();
+    operation = in.readByte();
+    category = in.readUTF();
+    longArg = in.readLong();
+    intArg = in.readInt();
+    try
+    {
+      switch (operation)
+      {
+        case IdBlockBrokerProtocol.OP_INITIALIZE:
+          IdBlockBrokerProtocol.writeStatus(out, correlationId, initializeCategory(category, longArg, intArg));
+          break;
+        case IdBlockBrokerProtocol.OP_RESERVE:
+          range = reserveRange(category, intArg);
+          if (range != null)
+          {
+            lastRanges.put(category, range);
+          }
+          IdBlockBrokerProtocol.writeRange(out, correlationId, range);
+          break;
+        case IdBlockBrokerProtocol.OP_RELEASE:
+          range = IdRange.create(longArg, intArg);
+          if (isTailOf(range, lastRanges.get(category)) && releaseRange(category, range))
+          {
+            lastRanges.remove(category);
+            IdBlockBrokerProtocol.writeStatus(out, correlationId, true);
+          }
+          else
+          {
+            IdBlockBrokerProtocol.writeStatus(out, correlationId, false);
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown operation " + operation);
+      }
+    }
+    catch (RuntimeException e)
+    {
+      IdBlockBrokerProtocol.writeError(out, correlationId, e);
+    }
+  }
+
+  /**
+   * Returns true if the given range is the unused end of the given handed out range.
+   */
+  protected boolean isTailOf(IdRange range, IdRange handedOutRange)
+  {
+    //@formatter:off
+    return (handedOutRange != null)
+        && (range.getStart() >= handedOutRange.getStart())
+        && (range.getLast() == handedOutRange.getLast());
+    //@formatter:on
+  }
+
+  protected boolean initializeCategory(String category, long startId, int clientBlockSize)
+  {
+    ObjectIdentifierDB idGenerator;
+
+    if (categories.containsKey(category))
+    {
+      return true;
+    }
+    synchronized (categories)
+    {
+      if (categories.containsKey(category))
+      {
+        return true;
+      }
+      idGenerator = createIdGenerator(category, startId, Math.max(getBlockSize(), clientBlockSize));
+      if (!idGenerator.isAllInitialized())
+      {
+        return false;
+      }
+      categories.put(category, idGenerator);
+      return true;
+    }
+  }
+
+  /**
+   * Returns the next IDs of the given category or null if the category has not been initialized.
+   * Counts up to the block size of the broker are taken from its current segment.
+   */
+  protected IdRange reserveRange(String category, int count)
+  {
+    ObjectIdentifierDB idGenerator;
+
+    idGenerator = categories.get(category);
+    return (idGenerator == null) ? null : idGenerator.reserveIdentifiers(count);
+  }
+
+  /**
+   * Takes the given range of the given category back if no other range has been handed out since.
+   */
+  protected boolean releaseRange(String category, IdRange range)
+  {
+    ObjectIdentifierDB idGenerator;
+
+    idGenerator = categories.get(category);
+    return (idGenerator != null) && idGenerator.releaseIdentifiers(range);
+  }
+
+  protected ObjectIdentifierDB createIdGenerator(String category, long startId, int size)
+  {
+    ObjectIdentifierDB idGenerator;
+
+    idGenerator = ObjectIdentifierDB.create(getDataSource(), getTableSpec(), category);
+    idGenerator.setBlockSize(size).setDoubleBuffered(true).setPrefetchThreshold(size / 4);
+    idGenerator.setStartId(startId);
+    return idGenerator;
+  }
+
+  protected void startThread(Runnable runnable, String name)
+  {
+    Thread thread;
+
+    thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  protected void closeQuietly(Socket socket)
+  {
+    try
+    {
+      socket.close();
+    }
+    catch (@SuppressWarnings("unused") IOException e)
+    {
+      // Ignored, the connection is not used anymore
+    }
+  }
+
+  protected void closeQuietly(ServerSocket socket)
+  {
+    if (socket == null)
+    {
+      return;
+    }
+    try
+    {
+      socket.close();
+    }
+    catch (@SuppressWarnings("unused") IOException e)
+    {
+      // Ignored, the broker is shutting down anyway
+    }
+  }
+
+  protected DataSource getDataSource()
+  {
+    return this.dataSource;
+  }
+
+  protected IdGeneratorTableSpec getTableSpec()
+  {
+    return this.tableSpec;
+  }
+}
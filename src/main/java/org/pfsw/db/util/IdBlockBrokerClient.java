@@ -0,0 +1,481 @@
+// ===========================================================================
+// CONTENT  : CLASS IdBlockBrokerClient
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  bugfix -> timed out calls are removed, a range that arrives afterwards is released
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pfsw.bif.identifier.IdentifierGenerationException;
+
+/**
+ * A block store that leases the ranges of identifiers from an {@link IdBlockBroker}
+ * on the same host. Use it as block store of an {@link ObjectIdentifierDB} (see
+ * {@link ObjectIdentifierDB#create(IdBlockStore, String)}), so each generator
+ * serves its IDs from memory and only asks the broker for the next block.
+ * <p>
+ * One instance uses a single connection for all categories and threads.
+ * The calls are pipelined: each request carries a correlation ID, so further requests
+ * can be sent before the previous responses have arrived. Requests that are issued
+ * concurrently are written by a single thread and flushed together.
+ * If the connection gets lost, the next call opens a new one.
+ * <p>
+ * In any critical situation this class throws an {@link IdentifierGenerationException}.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class IdBlockBrokerClient implements IdBlockStore, Closeable
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final long DEFAULT_TIMEOUT_MILLIS = 10000L;
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final int port;
+  private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+  private final AtomicInteger correlationIds = new AtomicInteger();
+  private Channel channel = null;
+  private volatile boolean closed = false;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new client for the broker listening on the given port of the loopback interface.
+   * The connection is opened with the first call.
+   */
+  public static IdBlockBrokerClient create(int port)
+  {
+    return new IdBlockBrokerClient(port);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public IdBlockBrokerClient(int port)
+  {
+    super();
+    this.port = port;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  @Override
+  public boolean initializeCategory(String category, long startId, int blockSize)
+  {
+    return call(IdBlockBrokerProtocol.OP_INITIALIZE, category, startId, blockSize).isTrue();
+  }
+
+  @Override
+  public IdRange reserveRange(String category, int count)
+  {
+    return call(IdBlockBrokerProtocol.OP_RESERVE, category, 0L, count).getRange();
+  }
+
+  /**
+   * Gives the range back to the broker. It only takes the range back if it is the last
+   * one it has handed out for the category and it has been handed out via this connection.
+   */
+  @Override
+  public boolean releaseRange(String category, IdRange range)
+  {
+    return call(IdBlockBrokerProtocol.OP_RELEASE, category, range.getStart(), range.getCount()).isTrue();
+  }
+
+  public int getPort()
+  {
+    return this.port;
+  }
+
+  public long getTimeoutMillis()
+  {
+    return this.timeoutMillis;
+  }
+
+  /**
+   * Sets the maximum time to wait for connecting and for each response.
+   */
+  public IdBlockBrokerClient setTimeoutMillis(long millis)
+  {
+    if (millis > 0)
+    {
+      this.timeoutMillis = millis;
+    }
+    return this;
+  }
+
+  /**
+   * Disconnects from the broker. Afterwards all calls throw an {@link IdentifierGenerationException}.
+   */
+  @Override
+  public synchronized void close()
+  {
+    closed = true;
+    if (channel != null)
+    {
+      channel.shutDown(new IOException("Client has been closed"));
+      channel = null;
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(port=%d)", getClass().getSimpleName(), getPort());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  protected Call call(byte operation, String category, long longArg, int intArg)
+  {
+    Channel currentChannel;
+    Call call;
+
+    call = new Call(correlationIds.incrementAndGet(), operation, category, longArg, intArg);
+    currentChannel = getChannel();
+    currentChannel.send(call);
+    try
+    {
+      if (!call.done.await(getTimeoutMillis(), TimeUnit.MILLISECONDS))
+      {
+        if (currentChannel.abandon(call))
+        {
+          throw new IdentifierGenerationException("No response from %s for category '%s' within %d ms", this, category, getTimeoutMillis());
+        }
+        // The response is just being dispatched
+        call.done.await();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IdentifierGenerationException(e, "Interrupted while waiting for %s", this);
+    }
+    if (call.failure != null)
+    {
+      throw new IdentifierGenerationException(call.failure, "Request to %s for category '%s' failed", this, category);
+    }
+    return call;
+  }
+
+  /**
+   * Returns the current connection to the broker and opens a new one if there is none.
+   */
+  protected synchronized Channel getChannel()
+  {
+    Socket socket;
+
+    if (closed)
+    {
+      throw new IdentifierGenerationException("%s has been closed", this);
+    }
+    if ((channel == null) || channel.isBroken())
+    {
+      socket = new Socket();
+      try
+      {
+        socket.connect(new InetSocketAddress(InetAddress.getByName(null), getPort()), (int)getTimeoutMillis());
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout((int)getTimeoutMillis());
+        channel = new Channel(socket, correlationIds);
+        socket.setSoTimeout(0);
+      }
+      catch (IOException e)
+      {
+        try
+        {
+          socket.close();
+        }
+        catch (@SuppressWarnings("unused") IOException ignore)
+        {
+          // Connection was not usable anyway
+        }
+        throw new IdentifierGenerationException(e, "Cannot connect to %s", this);
+      }
+      channel.start("pf-db-id-broker-client-" + getPort());
+    }
+    return channel;
+  }
+
+  // =========================================================================
+  // INNER CLASSES
+  // =========================================================================
+  /**
+   * A pending request and its response.
+   */
+  protected static class Call
+  {
+    final int correlationId;
+    final byte operation;
+    final String category;
+    final long longArg;
+    final int intArg;
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile byte status;
+    volatile IdRange range = null;
+    volatile Throwable failure = null;
+
+    Call(int correlationId, byte operation, String category, long longArg, int intArg)
+    {
+      super();
+      this.correlationId = correlationId;
+      this.operation = operation;
+      this.category = category;
+      this.longArg = longArg;
+      this.intArg = intArg;
+    }
+
+    boolean isTrue()
+    {
+      return status == IdBlockBrokerProtocol.STATUS_TRUE;
+    }
+
+    IdRange getRange()
+    {
+      return range;
+    }
+
+    void complete(byte newStatus, IdRange newRange, Throwable newFailure)
+    {
+      this.status = newStatus;
+      this.range = newRange;
+      this.failure = newFailure;
+      done.countDown();
+    }
+  }
+
+  /**
+   * A connection to the broker with a thread that writes the queued requests
+   * and a thread that dispatches the responses to the waiting callers.
+   */
+  protected static class Channel
+  {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final BlockingQueue<Call> outbox = new LinkedBlockingQueue<Call>();
+    private final Map<Integer, Call> pendingCalls = new ConcurrentHashMap<Integer, Call>();
+    private final Map<Integer, Call> abandonedCalls = new ConcurrentHashMap<Integer, Call>();
+    private final AtomicInteger correlationIds;
+    private volatile IOException brokenBy = null;
+
+    Channel(Socket socket, AtomicInteger correlationIds) throws IOException
+    {
+      super();
+      this.socket = socket;
+      this.correlationIds = correlationIds;
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      IdBlockBrokerProtocol.exchangeMagic(out, in);
+    }
+
+    void start(String threadName)
+    {
+      Thread thread;
+
+      thread = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          writeRequests();
+        }
+      }, threadName + "-writer");
+      thread.setDaemon(true);
+      thread.start();
+      thread = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          readResponses();
+        }
+      }, threadName + "-reader");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    void send(Call call)
+    {
+      pendingCalls.put(call.correlationId, call);
+      if (isBroken())
+      {
+        failPendingCalls();
+        return;
+      }
+      outbox.add(call);
+    }
+
+    boolean isBroken()
+    {
+      return brokenBy != null;
+    }
+
+    /**
+     * Stops waiting for the response of the given call. A range that arrives for it
+     * later gets released.
+     *
+     * @return false if the response has already been dispatched to the call.
+     */
+    boolean abandon(Call call)
+    {
+      abandonedCalls.put(call.correlationId, call);
+      if (pendingCalls.remove(call.correlationId) != null)
+      {
+        return true;
+      }
+      abandonedCalls.remove(call.correlationId);
+      return false;
+    }
+
+    /**
+     * Handles the response to a call nobody is waiting for anymore.
+     * A range is given back to the broker, the response to that is ignored.
+     */
+    void dispatchAbandoned(int correlationId, IdRange range)
+    {
+      Call call;
+      Call release;
+
+      call = abandonedCalls.remove(correlationId);
+      if ((call == null) || (range == null) || isBroken())
+      {
+        return;
+      }
+      //@formatter:off
+      release = new Call(correlationIds.incrementAndGet(), IdBlockBrokerProtocol.OP_RELEASE, call.category, 
+          range.getStart(), range.getCount());
+      //@formatter:on
+      abandonedCalls.put(release.correlationId, release);
+      outbox.add(release);
+    }
+
+    /**
+     * Writes all queued requests and flushes them at once.
+     */
+    void writeRequests()
+    {
+      Call call;
+
+      try
+      {
+        while (!isBroken())
+        {
+          call = outbox.poll(1, TimeUnit.SECONDS);
+          while (call != null)
+          {
+            IdBlockBrokerProtocol.writeRequest(out, call.correlationId, call.operation, call.category, call.longArg, call.intArg);
+            call = outbox.poll();
+          }
+          out.flush();
+        }
+      }
+      catch (@SuppressWarnings("unused") InterruptedException e)
+      {
+        shutDown(new IOException("Writer has been interrupted"));
+      }
+      catch (IOException e)
+      {
+        shutDown(e);
+      }
+    }
+
+    void readResponses()
+    {
+      int correlationId;
+      byte status;
+      IdRange range;
+      Throwable failure;
+      Call call;
+
+      try
+      {
+        while (!isBroken())
+        {
+          correlationId = in.readInt();
+          status = in.readByte();
+          range = null;
+          failure = null;
+          if (status == IdBlockBrokerProtocol.STATUS_RANGE)
+          {
+            range = IdRange.create(in.readLong(), in.readInt());
+          }
+          else if (status == IdBlockBrokerProtocol.STATUS_ERROR)
+          {
+            failure = new IOException(in.readUTF());
+          }
+          call = pendingCalls.remove(correlationId);
+          if (call != null)
+          {
+            call.complete(status, range, failure);
+          }
+          else
+          {
+            dispatchAbandoned(correlationId, range);
+          }
+        }
+      }
+      catch (IOException e)
+      {
+        shutDown(e);
+      }
+    }
+
+    void shutDown(IOException reason)
+    {
+      if (brokenBy == null)
+      {
+        brokenBy = reason;
+      }
+      try
+      {
+        socket.close();
+      }
+      catch (@SuppressWarnings("unused") IOException e)
+      {
+        // Connection is not used anymore
+      }
+      failPendingCalls();
+    }
+
+    void failPendingCalls()
+    {
+      abandonedCalls.clear();
+      for (Integer correlationId : pendingCalls.keySet())
+      {
+        Call call = pendingCalls.remove(correlationId);
+        if (call != null)
+        {
+          call.complete(IdBlockBrokerProtocol.STATUS_ERROR, null, brokenBy);
+        }
+      }
+    }
+  }
+}
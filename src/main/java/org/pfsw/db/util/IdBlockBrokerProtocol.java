@@ -0,0 +1,119 @@
+// ===========================================================================
+// CONTENT  : CLASS IdBlockBrokerProtocol
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The binary protocol between {@link IdBlockBroker} and {@link IdBlockBrokerClient}.
+ * After connecting, the client sends {@link #MAGIC} and the server answers with it.
+ * Then the client sends requests of the form
+ * <pre>
+ * int correlationId, byte operation, UTF category, long argument, int argument
+ * </pre>
+ * and the server answers each request with
+ * <pre>
+ * int correlationId, byte status [, long start, int count | UTF message]
+ * </pre>
+ * The client may send further requests before the responses of the previous ones arrive.
+ * The server answers the requests of a connection in the order it has received them.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+final class IdBlockBrokerProtocol
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  /**
+   * "PFID" followed by the protocol version 1.
+   */
+  static final long MAGIC = 0x5046494400000001L;
+
+  /**
+   * Arguments: startId, blockSize
+   */
+  static final byte OP_INITIALIZE = 1;
+  /**
+   * Arguments: unused, count
+   */
+  static final byte OP_RESERVE = 2;
+  /**
+   * Arguments: start, count
+   */
+  static final byte OP_RELEASE = 3;
+
+  static final byte STATUS_TRUE = 0;
+  static final byte STATUS_FALSE = 1;
+  static final byte STATUS_RANGE = 2;
+  static final byte STATUS_ERROR = 3;
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  private IdBlockBrokerProtocol()
+  {
+    super();
+  }
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  static void writeRequest(DataOutputStream out, int correlationId, byte operation, String category, long longArg, int intArg) throws IOException
+  {
+    out.writeInt(correlationId);
+    out.writeByte(operation);
+    out.writeUTF(category);
+    out.writeLong(longArg);
+    out.writeInt(intArg);
+  }
+
+  static void writeStatus(DataOutputStream out, int correlationId, boolean result) throws IOException
+  {
+    out.writeInt(correlationId);
+    out.writeByte(result ? STATUS_TRUE : STATUS_FALSE);
+  }
+
+  static void writeRange(DataOutputStream out, int correlationId, IdRange range) throws IOException
+  {
+    if (range == null)
+    {
+      writeStatus(out, correlationId, false);
+      return;
+    }
+    out.writeInt(correlationId);
+    out.writeByte(STATUS_RANGE);
+    out.writeLong(range.getStart());
+    out.writeInt(range.getCount());
+  }
+
+  static void writeError(DataOutputStream out, int correlationId, Throwable error) throws IOException
+  {
+    out.writeInt(correlationId);
+    out.writeByte(STATUS_ERROR);
+    out.writeUTF(String.valueOf(error));
+  }
+
+  static void exchangeMagic(DataOutputStream out, DataInputStream in) throws IOException
+  {
+    long magic;
+
+    out.writeLong(MAGIC);
+    out.flush();
+    magic = in.readLong();
+    if (magic != MAGIC)
+    {
+      throw new IOException(String.format("Unsupported ID broker protocol %016x", magic));
+    }
+  }
+}
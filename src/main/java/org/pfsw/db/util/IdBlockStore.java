@@ -0,0 +1,54 @@
+// ===========================================================================
+// CONTENT  : INTERFACE IdBlockStore
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+/**
+ * The persistent storage of the next available identifier per category.
+ * An {@link ObjectIdentifierDB} with a block store (see {@link ObjectIdentifierDB#setBlockStore(IdBlockStore)})
+ * reserves its blocks in the store rather than in its own database table. All its in-memory
+ * modes, the padding and the prefix work the same with any store.
+ * <p>
+ * Implementations must be thread-safe and must never return the same identifier twice
+ * for a category, also not to different instances working on the same storage.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public interface IdBlockStore
+{
+  /**
+   * Ensures that the storage of the given category exists.
+   * If it has to be created, the first identifier to be reserved is startId.
+   *
+   * @param category The name of the category (must not be null).
+   * @param startId The first identifier of a new category.
+   * @param blockSize The number of identifiers that usually get reserved at once.
+   * @return true if the category is ready to reserve identifiers.
+   */
+  public boolean initializeCategory(String category, long startId, int blockSize);
+
+  /**
+   * Reserves the given number of consecutive identifiers of the given category.
+   *
+   * @param category The name of the category (must not be null).
+   * @param count The number of identifiers to reserve (must be > 0).
+   * @return The reserved identifiers or null if the category does not exist.
+   */
+  public IdRange reserveRange(String category, int count);
+
+  /**
+   * Gives the given range back if no later range has been reserved in the meantime.
+   *
+   * @param category The name of the category (must not be null).
+   * @param range A range that has been reserved but none of its identifiers has been used.
+   * @return true if the range has been given back.
+   */
+  public boolean releaseRange(String category, IdRange range);
+}
@@ -0,0 +1,131 @@
+// ===========================================================================
+// CONTENT  : CLASS IdRange
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.2 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  added -> contains(), toArray()
+//  17/10/2026  mdu  added -> step
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+/**
+ * An immutable range of identifiers that has been reserved at once.
+ * It starts with a specific identifier and contains a fixed number of identifiers
+ * with a fixed distance (step). Usually the identifiers are consecutive, that is the step is 1.
+ *
+ * @author Manfred Duchrow
+ * @version 1.2
+ */
+public class IdRange
+{
+  private final long start;
+  private final int count;
+  private final int step;
+
+  /**
+   * Creates a new range of consecutive identifiers starting with the given identifier.
+   *
+   * @param start The first identifier of the range.
+   * @param count The number of identifiers in the range (must be > 0).
+   */
+  public static IdRange create(long start, int count)
+  {
+    return create(start, count, 1);
+  }
+
+  /**
+   * Creates a new range starting with the given identifier where each following
+   * identifier is the previous one plus step.
+   *
+   * @param start The first identifier of the range.
+   * @param count The number of identifiers in the range (must be > 0).
+   * @param step The distance between two identifiers of the range (must be > 0).
+   */
+  public static IdRange create(long start, int count, int step)
+  {
+    return new IdRange(start, count, step);
+  }
+
+  protected IdRange(long start, int count, int step)
+  {
+    super();
+    if (count <= 0)
+    {
+      throw new IllegalArgumentException("An IdRange must contain at least one identifier but count=" + count);
+    }
+    if (step <= 0)
+    {
+      throw new IllegalArgumentException("The step of an IdRange must be greater than 0 but is " + step);
+    }
+    this.start = start;
+    this.count = count;
+    this.step = step;
+  }
+
+  /**
+   * Returns the first identifier of this range.
+   */
+  public long getStart()
+  {
+    return this.start;
+  }
+
+  /**
+   * Returns the number of identifiers in this range.
+   */
+  public int getCount()
+  {
+    return this.count;
+  }
+
+  /**
+   * Returns the distance between two identifiers of this range.
+   */
+  public int getStep()
+  {
+    return this.step;
+  }
+
+  /**
+   * Returns the last identifier of this range.
+   */
+  public long getLast()
+  {
+    return getStart() + ((long)(getCount() - 1) * getStep());
+  }
+
+  /**
+   * Returns true if the given identifier is part of this range.
+   */
+  public boolean contains(long id)
+  {
+    return (id >= getStart()) && (id <= getLast()) && (((id - getStart()) % getStep()) == 0);
+  }
+
+  /**
+   * Returns all identifiers of this range in ascending order.
+   */
+  public long[] toArray()
+  {
+    long[] ids = new long[getCount()];
+
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = getStart() + ((long)i * getStep());
+    }
+    return ids;
+  }
+
+  @Override
+  public String toString()
+  {
+    if (getStep() > 1)
+    {
+      return String.format("%s(%d..%d step %d)", getClass().getSimpleName(), getStart(), getLast(), getStep());
+    }
+    return String.format("%s(%d..%d)", getClass().getSimpleName(), getStart(), getLast());
+  }
+}
@@ -0,0 +1,312 @@
+// ===========================================================================
+// CONTENT  : CLASS IdRangeJournal
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * A small memory-mapped file that records the ID range a generator is currently
+ * serving together with a high-water mark. All IDs below the high-water mark may
+ * have been handed out, all IDs from the high-water mark up to the end of the range
+ * have definitely not been handed out.
+ * <p>
+ * The high-water mark is written ahead in chunks: Only when an ID reaches the
+ * current mark, the mark gets moved forward by the chunk size. So there is no
+ * write per ID, but at most chunk size IDs are lost if the process terminates abruptly.
+ * Since the file is memory-mapped, the written values survive the termination of
+ * the process without any explicit flush. To survive a crash of the operating system
+ * as well, each write can be forced to the storage device (see {@link #setForce(boolean)}).
+ * <p>
+ * After an abrupt termination the unused part of the range can be obtained
+ * by {@link #recover()} and should be consumed before a new block gets reserved.
+ * <p>
+ * The file is locked exclusively while the journal is open, so it cannot be used
+ * by two generators at the same time.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class IdRangeJournal implements Closeable
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final int DEFAULT_CHUNK_SIZE = 64;
+  public static final String FILE_EXTENSION = ".idjournal";
+
+  private static final int MAGIC = 0x50464944;
+  private static final int FORMAT_VERSION = 1;
+  private static final int POS_MAGIC = 0;
+  private static final int POS_VERSION = 4;
+  private static final int POS_START = 8;
+  private static final int POS_LAST = 16;
+  private static final int POS_HIGH_WATER_MARK = 24;
+  private static final int POS_CHECKSUM = 32;
+  private static final int FILE_SIZE = 64;
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final FileLock fileLock;
+  private final MappedByteBuffer buffer;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private boolean force = false;
+  private long rangeStart = 0;
+  private long rangeLast = -1;
+  private volatile long highWaterMark = Long.MAX_VALUE;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Opens the journal file for the given category in the given directory.
+   * The file and the directory get created if necessary.
+   *
+   * @param directory The directory that contains the journal files (must not be null).
+   * @param category The category of the IDs (must not be null).
+   * @throws IOException if the file cannot be created, mapped or locked.
+   */
+  public static IdRangeJournal open(File directory, String category) throws IOException
+  {
+    if (!directory.isDirectory() && !directory.mkdirs())
+    {
+      throw new IOException("Cannot create journal directory " + directory);
+    }
+    return open(new File(directory, category.replaceAll("[^A-Za-z0-9_.-]", "_") + FILE_EXTENSION));
+  }
+
+  /**
+   * Opens the given journal file. It gets created if necessary.
+   *
+   * @param file The journal file (must not be null).
+   * @throws IOException if the file cannot be created, mapped or locked.
+   */
+  public static IdRangeJournal open(File file) throws IOException
+  {
+    return new IdRangeJournal(file);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  protected IdRangeJournal(File file) throws IOException
+  {
+    super();
+    FileChannel channel;
+    FileLock lock = null;
+
+    this.file = file;
+    this.randomAccessFile = new RandomAccessFile(file, "rw");
+    try
+    {
+      channel = randomAccessFile.getChannel();
+      try
+      {
+        lock = channel.tryLock();
+      }
+      catch (@SuppressWarnings("unused") OverlappingFileLockException e)
+      {
+        lock = null;
+      }
+      if (lock == null)
+      {
+        throw new IOException("ID range journal is already in use: " + file);
+      }
+      this.fileLock = lock;
+      this.buffer = channel.map(MapMode.READ_WRITE, 0, FILE_SIZE);
+    }
+    catch (IOException e)
+    {
+      randomAccessFile.close();
+      throw e;
+    }
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Returns the part of the recorded range that has definitely not been handed out
+   * or null if there is none (or the file content is not valid).
+   * Afterwards the journal is empty until the next range gets recorded.
+   */
+  public synchronized IdRange recover()
+  {
+    long start;
+    long last;
+    long mark;
+    IdRange range = null;
+
+    if ((buffer.getInt(POS_MAGIC) == MAGIC) && (buffer.getInt(POS_VERSION) == FORMAT_VERSION))
+    {
+      start = buffer.getLong(POS_START);
+      last = buffer.getLong(POS_LAST);
+      mark = buffer.getLong(POS_HIGH_WATER_MARK);
+      if ((buffer.getLong(POS_CHECKSUM) == checksum(start, last, mark)) && (mark >= start) && (mark <= last))
+      {
+        range = IdRange.create(mark, (int)(last - mark + 1));
+      }
+    }
+    markConsumed();
+    return range;
+  }
+
+  /**
+   * Records the given range as the one that is currently served.
+   * None of its IDs must have been handed out yet.
+   */
+  public synchronized void recordRange(IdRange range)
+  {
+    rangeStart = range.getStart();
+    rangeLast = range.getLast();
+    highWaterMark = rangeStart;
+    buffer.putInt(POS_MAGIC, MAGIC);
+    buffer.putInt(POS_VERSION, FORMAT_VERSION);
+    buffer.putLong(POS_START, rangeStart);
+    buffer.putLong(POS_LAST, rangeLast);
+    writeHighWaterMark(highWaterMark);
+  }
+
+  /**
+   * Must be called before the given ID of the recorded range is handed out.
+   * If the ID has reached the high-water mark, the mark gets moved forward by the chunk size.
+   * IDs outside the recorded range are ignored.
+   */
+  public void advance(long id)
+  {
+    if (id < highWaterMark)
+    {
+      return;
+    }
+    synchronized (this)
+    {
+      if ((id < highWaterMark) || (id > rangeLast))
+      {
+        return;
+      }
+      highWaterMark = Math.min(rangeLast + 1, id + getChunkSize());
+      writeHighWaterMark(highWaterMark);
+    }
+  }
+
+  /**
+   * Marks all IDs of the recorded range as used, so that nothing gets recovered.
+   */
+  public synchronized void markConsumed()
+  {
+    if (rangeLast >= rangeStart)
+    {
+      highWaterMark = rangeLast + 1;
+      writeHighWaterMark(highWaterMark);
+    }
+    else
+    {
+      buffer.putInt(POS_MAGIC, 0);
+      forceIfRequired();
+    }
+  }
+
+  /**
+   * Releases the lock of the journal file.
+   * The file itself is kept, so that the next generator can use it.
+   */
+  @Override
+  public synchronized void close() throws IOException
+  {
+    forceIfRequired();
+    try
+    {
+      fileLock.release();
+    }
+    finally
+    {
+      randomAccessFile.close();
+    }
+  }
+
+  public File getFile()
+  {
+    return this.file;
+  }
+
+  public int getChunkSize()
+  {
+    return this.chunkSize;
+  }
+
+  /**
+   * Sets the number of IDs the high-water mark gets moved forward at once.
+   * That is the maximum number of IDs lost on abrupt termination.
+   * The default is {@link #DEFAULT_CHUNK_SIZE}.
+   */
+  public IdRangeJournal setChunkSize(int newValue)
+  {
+    if (newValue > 0)
+    {
+      this.chunkSize = newValue;
+    }
+    return this;
+  }
+
+  public boolean isForce()
+  {
+    return this.force;
+  }
+
+  /**
+   * Defines whether each write gets forced to the storage device.
+   * Without forcing, the journal survives the abrupt termination of the process
+   * but not necessarily a crash of the operating system.
+   */
+  public IdRangeJournal setForce(boolean forceWrites)
+  {
+    this.force = forceWrites;
+    return this;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(%s, %d..%d, mark=%d)", getClass().getSimpleName(), getFile().getName(), rangeStart, rangeLast, highWaterMark);
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  protected void writeHighWaterMark(long mark)
+  {
+    buffer.putLong(POS_HIGH_WATER_MARK, mark);
+    buffer.putLong(POS_CHECKSUM, checksum(rangeStart, rangeLast, mark));
+    forceIfRequired();
+  }
+
+  protected void forceIfRequired()
+  {
+    if (isForce())
+    {
+      buffer.force();
+    }
+  }
+
+  protected long checksum(long start, long last, long mark)
+  {
+    return MAGIC ^ start ^ Long.rotateLeft(last, 21) ^ Long.rotateLeft(mark, 42);
+  }
+}
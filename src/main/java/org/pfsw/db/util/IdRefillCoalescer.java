@@ -0,0 +1,354 @@
+// ===========================================================================
+// CONTENT  : CLASS IdRefillCoalescer
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.pfsw.db.DatabaseAccessException;
+import org.pfsw.db.LoggerProvider;
+import org.pfsw.logging.Logger2;
+
+/**
+ * Collects the block reservations of several {@link ObjectIdentifierDB} generators
+ * that arrive within a short window and executes them in one connection and one
+ * transaction with a single commit. That reduces the number of connections and
+ * commits when many categories run out of IDs at about the same time.
+ * <p>
+ * The first reservation of a batch waits for the window to elapse and then executes
+ * all reservations collected so far. The rows are locked in the order of their category
+ * names, so concurrent batches cannot deadlock each other. A failing reservation
+ * fails the whole batch. Generators with optimistic block allocation lock their row
+ * within a batch, because a retry would roll back the reservations of the others.
+ * <p>
+ * In any critical (fatal) situation this class throws a {@link DatabaseAccessException}.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class IdRefillCoalescer
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final long DEFAULT_WINDOW_MILLIS = 2L;
+
+  private static final Comparator<Refill> LOCK_ORDER = new Comparator<Refill>()
+  {
+    @Override
+    public int compare(Refill refill1, Refill refill2)
+    {
+      return refill1.idGenerator.getCategoryRowName().compareTo(refill2.idGenerator.getCategoryRowName());
+    }
+  };
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final DataSource dataSource;
+  private long windowMillis = DEFAULT_WINDOW_MILLIS;
+  private final Object batchLock = new Object();
+  private List<Refill> pendingRefills = new ArrayList<Refill>();
+  private final AtomicLong batchCount = new AtomicLong(0);
+  private final AtomicLong refillCount = new AtomicLong(0);
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new coalescer for generators that use the given data source.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   */
+  public static IdRefillCoalescer create(DataSource ds)
+  {
+    return new IdRefillCoalescer(ds);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public IdRefillCoalescer(DataSource ds)
+  {
+    super();
+    this.dataSource = ds;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  public long getWindowMillis()
+  {
+    return this.windowMillis;
+  }
+
+  /**
+   * Sets the time the first reservation of a batch waits for further ones.
+   * A value of 0 executes the reservations that are already waiting without any delay.
+   */
+  public IdRefillCoalescer setWindowMillis(long millis)
+  {
+    if (millis >= 0)
+    {
+      this.windowMillis = millis;
+    }
+    return this;
+  }
+
+  /**
+   * Returns the number of transactions executed so far.
+   */
+  public long getBatchCount()
+  {
+    return batchCount.get();
+  }
+
+  /**
+   * Returns the number of reservations executed so far.
+   */
+  public long getRefillCount()
+  {
+    return refillCount.get();
+  }
+
+  /**
+   * Reserves the next block of the given generator together with the blocks
+   * of all other generators that request one within the window.
+   *
+   * @param idGenerator The generator that needs a block (must not be null).
+   * @param requestedCount The exact size of the block or 0 to use the block size of the generator.
+   * @return The reserved block or null if the category's row could not be found.
+   */
+  public IdRange reserve(ObjectIdentifierDB idGenerator, int requestedCount)
+  {
+    Refill refill;
+    boolean isLeader;
+
+    refill = new Refill(idGenerator, requestedCount);
+    synchronized (batchLock)
+    {
+      isLeader = pendingRefills.isEmpty();
+      pendingRefills.add(refill);
+    }
+    if (isLeader)
+    {
+      waitForWindow();
+      executeBatch(takePendingRefills());
+    }
+    else
+    {
+      refill.await();
+    }
+    if (refill.failure != null)
+    {
+      throw refill.failure;
+    }
+    return refill.block;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(window=%dms, batches=%d, refills=%d)", getClass().getSimpleName(), getWindowMillis(), getBatchCount(), getRefillCount());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  protected List<Refill> takePendingRefills()
+  {
+    List<Refill> refills;
+
+    synchronized (batchLock)
+    {
+      refills = pendingRefills;
+      pendingRefills = new ArrayList<Refill>();
+    }
+    return refills;
+  }
+
+  /**
+   * Executes all given reservations in one transaction and hands the results to the waiting threads.
+   */
+  protected void executeBatch(List<Refill> refills)
+  {
+    Connection conn = null;
+    long startTime = System.nanoTime();
+    long duration;
+
+    Collections.sort(refills, LOCK_ORDER);
+    try
+    {
+      conn = getDbConnection();
+      for (Refill refill : refills)
+      {
+        refill.block = refill.idGenerator.reserveBlockInSharedTransaction(conn, refill.requestedCount);
+      }
+      conn.commit();
+      batchCount.incrementAndGet();
+      refillCount.addAndGet(refills.size());
+      duration = System.nanoTime() - startTime;
+      for (Refill refill : refills)
+      {
+        if (refill.block != null)
+        {
+          refill.idGenerator.getAllocationStatistics().recordAllocation(duration);
+        }
+      }
+    }
+    catch (SQLException ex)
+    {
+      logger().errorf(ex, "Reserving %d coalesced ID blocks failed", refills.size());
+      rollback(conn);
+      failAll(refills, new DatabaseAccessException(ex, "Reserving %d coalesced ID blocks failed", refills.size()));
+    }
+    catch (RuntimeException ex)
+    {
+      rollback(conn);
+      failAll(refills, ex);
+    }
+    finally
+    {
+      closeConnection(conn);
+      for (Refill refill : refills)
+      {
+        refill.done.countDown();
+      }
+    }
+  }
+
+  protected void failAll(List<Refill> refills, RuntimeException failure)
+  {
+    for (Refill refill : refills)
+    {
+      refill.block = null;
+      refill.failure = failure;
+    }
+  }
+
+  protected void waitForWindow()
+  {
+    if (getWindowMillis() <= 0)
+    {
+      return;
+    }
+    try
+    {
+      Thread.sleep(getWindowMillis());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns a new connection with autoCommit=false.
+   */
+  protected Connection getDbConnection() throws SQLException
+  {
+    Connection connection = getDataSource().getConnection();
+    connection.setAutoCommit(false);
+    return connection;
+  }
+
+  protected void rollback(Connection conn)
+  {
+    if (conn == null)
+    {
+      return;
+    }
+    try
+    {
+      conn.rollback();
+    }
+    catch (SQLException ex)
+    {
+      logger().warnf(ex, "Rollback of coalesced ID blocks failed");
+    }
+  }
+
+  protected void closeConnection(Connection conn)
+  {
+    if (conn != null)
+    {
+      try
+      {
+        conn.close();
+      }
+      catch (SQLException ex)
+      {
+        logger().warnf(ex, "Closing DB connection failed");
+      }
+    }
+  }
+
+  protected Logger2 logger()
+  {
+    return LoggerProvider.getLogger();
+  }
+
+  protected DataSource getDataSource()
+  {
+    return this.dataSource;
+  }
+
+  // =========================================================================
+  // INNER CLASSES
+  // =========================================================================
+  /**
+   * A reservation waiting for its batch.
+   */
+  protected static class Refill
+  {
+    final ObjectIdentifierDB idGenerator;
+    final int requestedCount;
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile IdRange block = null;
+    volatile RuntimeException failure = null;
+
+    Refill(ObjectIdentifierDB idGenerator, int requestedCount)
+    {
+      super();
+      this.idGenerator = idGenerator;
+      this.requestedCount = requestedCount;
+    }
+
+    void await()
+    {
+      boolean interrupted = false;
+
+      while (true)
+      {
+        try
+        {
+          done.await();
+          break;
+        }
+        catch (InterruptedException e)
+        {
+          interrupted = true;
+        }
+      }
+      if (interrupted)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,242 @@
+// ===========================================================================
+// CONTENT  : CLASS IdRefillScheduler
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the background prefetch of many {@link ObjectIdentifierDB} generators with
+ * a bounded number of threads, so no more than that many refills access the database
+ * at the same time. Generators subscribe with {@link ObjectIdentifierDB#setRefillScheduler(IdRefillScheduler)}.
+ * <p>
+ * Waiting refills are executed in the order of the estimated time at which their generator
+ * runs out of IDs. The estimate is based on the interval between the previous refills of
+ * the generator, which is the time it took to consume one block. The first refill of a
+ * generator is treated as most urgent.
+ * <p>
+ * The threads are daemon threads that terminate when idle.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class IdRefillScheduler implements Closeable
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final int DEFAULT_MAX_CONCURRENCY = 2;
+
+  private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60L;
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactory()
+  {
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+      Thread thread = new Thread(runnable, "pf-db-id-refill");
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final ThreadPoolExecutor executor;
+  private final Map<ObjectIdentifierDB, RefillHistory> histories = Collections.synchronizedMap(new WeakHashMap<ObjectIdentifierDB, RefillHistory>());
+  private final AtomicLong sequence = new AtomicLong(0);
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new scheduler with {@link #DEFAULT_MAX_CONCURRENCY} threads.
+   */
+  public static IdRefillScheduler create()
+  {
+    return create(DEFAULT_MAX_CONCURRENCY);
+  }
+
+  /**
+   * Creates a new scheduler that runs at most the given number of refills at the same time.
+   *
+   * @param maxConcurrency The maximum number of threads (must be > 0).
+   */
+  public static IdRefillScheduler create(int maxConcurrency)
+  {
+    return new IdRefillScheduler(maxConcurrency);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public IdRefillScheduler(int maxConcurrency)
+  {
+    super();
+    if (maxConcurrency <= 0)
+    {
+      throw new IllegalArgumentException("maxConcurrency must be > 0 but is " + maxConcurrency);
+    }
+    //@formatter:off
+    executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, 
+        new PriorityBlockingQueue<Runnable>(), THREAD_FACTORY);
+    //@formatter:on
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Queues the given refill of the given generator.
+   *
+   * @param idGenerator The generator that needs a block (must not be null).
+   * @param refill The task that reserves the block (must not be null).
+   * @throws RejectedExecutionException if this scheduler has been closed.
+   */
+  public void schedule(ObjectIdentifierDB idGenerator, Runnable refill)
+  {
+    executor.execute(new ScheduledRefill(exhaustionDeadline(idGenerator), sequence.incrementAndGet(), refill));
+  }
+
+  public int getMaxConcurrency()
+  {
+    return executor.getMaximumPoolSize();
+  }
+
+  /**
+   * Returns the number of refills that have been scheduled so far.
+   */
+  public long getScheduledCount()
+  {
+    return sequence.get();
+  }
+
+  /**
+   * Returns the number of refills that are waiting for a thread.
+   */
+  public int getQueuedCount()
+  {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Stops accepting refills. The refills already queued are still executed.
+   */
+  @Override
+  public void close()
+  {
+    executor.shutdown();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(maxConcurrency=%d, scheduled=%d, queued=%d)", getClass().getSimpleName(), getMaxConcurrency(), getScheduledCount(), getQueuedCount());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Returns the estimated {@link System#nanoTime()} at which the given generator will
+   * have handed out all of its remaining IDs and records this refill request.
+   */
+  protected long exhaustionDeadline(ObjectIdentifierDB idGenerator)
+  {
+    RefillHistory history;
+    long now;
+    long interval;
+
+    synchronized (histories)
+    {
+      history = histories.get(idGenerator);
+      if (history == null)
+      {
+        history = new RefillHistory();
+        histories.put(idGenerator, history);
+      }
+    }
+    synchronized (history)
+    {
+      now = System.nanoTime();
+      if (history.lastRequestNanos != 0)
+      {
+        interval = now - history.lastRequestNanos;
+        history.averageIntervalNanos = (history.averageIntervalNanos == 0) ? interval : (history.averageIntervalNanos + interval) / 2;
+      }
+      history.lastRequestNanos = now;
+      if (history.averageIntervalNanos == 0)
+      {
+        return now;
+      }
+      interval = history.averageIntervalNanos;
+    }
+    return now + (long)((double)idGenerator.getServableIdCount() * interval / Math.max(1, idGenerator.getBlockSize()));
+  }
+
+  // =========================================================================
+  // INNER CLASSES
+  // =========================================================================
+  /**
+   * The time between the refill requests of a generator.
+   */
+  protected static class RefillHistory
+  {
+    long lastRequestNanos = 0;
+    long averageIntervalNanos = 0;
+  }
+
+  /**
+   * A refill ordered by the deadline of its generator.
+   */
+  protected static class ScheduledRefill implements Runnable, Comparable<ScheduledRefill>
+  {
+    private final long deadline;
+    private final long sequenceNumber;
+    private final Runnable refill;
+
+    ScheduledRefill(long deadline, long sequenceNumber, Runnable refill)
+    {
+      super();
+      this.deadline = deadline;
+      this.sequenceNumber = sequenceNumber;
+      this.refill = refill;
+    }
+
+    @Override
+    public void run()
+    {
+      refill.run();
+    }
+
+    @Override
+    public int compareTo(ScheduledRefill other)
+    {
+      long diff;
+
+      diff = deadline - other.deadline;
+      if (diff == 0)
+      {
+        diff = sequenceNumber - other.sequenceNumber;
+      }
+      return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+    }
+  }
+}
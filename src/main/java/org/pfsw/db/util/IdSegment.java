@@ -0,0 +1,177 @@
+// ===========================================================================
+// CONTENT  : CLASS IdSegment
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.1 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  added -> reserve()
+//  17/10/2026  mdu  added -> reserveExactly()
+//  17/10/2026  mdu  bugfix -> reserveExactly() no longer overflows for a huge count
+//  17/10/2026  mdu  added -> release()
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A segment holds a reserved {@link IdRange} and hands out its identifiers
+ * one after the other. The position inside the range is maintained with an
+ * atomic counter, so identifiers can be taken by many threads concurrently
+ * without any locking.
+ *
+ * @author Manfred Duchrow
+ * @version 1.1
+ */
+public class IdSegment
+{
+  /**
+   * The value returned by {@link #next()} if all identifiers of the segment have been used.
+   */
+  public static final long EXHAUSTED = Long.MIN_VALUE;
+
+  private final IdRange range;
+  private final AtomicInteger position = new AtomicInteger(0);
+
+  public static IdSegment create(IdRange range)
+  {
+    return new IdSegment(range);
+  }
+
+  protected IdSegment(IdRange range)
+  {
+    super();
+    this.range = range;
+  }
+
+  /**
+   * Returns the range of identifiers this segment is serving.
+   */
+  public IdRange getRange()
+  {
+    return this.range;
+  }
+
+  /**
+   * Returns the number of identifiers that have already been handed out.
+   */
+  public int getUsedCount()
+  {
+    return Math.min(position.get(), getRange().getCount());
+  }
+
+  /**
+   * Returns the number of identifiers that are still available.
+   */
+  public int getRemainingCount()
+  {
+    return getRange().getCount() - getUsedCount();
+  }
+
+  /**
+   * Returns the ratio of available identifiers to the total size of the segment.
+   * That is 1.0 for a fresh segment and 0.0 for an exhausted one.
+   */
+  public double getFillLevel()
+  {
+    return (double)getRemainingCount() / getRange().getCount();
+  }
+
+  public boolean isExhausted()
+  {
+    return getRemainingCount() == 0;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(%d..%d, used=%d)", getClass().getSimpleName(), getRange().getStart(), getRange().getLast(), getUsedCount());
+  }
+
+  /**
+   * Returns the next identifier of this segment or {@link #EXHAUSTED} if there is none left.
+   */
+  protected long next()
+  {
+    int index;
+
+    do
+    {
+      index = position.get();
+      if (index >= getRange().getCount())
+      {
+        return EXHAUSTED;
+      }
+    }
+    while (!position.compareAndSet(index, index + 1));
+    return getRange().getStart() + index;
+  }
+
+  /**
+   * Takes the given number of identifiers at once from this segment.
+   * If fewer identifiers are left, the returned range contains just the remaining ones.
+   *
+   * @param count The number of identifiers to take (must be > 0).
+   * @return The taken range or null if the segment is exhausted.
+   */
+  protected IdRange reserve(int count)
+  {
+    int index;
+    int taken;
+
+    do
+    {
+      index = position.get();
+      if (index >= getRange().getCount())
+      {
+        return null;
+      }
+      taken = Math.min(count, getRange().getCount() - index);
+    }
+    while (!position.compareAndSet(index, index + taken));
+    return IdRange.create(getRange().getStart() + index, taken);
+  }
+
+  /**
+   * Takes the given number of identifiers at once from this segment if
+   * there are enough identifiers left.
+   *
+   * @param count The number of identifiers to take (must be > 0).
+   * @return The taken range or null if fewer identifiers are left.
+   */
+  protected IdRange reserveExactly(int count)
+  {
+    int index;
+
+    do
+    {
+      index = position.get();
+      if (count > getRange().getCount() - index)
+      {
+        return null;
+      }
+    }
+    while (!position.compareAndSet(index, index + count));
+    return IdRange.create(getRange().getStart() + index, count);
+  }
+
+  /**
+   * Takes the given range back if it is the last one that has been taken from this segment.
+   * Then its identifiers get handed out again.
+   *
+   * @param range A range taken from this segment, none of its identifiers must have been used.
+   * @return true if the range has been taken back.
+   */
+  protected boolean release(IdRange range)
+  {
+    int index;
+
+    if ((range.getStep() != 1) || !getRange().contains(range.getStart()) || !getRange().contains(range.getLast()))
+    {
+      return false;
+    }
+    index = (int)(range.getStart() - getRange().getStart());
+    return position.compareAndSet(index + range.getCount(), index);
+  }
+}
@@ -0,0 +1,89 @@
+// ===========================================================================
+// CONTENT  : CLASS InMemoryIdBlockStore
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A block store that keeps the next identifier of each category in memory only.
+ * It is meant for tests and for measuring the overhead of the in-memory modes
+ * of {@link ObjectIdentifierDB} without any storage access.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class InMemoryIdBlockStore implements IdBlockStore
+{
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final ConcurrentMap<String, AtomicLong> nextIds = new ConcurrentHashMap<String, AtomicLong>();
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  public static InMemoryIdBlockStore create()
+  {
+    return new InMemoryIdBlockStore();
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public InMemoryIdBlockStore()
+  {
+    super();
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  @Override
+  public boolean initializeCategory(String category, long startId, int blockSize)
+  {
+    nextIds.putIfAbsent(category, new AtomicLong(startId));
+    return true;
+  }
+
+  @Override
+  public IdRange reserveRange(String category, int count)
+  {
+    AtomicLong nextId;
+
+    nextId = nextIds.get(category);
+    if (nextId == null)
+    {
+      return null;
+    }
+    return IdRange.create(nextId.getAndAdd(count), count);
+  }
+
+  @Override
+  public boolean releaseRange(String category, IdRange range)
+  {
+    AtomicLong nextId;
+
+    nextId = nextIds.get(category);
+    return (nextId != null) && nextId.compareAndSet(range.getLast() + 1, range.getStart());
+  }
+
+  /**
+   * Returns the next identifier of the given category or -1 if the category does not exist.
+   */
+  public long getNextId(String category)
+  {
+    AtomicLong nextId;
+
+    nextId = nextIds.get(category);
+    return (nextId == null) ? -1L : nextId.get();
+  }
+}
@@ -0,0 +1,163 @@
+// ===========================================================================
+// CONTENT  : CLASS InitializationBarrier
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.pfsw.db.DatabaseAccessException;
+
+/**
+ * Lets the generators of one JVM execute the same database initialization only once
+ * at a time, without locking a shared object like the data source.
+ * The first thread that arrives for a key executes the initialization. All threads that
+ * arrive for the same key while it is in progress wait for it and get its result or failure.
+ * Initializations for different keys run in parallel.
+ * <p>
+ * Keys are scoped by the identity of an object, usually the data source. Once an initialization
+ * has finished its key is free again, so the callers have to remember a successful result themselves.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+final class InitializationBarrier
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  static final String KIND_TABLE = "table";
+  static final String KIND_CATEGORY_ROW = "row";
+  static final String KIND_SEQUENCE = "sequence";
+
+  private static final ConcurrentMap<Key, FutureTask<Boolean>> RUNNING = new ConcurrentHashMap<Key, FutureTask<Boolean>>();
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  private InitializationBarrier()
+  {
+    super();
+  }
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Executes the given initialization unless one with the same key is already running.
+   * In that case the result of the running one is returned.
+   *
+   * @param scope The object the key is bound to by identity (must not be null).
+   * @param kind The kind of object to initialize, e.g. {@link #KIND_TABLE}.
+   * @param name The name of the object to initialize.
+   * @param initialization The initialization to execute (should only throw RuntimeExceptions).
+   */
+  static boolean runOnce(Object scope, String kind, String name, Callable<Boolean> initialization)
+  {
+    Key key;
+    FutureTask<Boolean> task;
+    FutureTask<Boolean> running;
+
+    key = new Key(scope, kind, name);
+    task = new FutureTask<Boolean>(initialization);
+    running = RUNNING.putIfAbsent(key, task);
+    if (running == null)
+    {
+      try
+      {
+        task.run();
+      }
+      finally
+      {
+        RUNNING.remove(key, task);
+      }
+      running = task;
+    }
+    return awaitResult(running, kind, name);
+  }
+
+  private static boolean awaitResult(FutureTask<Boolean> task, String kind, String name)
+  {
+    boolean interrupted = false;
+
+    try
+    {
+      while (true)
+      {
+        try
+        {
+          return task.get().booleanValue();
+        }
+        catch (InterruptedException e)
+        {
+          interrupted = true;
+        }
+      }
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException)e.getCause();
+      }
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error)e.getCause();
+      }
+      throw new DatabaseAccessException(e.getCause(), "Initializing %s '%s' failed", kind, name);
+    }
+    finally
+    {
+      if (interrupted)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // =========================================================================
+  // INNER CLASSES
+  // =========================================================================
+  private static final class Key
+  {
+    private final Object scope;
+    private final String kind;
+    private final String name;
+
+    Key(Object scope, String kind, String name)
+    {
+      super();
+      this.scope = scope;
+      this.kind = kind;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      Key other;
+
+      if (!(obj instanceof Key))
+      {
+        return false;
+      }
+      other = (Key)obj;
+      return (scope == other.scope) && kind.equals(other.kind) && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return (System.identityHashCode(scope) * 31 + kind.hashCode()) * 31 + name.hashCode();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+// ===========================================================================
+// CONTENT  : CLASS JdbcIdBlockStore
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.pfsw.db.DatabaseAccessException;
+
+/**
+ * A block store that keeps the next identifier of each category in a row of
+ * the ID table, exactly like {@link ObjectIdentifierDB} does without a block store.
+ * Per category it uses an internal {@link ObjectIdentifierDB}, so all its
+ * block allocation modes are available (see {@link #setBlockAllocation(IdBlockAllocation)}).
+ * <p>
+ * In any critical (fatal) situation this class throws a {@link DatabaseAccessException}.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class JdbcIdBlockStore implements IdBlockStore
+{
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final DataSource dataSource;
+  private final IdGeneratorTableSpec tableSpec;
+  private IdBlockAllocation blockAllocation = IdBlockAllocation.SELECT_FOR_UPDATE;
+  private final ConcurrentMap<String, ObjectIdentifierDB> categoryRows = new ConcurrentHashMap<String, ObjectIdentifierDB>();
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new store that uses the default ID table.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   */
+  public static JdbcIdBlockStore create(DataSource ds)
+  {
+    return create(ds, IdGeneratorTableSpec.create());
+  }
+
+  /**
+   * Creates a new store that uses the specified ID table.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   * @param tableSpec The name and columns of the ID table (must not be null).
+   */
+  public static JdbcIdBlockStore create(DataSource ds, IdGeneratorTableSpec tableSpec)
+  {
+    return new JdbcIdBlockStore(ds, tableSpec);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public JdbcIdBlockStore(DataSource ds, IdGeneratorTableSpec tableSpec)
+  {
+    super();
+    this.dataSource = ds;
+    this.tableSpec = tableSpec;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Creates the ID table and the category's row if necessary.
+   */
+  @Override
+  public boolean initializeCategory(String category, long startId, int blockSize)
+  {
+    ObjectIdentifierDB row;
+
+    row = ObjectIdentifierDB.create(getDataSource(), getTableSpec(), category).setBlockSize(blockSize).setBlockAllocation(getBlockAllocation());
+    row.setStartId(startId);
+    if (!row.isAllInitialized())
+    {
+      return false;
+    }
+    categoryRows.putIfAbsent(category, row);
+    return true;
+  }
+
+  @Override
+  public IdRange reserveRange(String category, int count)
+  {
+    ObjectIdentifierDB row;
+
+    row = categoryRows.get(category);
+    if (row == null)
+    {
+      return null;
+    }
+    return row.blockFromDB(count);
+  }
+
+  @Override
+  public boolean releaseRange(String category, IdRange range)
+  {
+    ObjectIdentifierDB row;
+
+    row = categoryRows.get(category);
+    return (row != null) && (row.releaseUnusedRanges(Collections.singletonList(range)) > 0);
+  }
+
+  public IdBlockAllocation getBlockAllocation()
+  {
+    return this.blockAllocation;
+  }
+
+  /**
+   * Sets the SQL statements used for categories that are initialized afterwards.
+   * A value of null resets it to {@link IdBlockAllocation#SELECT_FOR_UPDATE}.
+   */
+  public JdbcIdBlockStore setBlockAllocation(IdBlockAllocation allocation)
+  {
+    this.blockAllocation = (allocation == null) ? IdBlockAllocation.SELECT_FOR_UPDATE : allocation;
+    return this;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s('%s')", getClass().getSimpleName(), getTableSpec().getUnqualifiedTableName());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  protected DataSource getDataSource()
+  {
+    return this.dataSource;
+  }
+
+  protected IdGeneratorTableSpec getTableSpec()
+  {
+    return this.tableSpec;
+  }
+}
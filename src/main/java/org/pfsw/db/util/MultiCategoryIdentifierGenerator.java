@@ -1,11 +1,13 @@
 // ===========================================================================
 // CONTENT  : INTERFACE MultiCategoryIdentifierGenerator
 // AUTHOR   : Manfred Duchrow
-// VERSION  : 1.0 - 18/04/2020
+// VERSION  : 1.1 - 17/10/2026
 // HISTORY  :
 //  18/04/2020  mdu  CREATED
+//  17/10/2026  mdu  added -> reserveIdentifiers()
+//  17/10/2026  mdu  changed -> reserveIdentifiers() documents non-consecutive ranges
 //
-// Copyright (c) 2020, by MDCS. All rights reserved.
+// Copyright (c) 2020-2026, by MDCS. All rights reserved.
 // ===========================================================================
 package org.pfsw.db.util;
 
@@ -15,7 +17,7 @@ import org.pfsw.bif.identifier.IdentifierGenerationException;
  * An ID generator that supports different ID sequences for different categories. 
  *
  * @author Manfred Duchrow
- * @version 1.0
+ * @version 1.1
  */
 public interface MultiCategoryIdentifierGenerator
 {
@@ -36,4 +38,19 @@ public interface MultiCategoryIdentifierGenerator
    * @throws IdentifierGenerationException if the category cannot be found of ID generation fails for any reason.
    */
   long nextIdentifier(String category);
+
+  /**
+   * Returns a range of new identifiers for the given category
+   * that are reserved at once.
+   * The identifiers are usually consecutive, but a generator that interleaves
+   * its IDs with other nodes (stride mode) returns a range with a step greater than 1.
+   * So callers must use {@link IdRange#getStep()} (or {@link IdRange#toArray()})
+   * rather than assuming that all values between first and last belong to the range.
+   * 
+   * @param category An arbitrary but unique name for the ID sequence (must not be null).
+   * @param count The number of identifiers to reserve (must be > 0).
+   * @return The reserved identifiers. 
+   * @throws IdentifierGenerationException if the category cannot be found of ID generation fails for any reason.
+   */
+  IdRange reserveIdentifiers(String category, int count);
 }
\ No newline at end of file
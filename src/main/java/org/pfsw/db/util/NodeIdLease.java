@@ -0,0 +1,609 @@
+// ===========================================================================
+// CONTENT  : CLASS NodeIdLease
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  changed -> a node row rejected by the primary key is treated as taken
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import org.pfsw.db.DatabaseAccessException;
+
+/**
+ * A time-limited lease of a node ID that is kept in the ID table of {@link ObjectIdentifierDB}.
+ * Each node ID of a category has its own row with the category name
+ * &lt;category&gt;#NODE&lt;nodeId&gt;. The NEXTID column of that row contains the time
+ * (in milliseconds since 1970) when the lease expires.
+ * <p>
+ * A node ID can be acquired if its row does not yet exist or if its lease has expired
+ * for longer than the maximum clock skew between the nodes. The lease gets extended
+ * by {@link #renew()} with a conditional update that only succeeds if the row still
+ * contains the expiry time written by this lease. So a lease that has been taken over
+ * by another node cannot be extended anymore.
+ * <p>
+ * The holder of a lease must not use any timestamp that is not before the expiry time.
+ * A new holder gets the expiry time of the previous holder (see {@link #getPreviousExpiryMillis()})
+ * and must not use any timestamp before it. That way two holders of the same node ID
+ * never use the same timestamp, independent of the clocks of their hosts.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class NodeIdLease implements Closeable
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final String NODE_SUFFIX = "#NODE";
+  public static final int DEFAULT_MAX_NODE_COUNT = 1024;
+  public static final long DEFAULT_LEASE_MILLIS = 60000L;
+  public static final long DEFAULT_MAX_CLOCK_SKEW_MILLIS = 5000L;
+
+  private static final int MAX_ACQUIRE_ATTEMPTS = 10;
+  private static final int NO_NODE_ID = -1;
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final ObjectIdentifierDB table;
+  private final String category;
+  private int maxNodeCount = DEFAULT_MAX_NODE_COUNT;
+  private long leaseMillis = DEFAULT_LEASE_MILLIS;
+  private long maxClockSkewMillis = DEFAULT_MAX_CLOCK_SKEW_MILLIS;
+  private int nodeId = NO_NODE_ID;
+  private long previousExpiryMillis = 0L;
+  private volatile long expiryMillis = 0L;
+  private volatile boolean lost = false;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new lease for the given category in the default ID table.
+   * The node ID is not acquired before {@link #acquire()} is called.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   * @param categoryName The name of the category the node IDs belong to (must not be null).
+   */
+  public static NodeIdLease create(DataSource ds, String categoryName)
+  {
+    return create(ds, IdGeneratorTableSpec.create(), categoryName);
+  }
+
+  /**
+   * Creates a new lease for the given category in the specified ID table.
+   * The node ID is not acquired before {@link #acquire()} is called.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   * @param tableSpec The name and columns of the ID table (must not be null).
+   * @param categoryName The name of the category the node IDs belong to (must not be null).
+   */
+  public static NodeIdLease create(DataSource ds, IdGeneratorTableSpec tableSpec, String categoryName)
+  {
+    return new NodeIdLease(ObjectIdentifierDB.create(ds, tableSpec, categoryName + NODE_SUFFIX), categoryName);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  /**
+   * Initialize the new instance with the generator that provides access to the ID table.
+   * The category of that generator is never used to create a row.
+   */
+  protected NodeIdLease(ObjectIdentifierDB table, String categoryName)
+  {
+    super();
+    this.table = table;
+    this.category = categoryName;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Acquires the lowest node ID that is free and returns it.
+   * If this lease holds a node ID already, that one is returned.
+   * The ID table gets created if it does not yet exist.
+   *
+   * @throws DatabaseAccessException if no node ID is free or the database cannot be accessed.
+   */
+  public synchronized int acquire()
+  {
+    Connection conn = null;
+
+    if (isHeld())
+    {
+      return getNodeId();
+    }
+    try
+    {
+      conn = getTable().getDbConnection();
+    }
+    catch (SQLException ex)
+    {
+      getTable().logSqlExceptionStacktrace(ex, "Opening database connection for acquiring a node ID of category '%s' failed!", getCategory());
+      throw new DatabaseAccessException(ex, "Opening database connection for acquiring a node ID of category '%s' failed!", getCategory());
+    }
+    try
+    {
+      createTableIfNecessary(conn);
+      for (int attempt = 0; attempt < MAX_ACQUIRE_ATTEMPTS; attempt++)
+      {
+        if (tryAcquire(conn))
+        {
+          getTable().logger().debugf("Acquired node ID %d of category '%s' until %d%n", getNodeId(), getCategory(), getExpiryMillis());
+          return getNodeId();
+        }
+      }
+    }
+    catch (SQLException ex)
+    {
+      getTable().logSqlExceptionStacktrace(ex, "Acquiring a node ID of category '%s' failed.", getCategory());
+      getTable().rollback(conn);
+      throw new DatabaseAccessException(ex, "Acquiring a node ID of category '%s' failed.", getCategory());
+    }
+    finally
+    {
+      getTable().closeConnection(conn);
+    }
+    throw new DatabaseAccessException("No free node ID for category '%s' in table '%s'", getCategory(), getTable().getTableName());
+  }
+
+  /**
+   * Extends the lease by the lease duration.
+   *
+   * @return false if the lease has been taken over by another node in the meantime.
+   * @throws DatabaseAccessException if the database cannot be accessed.
+   */
+  public synchronized boolean renew()
+  {
+    long newExpiry;
+
+    if (!isHeld())
+    {
+      return false;
+    }
+    newExpiry = Math.max(currentTimeMillis() + getLeaseMillis(), getExpiryMillis() + 1);
+    if (updateExpiry(getExpiryMillis(), newExpiry))
+    {
+      expiryMillis = newExpiry;
+      return true;
+    }
+    lost = true;
+    getTable().logger().warnf("Lease of node ID %d of category '%s' has been taken over by another node", getNodeId(), getCategory());
+    return false;
+  }
+
+  /**
+   * Gives the node ID back, so that another node can acquire it after the maximum clock skew.
+   *
+   * @param usedUntilMillis All timestamps used by the holder are before this time.
+   *        It must not be after the current expiry time.
+   */
+  public synchronized void release(long usedUntilMillis)
+  {
+    if (!isHeld())
+    {
+      return;
+    }
+    try
+    {
+      updateExpiry(getExpiryMillis(), Math.min(usedUntilMillis, getExpiryMillis()));
+    }
+    finally
+    {
+      expiryMillis = Math.min(usedUntilMillis, getExpiryMillis());
+      nodeId = NO_NODE_ID;
+    }
+  }
+
+  /**
+   * Gives the node ID back without shortening the lease.
+   */
+  @Override
+  public void close()
+  {
+    release(getExpiryMillis());
+  }
+
+  /**
+   * Returns true if this lease holds a node ID and has not been taken over by another node.
+   * The lease may have expired nevertheless (see {@link #getExpiryMillis()}).
+   */
+  public synchronized boolean isHeld()
+  {
+    return (nodeId != NO_NODE_ID) && !lost;
+  }
+
+  /**
+   * Returns true if the lease has been taken over by another node.
+   */
+  public boolean isLost()
+  {
+    return this.lost;
+  }
+
+  public synchronized int getNodeId()
+  {
+    return this.nodeId;
+  }
+
+  /**
+   * Returns the time (in milliseconds since 1970) when the lease expires.
+   * No timestamp at or after that time must be used.
+   */
+  public long getExpiryMillis()
+  {
+    return this.expiryMillis;
+  }
+
+  /**
+   * Returns the expiry time of the previous holder of the node ID.
+   * No timestamp before that time must be used.
+   */
+  public synchronized long getPreviousExpiryMillis()
+  {
+    return this.previousExpiryMillis;
+  }
+
+  public String getCategory()
+  {
+    return this.category;
+  }
+
+  public int getMaxNodeCount()
+  {
+    return this.maxNodeCount;
+  }
+
+  /**
+   * Sets the number of node IDs (0 .. maxNodeCount-1) that can be acquired.
+   * The default is {@link #DEFAULT_MAX_NODE_COUNT}.
+   */
+  public NodeIdLease setMaxNodeCount(int newValue)
+  {
+    if (newValue > 0)
+    {
+      this.maxNodeCount = newValue;
+    }
+    return this;
+  }
+
+  public long getLeaseMillis()
+  {
+    return this.leaseMillis;
+  }
+
+  /**
+   * Sets for how long a lease is valid after it has been acquired or renewed.
+   * The default is {@link #DEFAULT_LEASE_MILLIS}.
+   */
+  public NodeIdLease setLeaseMillis(long newValue)
+  {
+    if (newValue > 0)
+    {
+      this.leaseMillis = newValue;
+    }
+    return this;
+  }
+
+  public long getMaxClockSkewMillis()
+  {
+    return this.maxClockSkewMillis;
+  }
+
+  /**
+   * Sets the maximum difference between the clocks of the nodes.
+   * An expired lease can be acquired by another node only after that time.
+   * The default is {@link #DEFAULT_MAX_CLOCK_SKEW_MILLIS}.
+   */
+  public NodeIdLease setMaxClockSkewMillis(long newValue)
+  {
+    if (newValue >= 0)
+    {
+      this.maxClockSkewMillis = newValue;
+    }
+    return this;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s('%s', %d, %d)", getClass().getSimpleName(), getCategory(), nodeId, expiryMillis);
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Tries to take over an expired node ID or otherwise to create the row for the
+   * lowest unused node ID.
+   *
+   * @return true if a node ID has been acquired.
+   */
+  protected boolean tryAcquire(Connection conn) throws SQLException
+  {
+    Map<Integer, Long> expiries;
+    long now;
+
+    expiries = readExpiries(conn);
+    now = currentTimeMillis();
+    for (Map.Entry<Integer, Long> entry : expiries.entrySet())
+    {
+      if (entry.getValue() + getMaxClockSkewMillis() < now)
+      {
+        if (updateExpiry(conn, entry.getKey(), entry.getValue(), now + getLeaseMillis()))
+        {
+          conn.commit();
+          leased(entry.getKey(), entry.getValue(), now + getLeaseMillis());
+          return true;
+        }
+        conn.rollback();
+      }
+    }
+    for (int id = 0; id < getMaxNodeCount(); id++)
+    {
+      if (!expiries.containsKey(id))
+      {
+        return tryCreate(conn, id, now + getLeaseMillis());
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Creates the row for the given node ID. If another node has created the same row
+   * concurrently, the primary key rejects it. Without a primary key both rows are
+   * inserted and this node removes its row again.
+   */
+  protected boolean tryCreate(Connection conn, int id, long expiry) throws SQLException
+  {
+    try
+    {
+      insertRow(conn, id, expiry);
+    }
+    catch (SQLException ex)
+    {
+      if (!getTable().isDuplicateKey(ex))
+      {
+        throw ex;
+      }
+      conn.rollback();
+      return false;
+    }
+    conn.commit();
+    if (countRows(conn, id) == 1)
+    {
+      leased(id, 0L, expiry);
+      return true;
+    }
+    deleteRow(conn, id, expiry);
+    conn.commit();
+    return false;
+  }
+
+  protected void leased(int id, long previousExpiry, long expiry)
+  {
+    this.nodeId = id;
+    this.previousExpiryMillis = previousExpiry;
+    this.expiryMillis = expiry;
+    this.lost = false;
+  }
+
+  protected boolean updateExpiry(long expectedExpiry, long newExpiry)
+  {
+    Connection conn = null;
+    boolean updated;
+
+    try
+    {
+      conn = getTable().getDbConnection();
+      updated = updateExpiry(conn, getNodeId(), expectedExpiry, newExpiry);
+      conn.commit();
+      return updated;
+    }
+    catch (SQLException ex)
+    {
+      getTable().logSqlExceptionStacktrace(ex, "Updating the lease of node ID %d of category '%s' failed.", getNodeId(), getCategory());
+      getTable().rollback(conn);
+      throw new DatabaseAccessException(ex, "Updating the lease of node ID %d of category '%s' failed.", getNodeId(), getCategory());
+    }
+    finally
+    {
+      getTable().closeConnection(conn);
+    }
+  }
+
+  protected boolean updateExpiry(Connection conn, int id, long expectedExpiry, long newExpiry) throws SQLException
+  {
+    PreparedStatement statement;
+
+    statement = conn.prepareStatement(sqlUpdateExpiry());
+    try
+    {
+      statement.setLong(1, newExpiry);
+      statement.setString(2, rowCategory(id));
+      statement.setLong(3, expectedExpiry);
+      return statement.executeUpdate() > 0;
+    }
+    finally
+    {
+      getTable().closeStatement(statement);
+    }
+  }
+
+  /**
+   * Returns the expiry time of all existing rows of this category by node ID.
+   */
+  protected Map<Integer, Long> readExpiries(Connection conn) throws SQLException
+  {
+    Map<Integer, Long> expiries = new TreeMap<Integer, Long>();
+    PreparedStatement statement;
+    ResultSet result;
+    String prefix;
+    String name;
+
+    prefix = getCategory() + NODE_SUFFIX;
+    statement = conn.prepareStatement(sqlSelectNodeRows());
+    try
+    {
+      statement.setString(1, prefix + "%");
+      result = statement.executeQuery();
+      while (result.next())
+      {
+        name = result.getString(1);
+        // LIKE treats '_' in the category as wildcard, so the prefix must be checked again
+        if ((name != null) && name.startsWith(prefix) && name.substring(prefix.length()).matches("[0-9]+"))
+        {
+          expiries.put(Integer.valueOf(name.substring(prefix.length())), result.getLong(2));
+        }
+      }
+      result.close();
+    }
+    finally
+    {
+      getTable().closeStatement(statement);
+    }
+    return expiries;
+  }
+
+  protected void insertRow(Connection conn, int id, long expiry) throws SQLException
+  {
+    PreparedStatement statement;
+
+    statement = conn.prepareStatement(sqlInsertNodeRow());
+    try
+    {
+      statement.setString(1, rowCategory(id));
+      statement.setLong(2, expiry);
+      statement.setInt(3, 0);
+      statement.executeUpdate();
+    }
+    finally
+    {
+      getTable().closeStatement(statement);
+    }
+  }
+
+  protected int countRows(Connection conn, int id) throws SQLException
+  {
+    PreparedStatement statement;
+    ResultSet result;
+
+    statement = conn.prepareStatement(sqlCountNodeRows());
+    try
+    {
+      statement.setString(1, rowCategory(id));
+      result = statement.executeQuery();
+      result.next();
+      return result.getInt(1);
+    }
+    finally
+    {
+      getTable().closeStatement(statement);
+    }
+  }
+
+  protected void deleteRow(Connection conn, int id, long expiry) throws SQLException
+  {
+    PreparedStatement statement;
+
+    statement = conn.prepareStatement(sqlDeleteNodeRow());
+    try
+    {
+      statement.setString(1, rowCategory(id));
+      statement.setLong(2, expiry);
+      statement.executeUpdate();
+    }
+    finally
+    {
+      getTable().closeStatement(statement);
+    }
+  }
+
+  protected void createTableIfNecessary(Connection conn) throws SQLException
+  {
+    Statement statement;
+
+    if (getTable().checkTableExists(conn))
+    {
+      return;
+    }
+    statement = conn.createStatement();
+    try
+    {
+      statement.execute(getTable().sqlCreateOidTable());
+      conn.commit();
+    }
+    finally
+    {
+      getTable().closeStatement(statement);
+    }
+  }
+
+  protected String rowCategory(int id)
+  {
+    return getCategory() + NODE_SUFFIX + id;
+  }
+
+  protected String sqlSelectNodeRows()
+  {
+    //@formatter:off
+    return String.format("SELECT %s, %s FROM %s WHERE %s LIKE ?",
+        getTable().getCategoryColumnName(), getTable().getNextIdColumnName(), getTable().getTableName(), getTable().getCategoryColumnName());
+    //@formatter:on
+  }
+
+  protected String sqlCountNodeRows()
+  {
+    return String.format("SELECT COUNT(*) FROM %s WHERE %s = ?", getTable().getTableName(), getTable().getCategoryColumnName());
+  }
+
+  protected String sqlInsertNodeRow()
+  {
+    //@formatter:off
+    return String.format("INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)",
+        getTable().getTableName(), getTable().getCategoryColumnName(), getTable().getNextIdColumnName(), getTable().getBlockSizeColumnName());
+    //@formatter:on
+  }
+
+  protected String sqlUpdateExpiry()
+  {
+    //@formatter:off
+    return String.format("UPDATE %s SET %s=? WHERE %s = ? AND %s=?",
+        getTable().getTableName(), getTable().getNextIdColumnName(), getTable().getCategoryColumnName(), getTable().getNextIdColumnName());
+    //@formatter:on
+  }
+
+  protected String sqlDeleteNodeRow()
+  {
+    //@formatter:off
+    return String.format("DELETE FROM %s WHERE %s = ? AND %s=?",
+        getTable().getTableName(), getTable().getCategoryColumnName(), getTable().getNextIdColumnName());
+    //@formatter:on
+  }
+
+  protected long currentTimeMillis()
+  {
+    return System.currentTimeMillis();
+  }
+
+  protected ObjectIdentifierDB getTable()
+  {
+    return this.table;
+  }
+}
@@ -1,7 +1,7 @@
 // ===========================================================================
 // CONTENT  : CLASS ObjectIdentifierDB
 // AUTHOR   : Manfred Duchrow
-// VERSION  : 2.1 - 03/08/2020
+// VERSION  : 2.2 - 17/10/2026
 // HISTORY  :
 //  05/01/2001  duma  CREATED
 //  02/12/2001  duma  moved from com.mdcs.db.util
@@ -11,16 +11,66 @@
 //	22/02/2008	mdu		changed	-> Support setting blockSize from outside
 //  18/04/2020  mdu   changed -> synchronized, connection.commit(), changeable column names
 //  03/08/2020  mdu   changed -> ensure always autoCommit=false
+//  17/10/2026  mdu   added   -> background prefetch of the next block
+//  17/10/2026  mdu   added   -> double-buffered segments
+//  17/10/2026  mdu   added   -> lock-free mode, segments are served without monitor
+//  17/10/2026  mdu   added   -> striped mode with per-thread sub-blocks
+//  17/10/2026  mdu   added   -> adaptive block size policy
+//  17/10/2026  mdu   added   -> reserveIdentifiers()
+//  17/10/2026  mdu   added   -> block allocation with UPDATE ... RETURNING
+//  17/10/2026  mdu   added   -> optimistic block allocation, allocation statistics
+//  17/10/2026  mdu   added   -> close() returns unused IDs to the table
+//  17/10/2026  mdu   added   -> optional IdRangeJournal to recover IDs after abrupt termination
+//  17/10/2026  mdu   added   -> optional SharedIdRegion for processes on the same host
+//  17/10/2026  mdu   added   -> stride mode with a row per node
+//  17/10/2026  mdu   added   -> row stripes to spread the refills over several rows
+//  17/10/2026  mdu   added   -> optional IdBlockStore instead of the own table
+//  17/10/2026  mdu   added   -> optional IdRefillCoalescer to reserve blocks of several categories in one transaction
+//  17/10/2026  mdu   added   -> optional IdRefillScheduler shared by several generators for the prefetch
+//  17/10/2026  mdu   added   -> optional persistent connection with cached prepared statements
+//  17/10/2026  mdu   changed -> category is passed as bind parameter, the SQL is the same for all categories
+//                             sqlInsertCategoryRow(String) deprecated, replaced by sqlInsertCategoryRow() with 3 bind parameters
+//  17/10/2026  mdu   added   -> warmUp()
+//  17/10/2026  mdu   changed -> table and row initialization no longer synchronize on the DataSource
+//  17/10/2026  mdu   changed -> table is created with primary key on the category column, existence is checked via meta data
+//  17/10/2026  mdu   added   -> optional migration that adds the primary key to an existing table
+//  17/10/2026  mdu   bugfix  -> reserveIdentifiers() takes small ranges from the regular block instead of an exact-size block
+//  17/10/2026  mdu   added   -> releaseIdentifiers() takes back the last range that has been handed out
+//  17/10/2026  mdu   changed -> chunk size of a shared region defaults to the IDs consumed within one second
+//  17/10/2026  mdu   bugfix  -> overrides of the deprecated sqlInsertCategoryRow(String) are used again
+//  17/10/2026  mdu   bugfix  -> reserveIdentifiers() in striped mode prefetches depending on the current segment
 //
-// Copyright (c) 2001-2020, by Manfred Duchrow. All rights reserved.
+// Copyright (c) 2001-2026, by Manfred Duchrow. All rights reserved.
 // ===========================================================================
 package org.pfsw.db.util;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sql.DataSource;
 
@@ -37,15 +87,64 @@ import org.pfsw.logging.Logger2;
  * are "loaded" into memory at once. A higher blockSize improves performance
  * of generating new IDs extremely, but also implies the risk to lose some
  * IDs if the application gets shut down and the in-memory IDs have not yet been consumed.
+ * To avoid that, {@link #close()} should be called on orderly shutdown. It returns the
+ * unused IDs to the table unless another generator has reserved a later block in the meantime.
+ * To limit the loss on abrupt termination, an {@link IdRangeJournal} can be set
+ * (see {@link #setRangeJournal(IdRangeJournal)}). Then the unused IDs of the last range
+ * get consumed first after a restart.
+ * Processes on the same host can share the blocks reserved in the database through a
+ * {@link SharedIdRegion} (see {@link #setSharedRegion(SharedIdRegion, int)}).
+ * With an {@link AdaptiveBlockSizePolicy} the block size gets adjusted with each refill
+ * to the observed consumption rate.
+ * <p>
+ * The SQL statements used to reserve a block can be chosen with {@link #setBlockAllocation(IdBlockAllocation)}.
+ * By default the row of the category is read with SELECT ... FOR UPDATE and then updated.
+ * The counters in {@link #getAllocationStatistics()} help to compare the different modes.
+ * <p>
+ * Optionally a prefetch threshold can be set (see {@link #setPrefetchThreshold(int)}).
+ * Then the next block gets reserved in the database by a background thread as soon as
+ * the number of remaining in-memory IDs falls below that threshold. That way the caller
+ * that consumes the last ID of a block usually doesn't have to wait for the database.
+ * <p>
+ * In double-buffered mode (see {@link #setDoubleBuffered(boolean)}) the IDs are served
+ * from a current {@link IdSegment} while a standby segment gets filled from the database
+ * in the background. When the current segment is exhausted the standby segment replaces
+ * it in one atomic step.
+ * <p>
+ * In lock-free mode (see {@link #setLockFree(boolean)}) the IDs are served from a single
+ * {@link IdSegment}. Then only the refill of the segment needs the monitor of this object.
+ * Double-buffered segments are always served lock-free.
+ * <p>
+ * In striped mode (see {@link #setStripeCount(int)}) each block reserved in the database
+ * is split into sub-blocks. Each thread gets its own sub-block and takes IDs from it
+ * without touching any state that is shared with other threads. As a consequence the IDs
+ * are not handed out in ascending order across threads. IDs in sub-blocks of idle threads
+ * are stranded until these threads request further IDs (see {@link #getStrandedIdCount()}).
+ * <p>
+ * In stride mode (see {@link #setStride(int, int)}) each of N nodes that generate IDs of the
+ * same category has its own row named &lt;category&gt;@&lt;nodeIndex&gt;, so the nodes never
+ * contend for the same row. The row contains a node-local counter. Each counter value c
+ * is mapped to the ID c * N + nodeIndex, hence the IDs of node k are all congruent to k modulo N.
+ * The number of nodes must never change for a category.
+ * <p>
+ * With row stripes (see {@link #setRowStripeCount(int)}) the category is split into K rows
+ * named &lt;category&gt;#0 .. &lt;category&gt;#K-1. Each refill takes the next row in round-robin
+ * order, so concurrent refills of many processes are spread over K row locks.
+ * The rows contain slot numbers. Slot s of row j is the block of IDs starting at
+ * (s * K + j) * blockSize, so the rows hand out interleaved blocks.
  * <p>
  * For a convenient way to setup a new instance see {@link ObjectIdentifierDBBuilder}.
  * <p>
+ * By default the blocks are reserved in the generator's own database table. With an
+ * {@link IdBlockStore} (see {@link #setBlockStore(IdBlockStore)}) they are reserved in the
+ * store instead, while all in-memory modes, the padding and the prefix work unchanged.
+ * <p>
  * In any critical (fatal) situation this class throws a {@link DatabaseAccessException}.
  * 
  * @author M.Duchrow
- * @version 2.1
+ * @version 2.2
  */
-public class ObjectIdentifierDB extends ObjectIdentifierGenerator
+public class ObjectIdentifierDB extends ObjectIdentifierGenerator implements Closeable
 {
   // =========================================================================
   // CONSTANTS
@@ -53,6 +152,28 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
   private static final boolean DEBUG = "true".equals(System.getProperty("org.pfsw.db.debug", "false"));
 
   public static final int INITIAL_BLOCKSIZE = 1;
+  public static final String STRIDE_ROW_SEPARATOR = "@";
+  public static final String ROW_STRIPE_SEPARATOR = "#";
+  public static final int DEFAULT_OPTIMISTIC_MAX_RETRIES = 10;
+  public static final long DEFAULT_OPTIMISTIC_BACKOFF_MILLIS = 5L;
+  /**
+   * The time a chunk taken from a shared region should last if no fixed chunk size is set.
+   */
+  public static final long DEFAULT_SHARED_CHUNK_WINDOW_MILLIS = 1000L;
+  private static final long MAX_BACKOFF_MILLIS = 1000L;
+  private static final Random BACKOFF_RANDOM = new Random();
+
+  /**
+   * Orders ranges by their last ID, the highest first, which is the order they can be returned in.
+   */
+  private static final Comparator<IdRange> LAST_ID_DESCENDING = new Comparator<IdRange>()
+  {
+    @Override
+    public int compare(IdRange range1, IdRange range2)
+    {
+      return (range1.getLast() > range2.getLast()) ? -1 : ((range1.getLast() == range2.getLast()) ? 0 : 1);
+    }
+  };
 
   // =========================================================================
   // INSTANCE VARIABLES
@@ -63,6 +184,40 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
   protected boolean categoryInitialized = false;
   private long lastPrefetchedId = 0;
   private Integer blockSize = INITIAL_BLOCKSIZE;
+  private AdaptiveBlockSizePolicy adaptiveBlockSizePolicy = null;
+  private IdBlockAllocation blockAllocation = IdBlockAllocation.SELECT_FOR_UPDATE;
+  private volatile IdBlockAllocation resolvedBlockAllocation = null;
+  private int optimisticMaxRetries = DEFAULT_OPTIMISTIC_MAX_RETRIES;
+  private long optimisticBackoffMillis = DEFAULT_OPTIMISTIC_BACKOFF_MILLIS;
+  private final IdBlockAllocationStatistics allocationStatistics = new IdBlockAllocationStatistics();
+  private int prefetchThreshold = 0;
+  private Executor prefetchExecutor = null;
+  private boolean doubleBuffered = false;
+  private boolean lockFree = false;
+  private int stripeCount = 0;
+  private final ThreadLocal<IdSegment> threadStripe = new ThreadLocal<IdSegment>();
+  private final Map<Thread, IdSegment> stripes = new ConcurrentHashMap<Thread, IdSegment>();
+  private final AtomicLong abandonedIdCount = new AtomicLong(0);
+  private final AtomicReference<IdSegment> currentSegment = new AtomicReference<IdSegment>();
+  private final AtomicReference<IdSegment> standbySegment = new AtomicReference<IdSegment>();
+  private final AtomicBoolean standbyLoading = new AtomicBoolean(false);
+  private volatile boolean closed = false;
+  private IdRangeJournal rangeJournal = null;
+  private boolean journalRecovered = false;
+  private SharedIdRegion sharedRegion = null;
+  private int sharedChunkSize = 0;
+  private final AtomicReference<AdaptiveBlockSizePolicy> sharedChunkPolicy = new AtomicReference<AdaptiveBlockSizePolicy>();
+  private int strideNodeCount = 1;
+  private int strideNodeIndex = 0;
+  private int rowStripeCount = 0;
+  private List<ObjectIdentifierDB> rowStripes = null;
+  private IdBlockStore blockStore = null;
+  private IdRefillCoalescer refillCoalescer = null;
+  private IdRefillScheduler refillScheduler = null;
+  private boolean persistentConnection = false;
+  private DedicatedConnection dedicatedConnection = null;
+  private boolean primaryKeyMigration = false;
+  private final AtomicInteger nextRowStripe = new AtomicInteger(BACKOFF_RANDOM.nextInt(Short.MAX_VALUE));
 
   private IdGeneratorTableSpec tableSpec = IdGeneratorTableSpec.create();
 
@@ -85,6 +240,18 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
     return new ObjectIdentifierDB(ds, categoryName);
   }
 
+  /**
+   * Creates a new instance that reserves its blocks in the given store rather than
+   * in a database table.
+   *
+   * @param store The store of the next IDs (must not be null).
+   * @param categoryName The name of the OID's category (must not be null).
+   */
+  public static ObjectIdentifierDB create(IdBlockStore store, String categoryName)
+  {
+    return create((DataSource)null, categoryName).setBlockStore(store);
+  }
+
   /**
    * Creates a new instance with the data source and category.
    *
@@ -199,368 +366,2873 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
     return this;
   }
 
-  @Override
-  public synchronized long nextIdentifier()
+  /**
+   * Returns the policy that adjusts the block size to the consumption rate or null
+   * if the block size is fixed.
+   */
+  public AdaptiveBlockSizePolicy getAdaptiveBlockSizePolicy()
   {
-    if (getNextId() > getLastPrefetchedId())
-    {
-      loadNextIdFromDB();
-    }
-    return super.nextIdentifier();
+    return this.adaptiveBlockSizePolicy;
   }
 
-  // =========================================================================
-  // PROTECTED INSTANCE METHODS
-  // =========================================================================
   /**
-   * This method should be invoked to prevent automatic table creation which makes
-   * sense if the table has been create already externally.
+   * Sets the policy that adjusts the block size with each refill to the observed
+   * consumption rate. The block size set via {@link #setBlockSize(int)} is then just
+   * used as the initial value. A value of null switches back to a fixed block size.
+   * <p>
+   * The given policy instance must not be shared with any other generator.
    */
-  protected void tableAlreadyCreated()
+  public ObjectIdentifierDB setAdaptiveBlockSizePolicy(AdaptiveBlockSizePolicy policy)
   {
-    tableCreated = true;
+    this.adaptiveBlockSizePolicy = policy;
+    return this;
   }
 
-  protected synchronized void loadNextIdFromDB()
+  /**
+   * Returns how the blocks get reserved in the database.
+   */
+  public IdBlockAllocation getBlockAllocation()
   {
-    long id;
+    return this.blockAllocation;
+  }
 
-    if (isAllInitialized())
-    {
-      id = idFromDB();
-      setNextId(id);
-    }
+  /**
+   * Defines which SQL statements are used to reserve the blocks in the database.
+   * The default is {@link IdBlockAllocation#SELECT_FOR_UPDATE}.
+   * A value of null resets it to the default.
+   */
+  public ObjectIdentifierDB setBlockAllocation(IdBlockAllocation allocation)
+  {
+    this.blockAllocation = (allocation == null) ? IdBlockAllocation.SELECT_FOR_UPDATE : allocation;
+    this.resolvedBlockAllocation = null;
+    return this;
   }
 
-  protected boolean isAllInitialized() {
-    return isTableCreated() & isCategoryInitialized();
+  /**
+   * Returns how often an {@link IdBlockAllocation#OPTIMISTIC} reservation is retried
+   * after a conflict before it fails.
+   */
+  public int getOptimisticMaxRetries()
+  {
+    return this.optimisticMaxRetries;
   }
-  
-  protected synchronized boolean isTableCreated()
+
+  /**
+   * Sets how often an {@link IdBlockAllocation#OPTIMISTIC} reservation is retried
+   * after a conflict before a {@link DatabaseAccessException} is thrown.
+   * The default is {@link #DEFAULT_OPTIMISTIC_MAX_RETRIES}.
+   */
+  public ObjectIdentifierDB setOptimisticMaxRetries(int maxRetries)
   {
-    if (tableCreated)
+    if (maxRetries >= 0)
     {
-      return true;
+      this.optimisticMaxRetries = maxRetries;
     }
-    tableCreated = initializeTableIfNecessary();
-    return tableCreated;
+    return this;
   }
 
-  protected synchronized boolean isCategoryInitialized()
+  /**
+   * Returns the base time in milliseconds to back off before the first retry of
+   * an {@link IdBlockAllocation#OPTIMISTIC} reservation.
+   */
+  public long getOptimisticBackoffMillis()
   {
-    if (categoryInitialized)
+    return this.optimisticBackoffMillis;
+  }
+
+  /**
+   * Sets the base time in milliseconds to back off before the first retry of
+   * an {@link IdBlockAllocation#OPTIMISTIC} reservation. The time doubles with each
+   * further retry and the actual sleep time is a random value up to that time.
+   * The default is {@link #DEFAULT_OPTIMISTIC_BACKOFF_MILLIS}.
+   */
+  public ObjectIdentifierDB setOptimisticBackoffMillis(long millis)
+  {
+    if (millis >= 0)
     {
-      return true;
+      this.optimisticBackoffMillis = millis;
     }
-    categoryInitialized = initializeCategory();
-    return categoryInitialized;
+    return this;
   }
 
-  protected boolean initializeTableIfNecessary()
+  /**
+   * Returns the counters about the reservation of blocks in the database.
+   */
+  public IdBlockAllocationStatistics getAllocationStatistics()
   {
-    Connection conn = null;
-    PreparedStatement statement = null;
-    String action = null;
-    boolean ok = false;
+    return this.allocationStatistics;
+  }
 
-    synchronized (getDataSource())
-    {
-      try
-      {
-        conn = getDbConnection();
-      }
-      catch (SQLException ex)
-      {
-        logSqlExceptionStacktrace(ex, "Opening database connection for initializing table '%s' failed!", getTableName());
-        throw new DatabaseAccessException(ex, "Opening database connection for initializing table '%s' failed!", getTableName());
-      }
-      try
-      {
-        action = "Reading";
-        ok = checkTableExists(conn);
+  /**
+   * Returns the journal that records the currently served range or null if there is none.
+   */
+  public IdRangeJournal getRangeJournal()
+  {
+    return this.rangeJournal;
+  }
 
-        if (!ok)
-        {
-          action = "Creating";
-          createOidTable(conn);
-          ok = true;
-        }
+  /**
+   * Sets a journal that records the range currently served by this generator.
+   * Before the first block gets reserved in the database, the unused IDs recorded
+   * in the journal are consumed. Bulk reservations of a separate block
+   * (see {@link #reserveIdentifiers(int)}) are not recorded because all their IDs are
+   * handed out at once.
+   * <p>
+   * The journal must not be shared with any other generator and this must be
+   * set before the first ID is generated. It gets closed by {@link #close()}.
+   */
+  public ObjectIdentifierDB setRangeJournal(IdRangeJournal journal)
+  {
+    this.rangeJournal = journal;
+    return this;
+  }
 
-        if (ok)
-        {
-          ok = checkCategoryRowExists(conn);
-          if (!ok)
-          {
-            action = "Init";
-            createRowForCategory(conn);
-            ok = true;
-          }
-        }
-      }
-      catch (SQLException ex)
-      {
-        logSqlExceptionStacktrace(ex, "%s OID table '%s' failed.", action, getTableName());
-        throw new DatabaseAccessException(ex, "%s OID table '%s' failed.", action, getTableName());
-      }
-      finally
-      {
-        closeStatement(statement);
-        closeConnection(conn);
-      }
-      return ok;
+  /**
+   * Returns the region that is shared with other processes or null if there is none.
+   */
+  public SharedIdRegion getSharedRegion()
+  {
+    return this.sharedRegion;
+  }
+
+  /**
+   * Returns the number of IDs taken at once from the shared region or 0 if it
+   * is derived from the observed consumption rate.
+   */
+  public int getSharedChunkSize()
+  {
+    return this.sharedChunkSize;
+  }
+
+  /**
+   * Sets a region that is shared with the generators of the same category in other
+   * processes on the same host. Then this generator takes chunks of the given size
+   * from the region rather than reserving blocks in the database. Only the generator
+   * that finds the region drained reserves the next block in the database and puts it
+   * into the region. So the block size should be a multiple of the chunk size.
+   * Bulk reservations of a separate block (see {@link #reserveIdentifiers(int)})
+   * still go directly to the database.
+   * <p>
+   * Each chunk costs an exclusive lock and unlock of the region file, i.e. two system calls,
+   * plus the monitor of the file within this JVM. So the chunk size should be a multiple of the
+   * number of IDs this process typically consumes between two refills. With a chunk size of 0,
+   * each chunk is sized to last {@link #DEFAULT_SHARED_CHUNK_WINDOW_MILLIS} at the observed
+   * consumption rate, limited by the block size.
+   * <p>
+   * This must be set before the first ID is generated. The region gets closed by {@link #close()}.
+   *
+   * @param region The shared region or null to reserve all blocks directly in the database.
+   * @param chunkSize The number of IDs taken at once from the region or 0 to derive it from the consumption rate.
+   */
+  public ObjectIdentifierDB setSharedRegion(SharedIdRegion region, int chunkSize)
+  {
+    if ((region != null) && (chunkSize < 0))
+    {
+      throw new IllegalArgumentException("The chunk size of a shared region must not be negative but is " + chunkSize);
     }
+    this.sharedRegion = region;
+    this.sharedChunkSize = chunkSize;
+    return this;
   }
 
-  protected boolean initializeCategory()
+  /**
+   * Sets a region that is shared with the generators of the same category in other
+   * processes on the same host. The chunk size is derived from the consumption rate
+   * (see {@link #setSharedRegion(SharedIdRegion, int)}).
+   *
+   * @param region The shared region or null to reserve all blocks directly in the database.
+   */
+  public ObjectIdentifierDB setSharedRegion(SharedIdRegion region)
   {
-    Connection conn;
-    boolean ok = false;
+    return setSharedRegion(region, 0);
+  }
+
+  /**
+   * Returns true if this generator is one of several nodes with their own rows.
+   */
+  public boolean isStrided()
+  {
+    return getStrideNodeCount() > 1;
+  }
+
+  /**
+   * Returns the number of nodes that share the category in stride mode or 1.
+   */
+  public int getStrideNodeCount()
+  {
+    return this.strideNodeCount;
+  }
+
+  /**
+   * Returns the index of this node in stride mode (0 .. node count - 1).
+   */
+  public int getStrideNodeIndex()
+  {
+    return this.strideNodeIndex;
+  }
 
-    synchronized (getDataSource())
+  /**
+   * Lets this generator be the node with the given index among nodeCount nodes that
+   * generate IDs of the same category. Each node reserves its blocks in its own row
+   * and generates only IDs that are congruent to nodeIndex modulo nodeCount.
+   * A node count of 1 switches stride mode off.
+   * <p>
+   * This must be set before the first ID is generated and all nodes must use the same
+   * node count for the whole lifetime of the category.
+   *
+   * @param nodeCount The number of nodes (must be > 0).
+   * @param nodeIndex The index of this node (0 .. nodeCount - 1).
+   * @throws IllegalArgumentException if the node count or index is out of range.
+   */
+  public ObjectIdentifierDB setStride(int nodeCount, int nodeIndex)
+  {
+    if ((nodeCount <= 0) || (nodeIndex < 0) || (nodeIndex >= nodeCount))
     {
-      try
-      {
-        conn = getDbConnection();
-      }
-      catch (SQLException ex)
-      {
-        logSqlExceptionStacktrace(ex, "Opening database connection for initializing ID generator '%s' failed!", getCategory());
-        throw new DatabaseAccessException(ex, "Opening database connection for initializing ID generator '%s' failed!", getCategory());
-      }
-      try
-      {
-        ok = checkCategoryRowExists(conn);
-        if (!ok)
-        {
-          ok = createRowForCategory(conn);
-        }
-      }
-      catch (SQLException ex)
-      {
-        logSqlExceptionStacktrace(ex, "Failed to create row for category '%s' in table '%s'.", getCategory(), getTableName());
-        throw new DatabaseAccessException(ex, "Failed to create row for category '%s' in table '%s'.", getCategory(), getTableName());
-      }
-      finally
-      {
-        closeConnection(conn);
-      }
-      return ok;
+      throw new IllegalArgumentException(String.format("Invalid stride: node index %d of %d nodes", nodeIndex, nodeCount));
     }
+    this.strideNodeCount = nodeCount;
+    this.strideNodeIndex = nodeIndex;
+    setSqlSelectForUpdateStatement(null);
+    setSqlSelectCategoryStatement(null);
+    setSqlUpdateStatement(null);
+    return this;
   }
 
-  protected long idFromDB()
+  /**
+   * Returns the store in which the blocks are reserved or null if they are reserved
+   * in the generator's own table.
+   */
+  public IdBlockStore getBlockStore()
   {
-    Connection conn = null;
-    PreparedStatement statement = null;
-    ResultSet result = null;
-    long id = 0;
-    int currentBlockSize = 0;
-    long nextBlockStart = 0;
+    return this.blockStore;
+  }
 
-    try
+  /**
+   * Sets the store in which the blocks are reserved instead of the generator's own table.
+   * Then the data source and the table definition are not used.
+   * This must be set before the first ID is generated.
+   *
+   * @param store The store or null to use the generator's own table.
+   */
+  public ObjectIdentifierDB setBlockStore(IdBlockStore store)
+  {
+    this.blockStore = store;
+    return this;
+  }
+
+  /**
+   * Returns the coalescer that reserves the blocks of this generator together with
+   * those of other generators or null if each block is reserved in its own transaction.
+   */
+  public IdRefillCoalescer getRefillCoalescer()
+  {
+    return this.refillCoalescer;
+  }
+
+  /**
+   * Sets the coalescer that reserves the blocks of this generator together with those
+   * of other generators in one transaction. The coalescer must use the same database.
+   * It is not used if a block store is set.
+   *
+   * @param coalescer The coalescer or null to reserve each block in its own transaction.
+   */
+  public ObjectIdentifierDB setRefillCoalescer(IdRefillCoalescer coalescer)
+  {
+    this.refillCoalescer = coalescer;
+    return this;
+  }
+
+  /**
+   * Returns true if the category is split into several rows.
+   */
+  public boolean hasRowStripes()
+  {
+    return getRowStripeCount() > 1;
+  }
+
+  /**
+   * Returns the number of rows the category is split into or 0 if it is not split.
+   */
+  public int getRowStripeCount()
+  {
+    return this.rowStripeCount;
+  }
+
+  /**
+   * Splits the category into the given number of rows. Each refill reserves the
+   * next block of the fixed block size in the next row (round-robin).
+   * A bulk reservation of a separate block (see {@link #reserveIdentifiers(int)})
+   * takes a whole block as well, hence more identifiers than the block size
+   * are rejected with an IllegalArgumentException. An {@link AdaptiveBlockSizePolicy}
+   * is ignored and {@link #close()} does not return unused identifiers.
+   * <p>
+   * This must be set before the first ID is generated. All generators of the category
+   * must use the same number of rows and the same block size for the whole lifetime
+   * of the category. A value of 0 or 1 switches the row stripes off.
+   *
+   * @param count The number of rows (must not be negative).
+   */
+  public ObjectIdentifierDB setRowStripeCount(int count)
+  {
+    if (count < 0)
     {
-      conn = getDbConnection();
+      throw new IllegalArgumentException("The number of row stripes must not be negative but is " + count);
     }
-    catch (SQLException ex)
+    this.rowStripeCount = count;
+    return this;
+  }
+
+  /**
+   * Returns the name of the row in which this generator reserves its blocks.
+   * That is the category or in stride mode the category and the node index.
+   */
+  public String getCategoryRowName()
+  {
+    if (isStrided())
     {
-      logSqlExceptionStacktrace(ex, "Opening database for updating '%s' in table '%s' failed!", getCategory(), getTableName());
-      throw new DatabaseAccessException(ex, "Opening database for updating '%s' in table '%s' failed!", getCategory(), getTableName());
+      return getCategory() + STRIDE_ROW_SEPARATOR + getStrideNodeIndex();
     }
-    try
+    return getCategory();
+  }
+
+  /**
+   * Returns the number of remaining in-memory IDs below which the next block
+   * gets reserved in the background. A value of 0 means prefetching is disabled.
+   */
+  public int getPrefetchThreshold()
+  {
+    return this.prefetchThreshold;
+  }
+
+  /**
+   * Sets the number of remaining in-memory IDs below which the next block
+   * gets reserved in the database by a background thread.
+   * A value of 0 (the default) disables prefetching.
+   * The threshold should be less than the block size, otherwise each block is
+   * prefetched immediately after the previous one has been taken into use.
+   */
+  public ObjectIdentifierDB setPrefetchThreshold(int threshold)
+  {
+    if (threshold >= 0)
     {
-      statement = conn.prepareStatement(sqlSelectNextId());
-      result = statement.executeQuery();
-      if (result.next())
-      {
-        id = result.getLong(getNextIdColumnName());
-        logger().debugf("[%s] next-id from DB for category '%s': %d%n", Thread.currentThread().getName(), getCategory(), id);
-        if (blockSize == null)
-        {
-          currentBlockSize = result.getInt(getBlockSizeColumnName());
-        }
-        else
-        {
-          currentBlockSize = blockSize.intValue();
-        }
+      this.prefetchThreshold = threshold;
+    }
+    return this;
+  }
+
+  /**
+   * Sets the executor that runs the background prefetch of ID blocks.
+   * If not set a shared pool of daemon threads is used.
+   */
+  public ObjectIdentifierDB setPrefetchExecutor(Executor executor)
+  {
+    this.prefetchExecutor = executor;
+    return this;
+  }
+
+  /**
+   * Returns true if the generator keeps one connection with its prepared statements open
+   * across the refills.
+   */
+  public boolean isPersistentConnection()
+  {
+    return this.persistentConnection;
+  }
+
+  /**
+   * Activates or deactivates the use of one dedicated connection that is kept open
+   * across the refills together with the prepared statements, rather than getting a new
+   * connection from the data source for each refill. The connection gets validated
+   * before it is used after being idle and is replaced transparently if it is broken.
+   * It is closed by {@link #close()}.
+   * <p>
+   * This must be set before the first ID is generated.
+   */
+  public ObjectIdentifierDB setPersistentConnection(boolean isPersistentConnection)
+  {
+    this.persistentConnection = isPersistentConnection;
+    return this;
+  }
+
+  /**
+   * Returns true if the primary key on the category column gets added to an existing
+   * table that has none.
+   */
+  public boolean isPrimaryKeyMigration()
+  {
+    return this.primaryKeyMigration;
+  }
+
+  /**
+   * If set to true, the primary key on the category column gets added to an existing
+   * table that has none. That happens once when the table is initialized and fails if a
+   * category has more than one row. It does not happen if the table has been declared
+   * as already created (see {@link ObjectIdentifierDBBuilder#tableAlreadyCreated()}).
+   * The default is false.
+   */
+  public ObjectIdentifierDB setPrimaryKeyMigration(boolean migrate)
+  {
+    this.primaryKeyMigration = migrate;
+    return this;
+  }
+
+  /**
+   * Returns the scheduler that runs the background prefetch of this generator
+   * or null if the prefetch executor is used.
+   */
+  public IdRefillScheduler getRefillScheduler()
+  {
+    return this.refillScheduler;
+  }
+
+  /**
+   * Subscribes this generator to the given scheduler that runs the background prefetch
+   * of many generators with bounded concurrency, the ones that run out of IDs first
+   * with priority. If no prefetch threshold is set, the next block gets prefetched
+   * as soon as half of the current block has been used.
+   *
+   * @param scheduler The scheduler or null to use the prefetch executor.
+   */
+  public ObjectIdentifierDB setRefillScheduler(IdRefillScheduler scheduler)
+  {
+    this.refillScheduler = scheduler;
+    return this;
+  }
+
+  /**
+   * Returns true if the IDs are served from double-buffered segments.
+   */
+  public boolean isDoubleBuffered()
+  {
+    return this.doubleBuffered;
+  }
+
+  /**
+   * Activates or deactivates the double-buffered segment mode.
+   * In this mode the IDs are served from a current segment while the next block gets
+   * loaded into a standby segment. The standby segment is filled as soon as the
+   * number of remaining IDs in the current segment falls below the prefetch threshold or,
+   * if no threshold is set, immediately after it has replaced the previous current segment.
+   * <p>
+   * This must be set before the first ID is generated.
+   */
+  public ObjectIdentifierDB setDoubleBuffered(boolean isDoubleBuffered)
+  {
+    this.doubleBuffered = isDoubleBuffered;
+    return this;
+  }
+
+  /**
+   * Returns true if the IDs are served from a segment without acquiring the monitor
+   * of this object.
+   */
+  public boolean isLockFree()
+  {
+    return this.lockFree || isDoubleBuffered();
+  }
+
+  /**
+   * Activates or deactivates the lock-free mode.
+   * In this mode the IDs are served from the current segment by an atomic counter.
+   * Only when the segment is exhausted the refill is coordinated between the threads.
+   * The next block gets reserved synchronously unless a prefetch threshold is set.
+   * <p>
+   * This must be set before the first ID is generated.
+   */
+  public ObjectIdentifierDB setLockFree(boolean isLockFree)
+  {
+    this.lockFree = isLockFree;
+    return this;
+  }
+
+  /**
+   * Returns true if each thread gets its own sub-block of the reserved blocks.
+   */
+  public boolean isStriped()
+  {
+    return getStripeCount() > 0;
+  }
+
+  /**
+   * Returns the number of sub-blocks each block gets split into or 0 if striping is disabled.
+   */
+  public int getStripeCount()
+  {
+    return this.stripeCount;
+  }
+
+  /**
+   * Activates the striped mode by defining the number of sub-blocks each reserved block
+   * gets split into. Each thread takes its IDs from its own sub-block.
+   * The sub-block size is the block size divided by the stripe count (at least 1).
+   * A value of 0 (the default) disables striping.
+   * <p>
+   * This must be set before the first ID is generated.
+   */
+  public ObjectIdentifierDB setStripeCount(int newValue)
+  {
+    if (newValue >= 0)
+    {
+      this.stripeCount = newValue;
+    }
+    return this;
+  }
+
+  /**
+   * Returns the number of IDs that have been assigned to the sub-blocks of threads
+   * but have not yet been handed out. That includes the sub-blocks of threads that
+   * already terminated and the IDs of which are lost for good.
+   */
+  public long getStrandedIdCount()
+  {
+    long count;
+
+    pruneStripesOfTerminatedThreads();
+    count = abandonedIdCount.get();
+    for (IdSegment stripe : stripes.values())
+    {
+      count += stripe.getRemainingCount();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the segment the IDs are currently served from or null if there is none.
+   * In the default mode (neither lock-free nor double-buffered) there is no current segment.
+   */
+  public IdSegment getCurrentSegment()
+  {
+    return currentSegment.get();
+  }
+
+  /**
+   * Returns the segment that has already been reserved in the database and will be
+   * used when the current IDs are exhausted or null if there is none.
+   */
+  public IdSegment getStandbySegment()
+  {
+    return standbySegment.get();
+  }
+
+  @Override
+  public long nextIdentifier()
+  {
+    return toStrideId(nextCounterValue());
+  }
+
+  /**
+   * Returns a range of new identifiers. If the in-memory IDs available to the caller
+   * don't suffice and the requested count is not larger than the block size, the next
+   * regular block gets loaded (or swapped in) and the rest of the current block is skipped.
+   * Only a count larger than the block size gets a separate block of exactly that size,
+   * which is reserved in the database with a single round trip.
+   * The identifiers are consecutive unless stride mode is active. Then the step
+   * of the range is the number of nodes.
+   * 
+   * @param count The number of identifiers to reserve (must be > 0).
+   * @throws IllegalArgumentException if count is not > 0.
+   */
+  @Override
+  public IdRange reserveIdentifiers(int count)
+  {
+    IdRange range;
+
+    range = reserveCounterValues(count);
+    if (isStrided())
+    {
+      return IdRange.create(toStrideId(range.getStart()), range.getCount(), getStrideNodeCount());
+    }
+    return range;
+  }
+
+  /**
+   * Returns the next value of the counter that is kept in the database row.
+   * Without stride mode that is the next identifier.
+   */
+  protected long nextCounterValue()
+  {
+    if (isStriped())
+    {
+      return nextIdentifierFromStripe();
+    }
+    if (isLockFree())
+    {
+      return nextIdentifierFromSegments();
+    }
+    return nextIdentifierFromCounter();
+  }
+
+  /**
+   * Returns a range of consecutive values of the counter that is kept in the database row.
+   */
+  protected IdRange reserveCounterValues(int count)
+  {
+    IdSegment segment;
+    IdRange range;
+
+    checkReserveCount(count);
+    if (!isStriped() && !isLockFree())
+    {
+      return reserveIdentifiersFromCounter(count);
+    }
+    if (isStriped())
+    {
+      range = reserveExactlyFromStripe(count);
+      if (range != null)
+      {
+        return range;
+      }
+    }
+    if (count <= getBlockSize())
+    {
+      // A second swap is only necessary if other threads took the new segment's IDs in the meantime
+      for (int attempt = 0; attempt < 2; attempt++)
+      {
+        segment = getCurrentSegment();
+        range = reserveExactlyFromSegment(segment, count);
+        if (range != null)
+        {
+          return range;
+        }
+        if (segment != null)
+        {
+          // Skips the rest, so no other thread keeps serving from the replaced segment
+          segment.reserve(Integer.MAX_VALUE);
+        }
+        swapSegments(segment);
+      }
+    }
+    return reserveBlock(count);
+  }
+
+  /**
+   * Stops this generator and returns all IDs that have been reserved but not yet
+   * handed out to the database table. That is done by conditional updates that set the
+   * next ID back to the start of the unused IDs only if it still points behind them.
+   * So nothing is returned if another generator has already reserved a later block.
+   * Unused IDs in sub-blocks of threads (striped mode) are returned as far as they
+   * are adjacent to the end of the current block.
+   * <p>
+   * Failures are logged but not thrown. After closing, this generator throws an
+   * IllegalStateException as soon as it would need to reserve another block.
+   * Calling this method more than once has no effect.
+   */
+  @Override
+  public void close()
+  {
+    List<IdRange> unusedRanges;
+
+    synchronized (this)
+    {
+      if (isClosed())
+      {
+        return;
+      }
+      closed = true;
+      waitForStandbyLoading();
+      unusedRanges = takeUnusedRanges();
+      if (hasRangeJournal())
+      {
+        // Must happen before the release, otherwise the IDs could be handed out twice
+        getRangeJournal().markConsumed();
+      }
+    }
+    if (!unusedRanges.isEmpty())
+    {
+      releaseUnusedRanges(unusedRanges);
+    }
+    closeRangeJournal();
+    closeSharedRegion();
+    closeDedicatedConnection();
+  }
+
+  /**
+   * Returns true if {@link #close()} has been called.
+   */
+  public boolean isClosed()
+  {
+    return this.closed;
+  }
+
+  /**
+   * Creates the table and the row of the category if necessary and loads the first
+   * block, so the first identifier is served from memory. If prefetching is enabled,
+   * the loading of the following block gets started as well.
+   * Calling this method again has no effect as long as the current block is not exhausted.
+   *
+   * @return This generator.
+   * @throws DatabaseAccessException if the table, row or block cannot be accessed.
+   */
+  public synchronized ObjectIdentifierDB warmUp()
+  {
+    checkNotClosed();
+    if (isStriped() || isLockFree())
+    {
+      if (getCurrentSegment() == null)
+      {
+        swapSegments(null);
+        fillStandbyIfNecessary(getCurrentSegment());
+      }
+    }
+    else if (getNextId() > getLastPrefetchedId())
+    {
+      loadNextIdFromDB();
+      prefetchIfNecessary(getRemainingIdCount());
+    }
+    return this;
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Maps the given counter value to the identifier of this node in stride mode.
+   */
+  protected long toStrideId(long counterValue)
+  {
+    if (isStrided())
+    {
+      return (counterValue * getStrideNodeCount()) + getStrideNodeIndex();
+    }
+    return counterValue;
+  }
+
+  /**
+   * Returns the value of the counter a new row gets initialized with.
+   * In stride mode that is the lowest value that is mapped to an ID not below the start ID.
+   */
+  protected long initialCounterValue()
+  {
+    if (isStrided())
+    {
+      return (getNextId() + getStrideNodeCount() - 1) / getStrideNodeCount();
+    }
+    return getNextId();
+  }
+
+  /**
+   * This method should be invoked to prevent automatic table creation which makes
+   * sense if the table has been create already externally.
+   */
+  protected void tableAlreadyCreated()
+  {
+    tableCreated = true;
+  }
+
+  /**
+   * Returns the next ID from the in-memory counter while holding the monitor of this object.
+   */
+  protected synchronized long nextIdentifierFromCounter()
+  {
+    long id;
+
+    if (getNextId() > getLastPrefetchedId())
+    {
+      loadNextIdFromDB();
+    }
+    id = super.nextIdentifier();
+    journalAdvance(id);
+    prefetchIfNecessary(getRemainingIdCount());
+    return id;
+  }
+
+  /**
+   * Returns the requested number of IDs from the in-memory counter. If the current
+   * block contains too few of them, its rest is skipped and the next regular block gets loaded.
+   * Only if the count exceeds the block size, the IDs come from a new block of exactly that size.
+   */
+  protected synchronized IdRange reserveIdentifiersFromCounter(int count)
+  {
+    IdRange range;
+
+    if (getRemainingIdCount() < count)
+    {
+      if (count > getBlockSize())
+      {
+        return reserveBlock(count);
+      }
+      if (getRemainingIdCount() > 0)
+      {
+        setNextId(getLastPrefetchedId() + 1);
+      }
+      loadNextIdFromDB();
+      if (getRemainingIdCount() < count)
+      {
+        return reserveBlock(count); // The block size policy handed out a smaller block
+      }
+    }
+    range = super.reserveIdentifiers(count);
+    journalAdvance(range.getLast());
+    prefetchIfNecessary(getRemainingIdCount());
+    return range;
+  }
+
+  protected synchronized void loadNextIdFromDB()
+  {
+    long id;
+
+    if (isAllInitialized())
+    {
+      waitForStandbyLoading();
+      if (getNextId() <= getLastPrefetchedId())
+      {
+        return; // Another thread switched to the next block while this one was waiting
+      }
+      if (takePrefetchedBlock())
+      {
+        return;
+      }
+      id = idFromDB();
+      setNextId(id);
+    }
+  }
+
+  /**
+   * Returns the next ID from the current segment. If it is exhausted, the standby
+   * segment becomes the current segment.
+   */
+  protected long nextIdentifierFromSegments()
+  {
+    IdSegment segment;
+    long id;
+
+    while (true)
+    {
+      segment = getCurrentSegment();
+      if (segment != null)
+      {
+        id = segment.next();
+        if (id != IdSegment.EXHAUSTED)
+        {
+          journalAdvance(id);
+          fillStandbyIfNecessary(segment);
+          return id;
+        }
+      }
+      swapSegments(segment);
+    }
+  }
+
+  /**
+   * Returns the next ID from the sub-block of the current thread. If it is exhausted,
+   * the next sub-block gets taken from the current segment.
+   */
+  protected long nextIdentifierFromStripe()
+  {
+    IdSegment stripe;
+    long id;
+
+    stripe = threadStripe.get();
+    if (stripe != null)
+    {
+      id = stripe.next();
+      if (id != IdSegment.EXHAUSTED)
+      {
+        return id;
+      }
+    }
+    stripe = IdSegment.create(reserveFromSegments(getStripeSize()));
+    threadStripe.set(stripe);
+    if (stripes.put(Thread.currentThread(), stripe) == null)
+    {
+      pruneStripesOfTerminatedThreads();
+    }
+    return stripe.next();
+  }
+
+  /**
+   * Takes up to the given number of IDs from the current segment at once.
+   * If the current segment is exhausted, the standby segment becomes the current segment.
+   */
+  protected IdRange reserveFromSegments(int count)
+  {
+    IdSegment segment;
+    IdRange range;
+
+    while (true)
+    {
+      segment = getCurrentSegment();
+      if (segment != null)
+      {
+        range = segment.reserve(count);
+        if (range != null)
+        {
+          journalAdvance(range.getLast());
+          fillStandbyIfNecessary(segment);
+          return range;
+        }
+      }
+      swapSegments(segment);
+    }
+  }
+
+  /**
+   * Takes exactly the given number of IDs from the sub-block of the current thread.
+   * Its IDs have been journaled already when it was taken from the current segment,
+   * so only the current segment decides whether the next block must be prefetched.
+   *
+   * @return The taken range or null if the thread has no sub-block or it has fewer IDs left.
+   */
+  protected IdRange reserveExactlyFromStripe(int count)
+  {
+    IdSegment stripe;
+    IdSegment segment;
+    IdRange range;
+
+    stripe = threadStripe.get();
+    if (stripe == null)
+    {
+      return null;
+    }
+    range = stripe.reserveExactly(count);
+    if (range != null)
+    {
+      segment = getCurrentSegment();
+      if (segment != null)
+      {
+        fillStandbyIfNecessary(segment);
+      }
+    }
+    return range;
+  }
+
+  /**
+   * Takes exactly the given number of IDs from the given segment.
+   *
+   * @return The taken range or null if the segment is null or has fewer IDs left.
+   */
+  protected IdRange reserveExactlyFromSegment(IdSegment segment, int count)
+  {
+    IdRange range;
+
+    if (segment == null)
+    {
+      return null;
+    }
+    range = segment.reserveExactly(count);
+    if (range != null)
+    {
+      journalAdvance(range.getLast());
+      fillStandbyIfNecessary(segment);
+    }
+    return range;
+  }
+
+  /**
+   * Takes the given range back if it is the last one that has been handed out, so its
+   * IDs get handed out again. In stride mode and striped mode nothing is taken back.
+   *
+   * @param range A range returned by {@link #reserveIdentifiers(int)}, none of its IDs must have been used.
+   * @return true if the range has been taken back.
+   */
+  protected boolean releaseIdentifiers(IdRange range)
+  {
+    IdSegment segment;
+
+    if (isStrided() || isStriped())
+    {
+      return false;
+    }
+    if (isLockFree())
+    {
+      segment = getCurrentSegment();
+      return (segment != null) && segment.release(range);
+    }
+    synchronized (this)
+    {
+      if ((range.getStep() != 1) || (range.getLast() + 1 != getNextId()))
+      {
+        return false;
+      }
+      setNextId(range.getStart());
+      return true;
+    }
+  }
+
+  protected int getStripeSize()
+  {
+    IdSegment segment;
+    int size;
+
+    segment = getCurrentSegment();
+    size = (segment == null) ? getBlockSize() : segment.getRange().getCount();
+    return Math.max(1, size / getStripeCount());
+  }
+
+  /**
+   * Removes the sub-blocks of terminated threads from the registry and
+   * remembers their unused IDs as abandoned.
+   */
+  protected void pruneStripesOfTerminatedThreads()
+  {
+    Iterator<Entry<Thread, IdSegment>> iterator;
+    Entry<Thread, IdSegment> entry;
+
+    iterator = stripes.entrySet().iterator();
+    while (iterator.hasNext())
+    {
+      entry = iterator.next();
+      if (!entry.getKey().isAlive())
+      {
+        iterator.remove();
+        abandonedIdCount.addAndGet(entry.getValue().getRemainingCount());
+      }
+    }
+  }
+
+  /**
+   * Replaces the given exhausted segment by the standby segment. If there is no standby
+   * segment available, the next block gets reserved synchronously.
+   * Nothing happens if another thread already replaced the exhausted segment.
+   */
+  protected synchronized void swapSegments(IdSegment exhaustedSegment)
+  {
+    IdSegment segment;
+
+    waitForStandbyLoading();
+    if (getCurrentSegment() != exhaustedSegment)
+    {
+      return;
+    }
+    segment = standbySegment.getAndSet(null);
+    if (segment == null)
+    {
+      segment = IdSegment.create(recoverOrReserveBlock());
+    }
+    journalRange(segment.getRange());
+    currentSegment.set(segment);
+  }
+
+  protected void fillStandbyIfNecessary(IdSegment segment)
+  {
+    if (isPrefetchEnabled())
+    {
+      prefetchIfNecessary(segment.getRemainingCount());
+    }
+    else if (isDoubleBuffered() && (getStandbySegment() == null))
+    {
+      startStandbyLoading();
+    }
+  }
+
+  /**
+   * Reserves the next block in the database after ensuring that table and category
+   * row exist.
+   *
+   * @param count The exact size of the block or 0 to use the block size of this generator.
+   * @throws DatabaseAccessException if no block could be reserved.
+   */
+  protected IdRange reserveBlock(int count)
+  {
+    IdRange block = null;
+
+    checkNotClosed();
+    if (isAllInitialized())
+    {
+      block = obtainBlock(count);
+    }
+    if (block == null)
+    {
+      throw new DatabaseAccessException("No row found for category '%s' in table '%s'", getCategory(), getTableName());
+    }
+    return block;
+  }
+
+  protected boolean hasAdaptiveBlockSizePolicy()
+  {
+    return getAdaptiveBlockSizePolicy() != null;
+  }
+
+  protected boolean isPrefetchEnabled()
+  {
+    return getEffectivePrefetchThreshold() > 0;
+  }
+
+  /**
+   * Returns the prefetch threshold, which defaults to half the block size
+   * if a refill scheduler is set.
+   */
+  protected int getEffectivePrefetchThreshold()
+  {
+    if ((getPrefetchThreshold() == 0) && hasRefillScheduler())
+    {
+      return Math.max(1, getBlockSize() / 2);
+    }
+    return getPrefetchThreshold();
+  }
+
+  protected boolean hasRefillScheduler()
+  {
+    return getRefillScheduler() != null;
+  }
+
+  /**
+   * Returns the number of IDs that can still be handed out before the next block is needed.
+   */
+  protected long getServableIdCount()
+  {
+    IdSegment segment;
+
+    if (isLockFree() || isStriped())
+    {
+      segment = getCurrentSegment();
+      return (segment == null) ? 0 : segment.getRemainingCount();
+    }
+    return getRemainingIdCount();
+  }
+
+  /**
+   * Returns the number of IDs of the current block that have not yet been handed out.
+   */
+  protected long getRemainingIdCount()
+  {
+    return Math.max(0, getLastPrefetchedId() - getNextId() + 1);
+  }
+
+  /**
+   * Starts the background reservation of the next block if prefetching is enabled and
+   * the given number of remaining IDs has fallen below the threshold.
+   */
+  protected void prefetchIfNecessary(long remainingIdCount)
+  {
+    if (isPrefetchEnabled() && (remainingIdCount < getEffectivePrefetchThreshold()))
+    {
+      startStandbyLoading();
+    }
+  }
+
+  /**
+   * Starts the background reservation of the next block into the standby segment
+   * unless there is already a standby segment or its loading is in progress.
+   */
+  protected void startStandbyLoading()
+  {
+    Runnable prefetchTask;
+
+    if (isClosed() || (getStandbySegment() != null) || !standbyLoading.compareAndSet(false, true))
+    {
+      return;
+    }
+    if (getStandbySegment() != null)
+    {
+      standbyLoading.set(false);
+      return;
+    }
+    prefetchTask = new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        prefetchBlock();
+      }
+    };
+    try
+    {
+      if (hasRefillScheduler())
+      {
+        getRefillScheduler().schedule(this, prefetchTask);
+      }
+      else
+      {
+        getPrefetchExecutor().execute(prefetchTask);
+      }
+    }
+    catch (RejectedExecutionException e)
+    {
+      prefetchCompleted(null);
+      logger().warnf(e, "Prefetch of next ID block for category '%s' rejected", getCategory());
+    }
+  }
+
+  /**
+   * Reserves the next block in the database without holding the monitor of this object.
+   * Runs in a background thread.
+   */
+  protected void prefetchBlock()
+  {
+    IdRange block = null;
+
+    try
+    {
+      block = obtainBlock(0);
+    }
+    catch (RuntimeException e)
+    {
+      logger().warnf(e, "Prefetch of next ID block for category '%s' failed", getCategory());
+    }
+    finally
+    {
+      prefetchCompleted(block);
+    }
+  }
+
+  protected synchronized void prefetchCompleted(IdRange block)
+  {
+    if (block != null)
+    {
+      standbySegment.set(IdSegment.create(block));
+    }
+    standbyLoading.set(false);
+    notifyAll();
+  }
+
+  /**
+   * If the loading of the standby segment is in progress this method waits for its
+   * completion rather than letting the caller reserve yet another block.
+   * Must be called while holding the monitor of this object. Since waiting releases
+   * the monitor, the caller has to re-check its state afterwards.
+   */
+  protected void waitForStandbyLoading()
+  {
+    while (standbyLoading.get())
+    {
+      try
+      {
+        wait();
+      }
+      catch (@SuppressWarnings("unused") InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Switches to the block that has been reserved in the background, if any.
+   * Must be called while holding the monitor of this object.
+   *
+   * @return true if a prefetched block has been taken into use.
+   */
+  protected boolean takePrefetchedBlock()
+  {
+    IdSegment segment;
+
+    segment = standbySegment.getAndSet(null);
+    if (segment == null)
+    {
+      return false;
+    }
+    journalRange(segment.getRange());
+    setNextId(segment.getRange().getStart());
+    setLastPrefetchedId(segment.getRange().getLast());
+    return true;
+  }
+
+  /**
+   * Returns the unused IDs recorded in the journal if this is the first block of this
+   * generator, otherwise a new block reserved in the database.
+   */
+  protected IdRange recoverOrReserveBlock()
+  {
+    IdRange block;
+
+    checkNotClosed();
+    block = recoverJournaledRange();
+    if (block == null)
+    {
+      block = reserveBlock(0);
+    }
+    return block;
+  }
+
+  /**
+   * Returns the unused IDs recorded in the journal or null if there are none.
+   * Only the first call returns anything.
+   */
+  protected synchronized IdRange recoverJournaledRange()
+  {
+    IdRange range;
+
+    if (!hasRangeJournal() || journalRecovered)
+    {
+      return null;
+    }
+    journalRecovered = true;
+    range = getRangeJournal().recover();
+    if (range != null)
+    {
+      logger().infof("Recovered %d unused IDs of category '%s' from %s", range.getCount(), getCategory(), getRangeJournal());
+    }
+    return range;
+  }
+
+  protected void journalRange(IdRange range)
+  {
+    if (hasRangeJournal())
+    {
+      getRangeJournal().recordRange(range);
+    }
+  }
+
+  /**
+   * Must be called before the given ID gets handed out.
+   */
+  protected void journalAdvance(long id)
+  {
+    if (hasRangeJournal())
+    {
+      getRangeJournal().advance(id);
+    }
+  }
+
+  protected boolean hasRangeJournal()
+  {
+    return getRangeJournal() != null;
+  }
+
+  protected void closeRangeJournal()
+  {
+    if (hasRangeJournal())
+    {
+      try
+      {
+        getRangeJournal().close();
+      }
+      catch (IOException e)
+      {
+        logger().warnf(e, "Closing %s failed", getRangeJournal());
+      }
+    }
+  }
+
+  protected boolean hasSharedRegion()
+  {
+    return getSharedRegion() != null;
+  }
+
+  /**
+   * Closes the persistent connection of this generator and of its row stripes.
+   */
+  protected void closeDedicatedConnection()
+  {
+    List<ObjectIdentifierDB> stripes;
+
+    synchronized (this)
+    {
+      stripes = rowStripes;
+    }
+    if (stripes != null)
+    {
+      for (ObjectIdentifierDB stripe : stripes)
+      {
+        stripe.closeDedicatedConnection();
+      }
+    }
+    if (dedicatedConnection != null)
+    {
+      dedicatedConnection.close();
+    }
+  }
+
+  protected void closeSharedRegion()
+  {
+    if (hasSharedRegion())
+    {
+      try
+      {
+        getSharedRegion().close();
+      }
+      catch (IOException e)
+      {
+        logger().warnf(e, "Closing %s failed", getSharedRegion());
+      }
+    }
+  }
+
+  protected void checkNotClosed()
+  {
+    if (isClosed())
+    {
+      throw new IllegalStateException(String.format("ID generator for category '%s' has been closed", getCategory()));
+    }
+  }
+
+  /**
+   * Removes all IDs that have not yet been handed out from the in-memory state of
+   * this generator and returns them. Must be called while holding the monitor of this object.
+   */
+  protected List<IdRange> takeUnusedRanges()
+  {
+    List<IdRange> ranges = new ArrayList<IdRange>();
+    long remaining;
+
+    remaining = getRemainingIdCount();
+    if (remaining > 0)
+    {
+      ranges.add(IdRange.create(getNextId(), (int)remaining));
+      setNextId(getLastPrefetchedId() + 1);
+    }
+    addUnusedRange(ranges, currentSegment.get());
+    addUnusedRange(ranges, standbySegment.getAndSet(null));
+    for (IdSegment stripe : stripes.values())
+    {
+      addUnusedRange(ranges, stripe);
+    }
+    return ranges;
+  }
+
+  protected void addUnusedRange(List<IdRange> ranges, IdSegment segment)
+  {
+    IdRange range;
+
+    if (segment != null)
+    {
+      range = segment.reserve(Integer.MAX_VALUE);
+      if (range != null)
+      {
+        ranges.add(range);
+      }
+    }
+  }
+
+  /**
+   * Returns the given unused ranges to the database table, starting with the highest one.
+   * It stops at the first range that is not adjacent to the next ID in the table.
+   *
+   * @return The number of IDs that have been returned.
+   */
+  protected long releaseUnusedRanges(List<IdRange> ranges)
+  {
+    Connection conn = null;
+    long released = 0;
+
+    if (hasRowStripes())
+    {
+      // The rows contain slots, a partially used block cannot be returned
+      return 0;
+    }
+    if (hasBlockStore())
+    {
+      return releaseRangesToStore(ranges);
+    }
+    Collections.sort(ranges, LAST_ID_DESCENDING);
+    try
+    {
+      conn = getDbConnection();
+      for (IdRange range : ranges)
+      {
+        if (!resetNextIdIfUnchanged(conn, range.getLast() + 1, range.getStart()))
+        {
+          break;
+        }
+        released += range.getCount();
+      }
+      conn.commit();
+      logger().debugf("Returned %d unused IDs of category '%s' to table '%s'%n", released, getCategory(), getTableName());
+    }
+    catch (SQLException ex)
+    {
+      if (conn != null)
+      {
+        rollback(conn);
+      }
+      logger().warnf(ex, "Returning unused IDs of category '%s' to table '%s' failed", getCategory(), getTableName());
+      released = 0;
+    }
+    finally
+    {
+      closeConnection(conn);
+    }
+    return released;
+  }
+
+  /**
+   * Gives the given ranges back to the block store, starting with the last one.
+   * Stops at the first range that cannot be given back.
+   *
+   * @return The number of IDs given back.
+   */
+  protected long releaseRangesToStore(List<IdRange> ranges)
+  {
+    long released = 0;
+
+    Collections.sort(ranges, LAST_ID_DESCENDING);
+    try
+    {
+      for (IdRange range : ranges)
+      {
+        if (!getBlockStore().releaseRange(getCategoryRowName(), range))
+        {
+          break;
+        }
+        released += range.getCount();
+      }
+    }
+    catch (RuntimeException ex)
+    {
+      logger().warnf(ex, "Returning unused IDs of category '%s' to %s failed", getCategory(), getBlockStore());
+    }
+    return released;
+  }
+
+  /**
+   * Sets the next ID of the category's row to the given new value if it still
+   * contains the expected value.
+   *
+   * @return true if the row has been updated.
+   */
+  protected boolean resetNextIdIfUnchanged(Connection conn, long expectedId, long newId) throws SQLException
+  {
+    PreparedStatement statement;
+
+    statement = prepareStatement(conn, sqlUpdateNextIdIfUnchanged(false));
+    try
+    {
+      statement.setLong(1, newId);
+      statement.setString(2, getCategoryRowName());
+      statement.setLong(3, expectedId);
+      return statement.executeUpdate() > 0;
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+  }
+
+  protected boolean isAllInitialized() {
+    return isTableCreated() & isCategoryInitialized();
+  }
+  
+  protected synchronized boolean isTableCreated()
+  {
+    if (tableCreated)
+    {
+      return true;
+    }
+    tableCreated = initializeTableIfNecessary();
+    return tableCreated;
+  }
+
+  protected synchronized boolean isCategoryInitialized()
+  {
+    if (categoryInitialized)
+    {
+      return true;
+    }
+    categoryInitialized = initializeCategory();
+    return categoryInitialized;
+  }
+
+  /**
+   * Creates the table if it does not exist yet. Generators of this JVM that use the same
+   * table and data source do that only once at a time, generators of other tables are not blocked.
+   */
+  protected boolean initializeTableIfNecessary()
+  {
+    if (hasBlockStore())
+    {
+      return true;
+    }
+    //@formatter:off
+    return InitializationBarrier.runOnce(getDataSource(), InitializationBarrier.KIND_TABLE, getTableName(), 
+        new Callable<Boolean>()
+        {
+          @Override
+          public Boolean call()
+          {
+            return Boolean.valueOf(createTableIfNecessary());
+          }
+        });
+    //@formatter:on
+  }
+
+  protected boolean createTableIfNecessary()
+  {
+    Connection conn = null;
+    String action = null;
+
+    try
+    {
+      conn = getDbConnection();
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Opening database connection for initializing table '%s' failed!", getTableName());
+      throw new DatabaseAccessException(ex, "Opening database connection for initializing table '%s' failed!", getTableName());
+    }
+    try
+    {
+      action = "Reading";
+      if (!checkTableExists(conn))
+      {
+        action = "Creating";
+        createOidTable(conn);
+      }
+      else if (isPrimaryKeyMigration())
+      {
+        action = "Migrating";
+        migratePrimaryKeyIfNecessary(conn);
+      }
+      return true;
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "%s OID table '%s' failed.", action, getTableName());
+      throw new DatabaseAccessException(ex, "%s OID table '%s' failed.", action, getTableName());
+    }
+    finally
+    {
+      closeConnection(conn);
+    }
+  }
+
+  /**
+   * Creates the row of the category if it does not exist yet. Generators of this JVM that use
+   * the same category, table and data source do that only once at a time.
+   */
+  protected boolean initializeCategory()
+  {
+    if (hasBlockStore())
+    {
+      return initializeCategoryInStore();
+    }
+    //@formatter:off
+    return InitializationBarrier.runOnce(getDataSource(), InitializationBarrier.KIND_CATEGORY_ROW, getTableName() + "/" + getCategoryRowName(), 
+        new Callable<Boolean>()
+        {
+          @Override
+          public Boolean call()
+          {
+            return Boolean.valueOf(createCategoryRowIfNecessary());
+          }
+        });
+    //@formatter:on
+  }
+
+  protected boolean createCategoryRowIfNecessary()
+  {
+    Connection conn;
+    boolean ok = false;
+
+    try
+    {
+      conn = getDbConnection();
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Opening database connection for initializing ID generator '%s' failed!", getCategory());
+      throw new DatabaseAccessException(ex, "Opening database connection for initializing ID generator '%s' failed!", getCategory());
+    }
+    try
+    {
+      ok = checkCategoryRowExists(conn);
+      if (!ok)
+      {
+        ok = createRowForCategory(conn);
+      }
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Failed to create row for category '%s' in table '%s'.", getCategory(), getTableName());
+      throw new DatabaseAccessException(ex, "Failed to create row for category '%s' in table '%s'.", getCategory(), getTableName());
+    }
+    finally
+    {
+      closeConnection(conn);
+    }
+    return ok;
+  }
+
+  protected long idFromDB()
+  {
+    IdRange block;
+
+    checkNotClosed();
+    block = recoverJournaledRange();
+    if (block == null)
+    {
+      block = obtainBlock(0);
+    }
+    if (block == null)
+    {
+      return 0;
+    }
+    journalRange(block);
+    setLastPrefetchedId(block.getLast());
+    return block.getStart();
+  }
+
+  /**
+   * Returns the next block of IDs. With a shared region it is a chunk taken from
+   * the region, otherwise it gets reserved in the database.
+   * This method does not modify the in-memory state of this generator.
+   *
+   * @param requestedCount The exact size of the block or 0 to use the block size of this generator.
+   * @return The block or null if the category's row could not be found.
+   */
+  protected IdRange obtainBlock(int requestedCount)
+  {
+    if ((requestedCount > 0) || !hasSharedRegion())
+    {
+      return blockFromDB(requestedCount);
+    }
+    return getSharedRegion().take(determineSharedChunkSize(), new Callable<IdRange>()
+    {
+      @Override
+      public IdRange call()
+      {
+        return blockFromDB(0);
+      }
+    });
+  }
+
+  /**
+   * Returns the fixed chunk size of the shared region or, if there is none, the number
+   * of IDs consumed within {@link #DEFAULT_SHARED_CHUNK_WINDOW_MILLIS} at the observed rate.
+   * Must not synchronize on this object, because it is called by the standby loading too.
+   */
+  protected int determineSharedChunkSize()
+  {
+    if (getSharedChunkSize() > 0)
+    {
+      return getSharedChunkSize();
+    }
+    if (sharedChunkPolicy.get() == null)
+    {
+      sharedChunkPolicy.compareAndSet(null, AdaptiveBlockSizePolicy.create(1, getBlockSize(), DEFAULT_SHARED_CHUNK_WINDOW_MILLIS));
+    }
+    // Starts with a tenth of the block, so several processes can share the first block
+    return sharedChunkPolicy.get().nextBlockSize(Math.max(1, getBlockSize() / 10));
+  }
+
+  /**
+   * Reserves the next block of IDs in the database and returns it.
+   * This method does not modify the in-memory state of this generator.
+   *
+   * @param requestedCount The exact size of the block or 0 to use the block size of this generator.
+   * @return The reserved block or null if the category's row could not be found.
+   */
+  protected IdRange blockFromDB(int requestedCount)
+  {
+    Connection conn = null;
+    IdRange block = null;
+    long startTime = System.nanoTime();
+
+    if (hasRowStripes())
+    {
+      return blockFromRowStripe(requestedCount);
+    }
+    if (hasBlockStore())
+    {
+      return blockFromStore(requestedCount);
+    }
+    if (hasRefillCoalescer())
+    {
+      return getRefillCoalescer().reserve(this, requestedCount);
+    }
+    try
+    {
+      conn = getDbConnection();
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Opening database for updating '%s' in table '%s' failed!", getCategory(), getTableName());
+      throw new DatabaseAccessException(ex, "Opening database for updating '%s' in table '%s' failed!", getCategory(), getTableName());
+    }
+    try
+    {
+      block = reserveBlockInDB(conn, requestedCount);
+      if (block == null)
+      {
+        rollback(conn);
+      }
+      else
+      {
+        conn.commit();
+        getAllocationStatistics().recordAllocation(System.nanoTime() - startTime);
+      }
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Reading and updating '%s' table '%s' failed.", getCategory(), getTableName());
+      rollback(conn);
+      throw new DatabaseAccessException(ex, "Reading and updating '%s' table '%s' failed.", getCategory(), getTableName());
+    }
+    finally
+    {
+      closeConnection(conn);
+    }
+    return block;
+  }
+
+  /**
+   * Reserves the next block in the database with the configured block allocation.
+   * The transaction is not committed here.
+   *
+   * @param requestedCount The exact size of the block or 0 to use the block size of this generator.
+   * @return The reserved block or null if the category's row could not be found.
+   */
+  protected IdRange reserveBlockInDB(Connection conn, int requestedCount) throws SQLException
+  {
+    switch (resolveBlockAllocation(conn))
+    {
+      case UPDATE_RETURNING:
+        return incrementNextIdInDB(conn, requestedCount, true);
+      case UPDATE_THEN_SELECT:
+        return incrementNextIdInDB(conn, requestedCount, false);
+      case OPTIMISTIC:
+        return compareAndSetNextIdInDB(conn, requestedCount);
+      default:
+        return selectAndUpdateNextIdInDB(conn, requestedCount);
+    }
+  }
+
+  /**
+   * Reserves the next block in a transaction that is shared with other generators
+   * (see {@link IdRefillCoalescer}). The optimistic allocation is replaced by
+   * SELECT ... FOR UPDATE here, because its retries roll back the whole transaction.
+   *
+   * @param requestedCount The exact size of the block or 0 to use the block size of this generator.
+   * @return The reserved block or null if the category's row could not be found.
+   */
+  protected IdRange reserveBlockInSharedTransaction(Connection conn, int requestedCount) throws SQLException
+  {
+    if (resolveBlockAllocation(conn) == IdBlockAllocation.OPTIMISTIC)
+    {
+      return selectAndUpdateNextIdInDB(conn, requestedCount);
+    }
+    return reserveBlockInDB(conn, requestedCount);
+  }
+
+  /**
+   * Reserves the next slot in the next row stripe and returns the block of IDs
+   * that belongs to that slot.
+   *
+   * @param requestedCount The size of the block (must not exceed the block size) or 0 for the whole block.
+   * @return The reserved block or null if the stripe's row could not be found.
+   */
+  protected IdRange blockFromRowStripe(int requestedCount)
+  {
+    List<ObjectIdentifierDB> stripes;
+    IdRange slot;
+    int index;
+    long startTime = System.nanoTime();
+
+    if (requestedCount > getBlockSize())
+    {
+      //@formatter:off
+      throw new IllegalArgumentException(String.format("Cannot reserve %d consecutive identifiers from row stripes of '%s' with a block size of %d",
+          requestedCount, getCategory(), getBlockSize()));
+      //@formatter:on
+    }
+    stripes = getRowStripes();
+    index = (nextRowStripe.getAndIncrement() & Integer.MAX_VALUE) % stripes.size();
+    slot = stripes.get(index).blockFromDB(1);
+    if (slot == null)
+    {
+      return null;
+    }
+    getAllocationStatistics().recordAllocation(System.nanoTime() - startTime);
+    //@formatter:off
+    return IdRange.create(((slot.getStart() * stripes.size()) + index) * getBlockSize(), 
+        (requestedCount > 0) ? requestedCount : getBlockSize());
+    //@formatter:on
+  }
+
+  /**
+   * Reserves the next block in the block store.
+   *
+   * @param requestedCount The exact size of the block or 0 to use the block size of this generator.
+   * @return The reserved block or null if the category does not exist in the store.
+   */
+  protected IdRange blockFromStore(int requestedCount)
+  {
+    IdRange block;
+    long startTime = System.nanoTime();
+
+    block = getBlockStore().reserveRange(getCategoryRowName(), (requestedCount > 0) ? requestedCount : determineBlockSize(getBlockSize()));
+    if (block != null)
+    {
+      getAllocationStatistics().recordAllocation(System.nanoTime() - startTime);
+      logger().debugf("[%s] next-id from %s for category '%s': %d%n", Thread.currentThread().getName(), getBlockStore(), getCategory(), block.getStart());
+    }
+    return block;
+  }
+
+  protected boolean hasRefillCoalescer()
+  {
+    return getRefillCoalescer() != null;
+  }
+
+  protected boolean hasBlockStore()
+  {
+    return getBlockStore() != null;
+  }
+
+  /**
+   * Initializes the category (or all its row stripes) in the block store.
+   */
+  protected boolean initializeCategoryInStore()
+  {
+    if (hasRowStripes())
+    {
+      for (ObjectIdentifierDB stripe : getRowStripes())
+      {
+        if (!stripe.initializeCategoryInStore())
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+    return getBlockStore().initializeCategory(getCategoryRowName(), initialCounterValue(), getBlockSize());
+  }
+
+  /**
+   * Returns the generators that reserve the slots in the row stripes.
+   * They are created with the first call.
+   */
+  protected synchronized List<ObjectIdentifierDB> getRowStripes()
+  {
+    if (rowStripes == null)
+    {
+      rowStripes = new ArrayList<ObjectIdentifierDB>(getRowStripeCount());
+      for (int i = 0; i < getRowStripeCount(); i++)
+      {
+        rowStripes.add(createRowStripe(i));
+      }
+    }
+    return rowStripes;
+  }
+
+  /**
+   * Creates the generator for the row stripe with the given index. Its row starts
+   * with the lowest slot that is mapped to IDs not below the start ID.
+   */
+  protected ObjectIdentifierDB createRowStripe(int index)
+  {
+    ObjectIdentifierDB stripe;
+    long slotSize;
+
+    slotSize = (long)getRowStripeCount() * getBlockSize();
+    stripe = new ObjectIdentifierDB(getDataSource(), getCategoryRowName() + ROW_STRIPE_SEPARATOR + index);
+    stripe.setTableSpec(getTableSpec());
+    stripe.setBlockStore(getBlockStore());
+    stripe.setRefillCoalescer(getRefillCoalescer());
+    stripe.setPersistentConnection(isPersistentConnection());
+    stripe.setBlockSize(1);
+    stripe.setBlockAllocation(getBlockAllocation());
+    stripe.setOptimisticMaxRetries(getOptimisticMaxRetries());
+    stripe.setOptimisticBackoffMillis(getOptimisticBackoffMillis());
+    stripe.setStartId((getNextId() + slotSize - 1) / slotSize);
+    return stripe;
+  }
+
+  /**
+   * Reserves the next block by reading the category's row with SELECT ... FOR UPDATE
+   * and updating it afterwards. The transaction is not committed here.
+   *
+   * @param requestedCount The exact size of the block or 0 to use the block size of this generator.
+   * @return The reserved block or null if the category's row could not be found.
+   */
+  protected IdRange selectAndUpdateNextIdInDB(Connection conn, int requestedCount) throws SQLException
+  {
+    PreparedStatement statement = null;
+    ResultSet result = null;
+    long id = 0;
+    int currentBlockSize = 0;
+    long nextBlockStart = 0;
+
+    try
+    {
+      statement = prepareStatement(conn, sqlSelectNextId());
+      statement.setString(1, getCategoryRowName());
+      result = statement.executeQuery();
+      if (!result.next())
+      {
+        return null;
+      }
+      id = result.getLong(getNextIdColumnName());
+      logger().debugf("[%s] next-id from DB for category '%s': %d%n", Thread.currentThread().getName(), getCategory(), id);
+      currentBlockSize = (requestedCount > 0) ? requestedCount : determineBlockSize(result);
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+    nextBlockStart = id + currentBlockSize;
+    if ((requestedCount <= 0) && isBlockSizeWriteBack())
+    {
+      setNextIdAndBlockSizeInDB(conn, nextBlockStart, currentBlockSize);
+    }
+    else
+    {
+      setNextIdInDB(conn, nextBlockStart);
+    }
+    return IdRange.create(id, currentBlockSize);
+  }
+
+  /**
+   * Reserves the next block by incrementing the category's next ID in the database
+   * and reading the new value either with the same statement (UPDATE ... RETURNING)
+   * or with a SELECT afterwards. The transaction is not committed here.
+   *
+   * @param requestedCount The exact size of the block or 0 to use the block size of this generator.
+   * @param returning If true the UPDATE ... RETURNING statement is used.
+   * @return The reserved block or null if the category's row could not be found.
+   */
+  protected IdRange incrementNextIdInDB(Connection conn, int requestedCount, boolean returning) throws SQLException
+  {
+    PreparedStatement statement = null;
+    ResultSet result = null;
+    boolean withBlockSize;
+    int currentBlockSize;
+    long nextBlockStart;
+
+    withBlockSize = (requestedCount <= 0) && isBlockSizeWriteBack();
+    currentBlockSize = (requestedCount > 0) ? requestedCount : determineBlockSize(getBlockSize());
+    try
+    {
+      if (returning)
+      {
+        statement = prepareStatement(conn, sqlIncrementNextIdReturning(withBlockSize));
+        bindIncrement(statement, currentBlockSize, withBlockSize);
+        statement.setString(withBlockSize ? 3 : 2, getCategoryRowName());
+        result = statement.executeQuery();
+      }
+      else
+      {
+        statement = prepareStatement(conn, sqlIncrementNextId(withBlockSize));
+        bindIncrement(statement, currentBlockSize, withBlockSize);
+        statement.setString(withBlockSize ? 3 : 2, getCategoryRowName());
+        if (statement.executeUpdate() == 0)
+        {
+          return null;
+        }
+        closeStatement(statement);
+        statement = prepareStatement(conn, sqlSelectNextIdValue());
+        statement.setString(1, getCategoryRowName());
+        result = statement.executeQuery();
+      }
+      if (!result.next())
+      {
+        return null;
+      }
+      nextBlockStart = result.getLong(1);
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+    logger().debugf("[%s] next-id from DB for category '%s': %d%n", Thread.currentThread().getName(), getCategory(), nextBlockStart - currentBlockSize);
+    return IdRange.create(nextBlockStart - currentBlockSize, currentBlockSize);
+  }
+
+  /**
+   * Reserves the next block by reading the category's row without any lock and
+   * updating it only if the next ID is still the same. If it is not, the
+   * transaction gets rolled back and the reservation is retried after a randomized backoff.
+   * The transaction of a successful update is not committed here.
+   *
+   * @param requestedCount The exact size of the block or 0 to use the block size of this generator.
+   * @return The reserved block or null if the category's row could not be found.
+   * @throws DatabaseAccessException if the maximum number of retries is exceeded.
+   */
+  protected IdRange compareAndSetNextIdInDB(Connection conn, int requestedCount) throws SQLException
+  {
+    PreparedStatement statement;
+    ResultSet result;
+    long id;
+    int currentBlockSize = 0;
+    int retries = 0;
+
+    while (true)
+    {
+      statement = prepareStatement(conn, sqlSelectNextIdUnlocked());
+      try
+      {
+        statement.setString(1, getCategoryRowName());
+        result = statement.executeQuery();
+        if (!result.next())
+        {
+          return null;
+        }
+        id = result.getLong(getNextIdColumnName());
+        if (currentBlockSize == 0)
+        {
+          currentBlockSize = (requestedCount > 0) ? requestedCount : determineBlockSize(result);
+        }
+      }
+      finally
+      {
+        closeStatement(statement);
+      }
+      if (updateNextIdIfUnchanged(conn, id, currentBlockSize, (requestedCount <= 0) && isBlockSizeWriteBack()))
+      {
+        logger().debugf("[%s] next-id from DB for category '%s': %d%n", Thread.currentThread().getName(), getCategory(), id);
+        return IdRange.create(id, currentBlockSize);
+      }
+      getAllocationStatistics().recordConflict();
+      conn.rollback();
+      if (retries >= getOptimisticMaxRetries())
+      {
+        getAllocationStatistics().recordFailure();
+        //@formatter:off
+        throw new DatabaseAccessException("Reserving a block for '%s' in table '%s' failed after %d retries due to concurrent updates.", 
+            getCategory(), getTableName(), retries);
+        //@formatter:on
+      }
+      retries++;
+      getAllocationStatistics().recordRetry(backoff(retries));
+    }
+  }
+
+  /**
+   * Sets the next ID of the category's row to the end of the new block if it still
+   * contains the given start of the block.
+   *
+   * @return true if the row has been updated.
+   */
+  protected boolean updateNextIdIfUnchanged(Connection conn, long expectedId, int newBlockSize, boolean withBlockSize) throws SQLException
+  {
+    PreparedStatement statement;
+    int index = 1;
+
+    statement = prepareStatement(conn, sqlUpdateNextIdIfUnchanged(withBlockSize));
+    try
+    {
+      statement.setLong(index++, expectedId + newBlockSize);
+      if (withBlockSize)
+      {
+        statement.setInt(index++, newBlockSize);
+      }
+      statement.setString(index++, getCategoryRowName());
+      statement.setLong(index, expectedId);
+      return statement.executeUpdate() > 0;
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+  }
+
+  /**
+   * Sleeps for a random time up to the base backoff time doubled for each previous retry.
+   *
+   * @param retry The number of the upcoming retry (starting with 1).
+   * @return The time actually slept in milliseconds.
+   */
+  protected long backoff(int retry)
+  {
+    long limit;
+    long millis;
+
+    limit = Math.min(MAX_BACKOFF_MILLIS, getOptimisticBackoffMillis() << Math.min(retry - 1, 20));
+    if (limit <= 0)
+    {
+      return 0;
+    }
+    millis = BACKOFF_RANDOM.nextInt((int)limit + 1);
+    try
+    {
+      Thread.sleep(millis);
+    }
+    catch (@SuppressWarnings("unused") InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    return millis;
+  }
+
+  protected void bindIncrement(PreparedStatement statement, int increment, boolean withBlockSize) throws SQLException
+  {
+    statement.setInt(1, increment);
+    if (withBlockSize)
+    {
+      statement.setInt(2, increment);
+    }
+  }
+
+  /**
+   * Returns the allocation to be used with the database behind the given connection.
+   */
+  protected IdBlockAllocation resolveBlockAllocation(Connection conn) throws SQLException
+  {
+    if (resolvedBlockAllocation == null)
+    {
+      if (getBlockAllocation() == IdBlockAllocation.AUTO)
+      {
+        resolvedBlockAllocation = getBlockAllocation().resolve(conn.getMetaData().getDatabaseProductName());
+      }
+      else
+      {
+        resolvedBlockAllocation = getBlockAllocation();
+      }
+    }
+    return resolvedBlockAllocation;
+  }
+
+  /**
+   * Returns the size of the block to be reserved now.
+   *
+   * @param result The category's row read from the database.
+   */
+  protected int determineBlockSize(ResultSet result) throws SQLException
+  {
+    if (blockSize == null)
+    {
+      return determineBlockSize(result.getInt(getBlockSizeColumnName()));
+    }
+    return determineBlockSize(blockSize.intValue());
+  }
+
+  /**
+   * Returns the size of the block to be reserved now.
+   *
+   * @param baseBlockSize The fixed block size or the initial one if the size is adaptive.
+   */
+  protected int determineBlockSize(int baseBlockSize)
+  {
+    int size = baseBlockSize;
+
+    if (hasAdaptiveBlockSizePolicy())
+    {
+      size = getAdaptiveBlockSizePolicy().nextBlockSize(size);
+    }
+    return (size <= 0) ? 1 : size;
+  }
+
+  protected boolean isBlockSizeWriteBack()
+  {
+    return hasAdaptiveBlockSizePolicy() && getAdaptiveBlockSizePolicy().isWriteBack();
+  }
+
+  protected void setNextIdInDB(Connection conn, long id) throws SQLException
+  {
+    PreparedStatement statement = null;
+
+    statement = prepareStatement(conn, sqlUpdateNextId());
+    try
+    {
+      statement.setLong(1, id);
+      statement.setString(2, getCategoryRowName());
+      statement.execute();
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+  }
+
+  protected void setNextIdAndBlockSizeInDB(Connection conn, long id, int newBlockSize) throws SQLException
+  {
+    PreparedStatement statement = null;
+
+    statement = prepareStatement(conn, sqlUpdateNextIdAndBlockSize());
+    try
+    {
+      statement.setLong(1, id);
+      statement.setInt(2, newBlockSize);
+      statement.setString(3, getCategoryRowName());
+      statement.execute();
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+  }
+
+  protected String sqlCreateOidTable()
+  {
+    StringBuffer buffer = new StringBuffer(200);
+
+    buffer.append("CREATE TABLE ");
+    buffer.append(getTableName());
+    buffer.append("(\n  ");
+    buffer.append(getCategoryColumnName());
+    buffer.append("\t VARCHAR(50) NOT NULL,\n  ");
+    buffer.append(getNextIdColumnName());
+    buffer.append("\t BIGINT,\n");
+    buffer.append(getBlockSizeColumnName());
+    buffer.append("\t INTEGER,\n  CONSTRAINT ");
+    buffer.append(sqlPrimaryKeyName());
+    buffer.append(" PRIMARY KEY (");
+    buffer.append(getCategoryColumnName());
+    buffer.append("))\n");
+
+    return buffer.toString();
+  }
+
+  /**
+   * Returns the INSERT statement for the category's row with the bind parameters
+   * category, next ID and block size in this order.
+   * Replaces sqlInsertCategoryRow(String) of former versions.
+   */
+  protected String sqlInsertCategoryRow()
+  {
+    StringBuffer buffer = new StringBuffer(200);
+
+    buffer.append("INSERT INTO ");
+    buffer.append(getTableName());
+    buffer.append(" VALUES ( ?, ?, ? )");
+
+    return buffer.toString();
+  }
+
+  /**
+   * Returns the INSERT statement for the category's row with all values as literals.
+   *
+   * @deprecated Override {@link #sqlInsertCategoryRow()} instead. An override of this method
+   * is still executed instead of the statement with bind parameters.
+   */
+  @Deprecated
+  protected String sqlInsertCategoryRow(String cat)
+  {
+    StringBuffer buffer = new StringBuffer(200);
+
+    buffer.append("INSERT INTO ");
+    buffer.append(getTableName());
+    buffer.append(" VALUES ( '");
+    buffer.append(cat);
+    buffer.append("', '");
+    buffer.append(Long.toString(initialCounterValue()));
+    buffer.append("', ");
+    buffer.append(getBlockSize());
+    buffer.append(" )");
+
+    return buffer.toString();
+  }
+
+  /**
+   * Returns true if a subclass overrides the deprecated {@link #sqlInsertCategoryRow(String)}.
+   */
+  protected boolean overridesDeprecatedInsertCategoryRow()
+  {
+    Class<?> type = getClass();
+
+    while (type != ObjectIdentifierDB.class)
+    {
+      try
+      {
+        type.getDeclaredMethod("sqlInsertCategoryRow", String.class);
+        return true;
+      }
+      catch (@SuppressWarnings("unused") NoSuchMethodException e)
+      {
+        type = type.getSuperclass();
+      }
+    }
+    return false;
+  }
+
+  protected String sqlUpdateNextId()
+  {
+    if (getSqlUpdateStatement() == null)
+    {
+      StringBuffer buffer = new StringBuffer(200);
+
+      buffer.append("UPDATE ");
+      buffer.append(getTableName());
+      buffer.append(" SET ");
+      buffer.append(getNextIdColumnName());
+      buffer.append("=? WHERE ");
+      buffer.append(getCategoryColumnName());
+      buffer.append(" = ?");
+
+      setSqlUpdateStatement(buffer.toString());
+    }
+    return getSqlUpdateStatement();
+  }
+
+  protected String sqlUpdateNextIdAndBlockSize()
+  {
+    //@formatter:off
+    return String.format("UPDATE %s SET %s=?, %s=? WHERE %s = ?",
+        getTableName(), getNextIdColumnName(), getBlockSizeColumnName(), getCategoryColumnName());
+    //@formatter:on
+  }
+
+  protected String sqlIncrementNextId(boolean withBlockSize)
+  {
+    StringBuffer buffer = new StringBuffer(200);
+
+    buffer.append("UPDATE ");
+    buffer.append(getTableName());
+    buffer.append(" SET ");
+    buffer.append(getNextIdColumnName());
+    buffer.append(" = ");
+    buffer.append(getNextIdColumnName());
+    buffer.append(" + ?");
+    if (withBlockSize)
+    {
+      buffer.append(", ");
+      buffer.append(getBlockSizeColumnName());
+      buffer.append(" = ?");
+    }
+    buffer.append(" WHERE ");
+    buffer.append(getCategoryColumnName());
+    buffer.append(" = ?");
+
+    return buffer.toString();
+  }
+
+  protected String sqlIncrementNextIdReturning(boolean withBlockSize)
+  {
+    return sqlIncrementNextId(withBlockSize) + " RETURNING " + getNextIdColumnName();
+  }
+
+  protected String sqlUpdateNextIdIfUnchanged(boolean withBlockSize)
+  {
+    StringBuffer buffer = new StringBuffer(200);
+
+    buffer.append("UPDATE ");
+    buffer.append(getTableName());
+    buffer.append(" SET ");
+    buffer.append(getNextIdColumnName());
+    buffer.append("=?");
+    if (withBlockSize)
+    {
+      buffer.append(", ");
+      buffer.append(getBlockSizeColumnName());
+      buffer.append("=?");
+    }
+    buffer.append(" WHERE ");
+    buffer.append(getCategoryColumnName());
+    buffer.append(" = ? AND ");
+    buffer.append(getNextIdColumnName());
+    buffer.append("=?");
+
+    return buffer.toString();
+  }
+
+  protected String sqlSelectNextIdUnlocked()
+  {
+    //@formatter:off
+    return String.format("SELECT %s, %s FROM %s WHERE %s = ?", 
+        getNextIdColumnName(), getBlockSizeColumnName(), getTableName(), getCategoryColumnName());
+    //@formatter:on
+  }
+
+  protected String sqlSelectNextIdValue()
+  {
+    //@formatter:off
+    return String.format("SELECT %s FROM %s WHERE %s = ?", 
+        getNextIdColumnName(), getTableName(), getCategoryColumnName());
+    //@formatter:on
+  }
+
+  protected String sqlSelectNextId()
+  {
+    String statement;
+
+    if (getSqlSelectForUpdateStatement() == null)
+    {
+      //@formatter:off
+      statement = String.format("SELECT %s, %s FROM %s WHERE %s = ? FOR UPDATE%n", 
+          getNextIdColumnName(), getBlockSizeColumnName(), getTableName(), getCategoryColumnName());
+      //@formatter:on
+      setSqlSelectForUpdateStatement(statement);
+    }
+    return getSqlSelectForUpdateStatement();
+  }
+
+  protected String sqlSelectCategory()
+  {
+    if (getSqlSelectCategoryStatement() == null)
+    {
+      StringBuffer buffer = new StringBuffer(200);
+
+      buffer.append("SELECT ");
+      buffer.append(getCategoryColumnName());
+      buffer.append(" FROM ");
+      buffer.append(getTableName());
+      buffer.append(" WHERE ");
+      buffer.append(getCategoryColumnName());
+      buffer.append(" = ?");
+
+      setSqlSelectCategoryStatement(buffer.toString());
+    }
+    return getSqlSelectCategoryStatement();
+  }
+
+  protected String sqlPrimaryKeyName()
+  {
+    return getUnqualifiedTableName() + "_PK";
+  }
+
+  protected String sqlAddPrimaryKey()
+  {
+    return String.format("ALTER TABLE %s ADD CONSTRAINT %s PRIMARY KEY (%s)", getTableName(), sqlPrimaryKeyName(), getCategoryColumnName());
+  }
+
+  /**
+   * Returns the statement that forbids null values in the category column,
+   * which most databases require for a primary key.
+   */
+  protected String sqlSetCategoryNotNull(String databaseProductName)
+  {
+    String name;
+
+    name = (databaseProductName == null) ? "" : databaseProductName.toLowerCase();
+    if (name.contains("oracle"))
+    {
+      return String.format("ALTER TABLE %s MODIFY %s NOT NULL", getTableName(), getCategoryColumnName());
+    }
+    if (name.contains("mysql") || name.contains("mariadb"))
+    {
+      return String.format("ALTER TABLE %s MODIFY %s VARCHAR(50) NOT NULL", getTableName(), getCategoryColumnName());
+    }
+    if (name.contains("microsoft"))
+    {
+      return String.format("ALTER TABLE %s ALTER COLUMN %s VARCHAR(50) NOT NULL", getTableName(), getCategoryColumnName());
+    }
+    return String.format("ALTER TABLE %s ALTER COLUMN %s SET NOT NULL", getTableName(), getCategoryColumnName());
+  }
+
+  protected String sqlSelectDuplicateCategories()
+  {
+    //@formatter:off
+    return String.format("SELECT %s FROM %s GROUP BY %s HAVING COUNT(*) > 1",
+        getCategoryColumnName(), getTableName(), getCategoryColumnName());
+    //@formatter:on
+  }
+
+  protected String sqlSelectAny()
+  {
+    if (getSqlSelectAnyStatement() == null)
+    {
+      StringBuffer buffer = new StringBuffer(200);
+
+      buffer.append("SELECT ");
+      buffer.append(getCategoryColumnName());
+      buffer.append(" FROM ");
+      buffer.append(getTableName());
+
+      setSqlSelectAnyStatement(buffer.toString());
+    }
+    return getSqlSelectAnyStatement();
+  }
+
+  protected void createOidTable(Connection conn) throws SQLException
+  {
+    Statement statement;
+
+    statement = conn.createStatement();
+    try
+    {
+      statement.execute(sqlCreateOidTable());
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+    conn.commit();
+  }
+
+  protected boolean createRowForCategory(Connection conn) throws SQLException
+  {
+    if (hasRowStripes())
+    {
+      for (ObjectIdentifierDB stripe : getRowStripes())
+      {
+        if (!stripe.checkCategoryRowExists(conn))
+        {
+          stripe.createRowForCategory(conn);
+        }
+      }
+      return true;
+    }
+    try
+    {
+      insertCategoryRow(conn);
+    }
+    catch (SQLException ex)
+    {
+      if (!isDuplicateKey(ex))
+      {
+        throw ex;
+      }
+      // Another process has created the row in the meantime
+      rollback(conn);
+      return true;
+    }
+    conn.commit();
+    return true;
+  }
 
-        if (currentBlockSize <= 0)
-        {
-          currentBlockSize = 1;
-        }
+  @SuppressWarnings("deprecation")
+  protected void insertCategoryRow(Connection conn) throws SQLException
+  {
+    PreparedStatement statement;
 
-        nextBlockStart = id + currentBlockSize;
-        setNextIdInDB(conn, nextBlockStart);
-        conn.commit();
-        setLastPrefetchedId(nextBlockStart - 1);
-      }
+    if (overridesDeprecatedInsertCategoryRow())
+    {
+      executeStatement(conn, sqlInsertCategoryRow(getCategoryRowName()));
+      return;
     }
-    catch (SQLException ex)
+    statement = prepareStatement(conn, sqlInsertCategoryRow());
+    try
     {
-      logSqlExceptionStacktrace(ex, "Reading and updating '%s' table '%s' failed.", getCategory(), getTableName());
-      rollback(conn);
-      throw new DatabaseAccessException(ex, "Reading and updating '%s' table '%s' failed.", getCategory(), getTableName());
+      statement.setString(1, getCategoryRowName());
+      statement.setLong(2, initialCounterValue());
+      statement.setInt(3, getBlockSize());
+      statement.execute();
     }
     finally
     {
       closeStatement(statement);
-      closeConnection(conn);
     }
-    return id;
   }
 
-  protected void setNextIdInDB(Connection conn, long id) throws SQLException
+  /**
+   * Returns true if the given exception has been caused by a row with an existing primary key.
+   */
+  protected boolean isDuplicateKey(SQLException ex)
   {
-    PreparedStatement statement = null;
-
-    statement = conn.prepareStatement(sqlUpdateNextId());
-    statement.setLong(1, id);
-    statement.execute();
+    if (ex instanceof SQLIntegrityConstraintViolationException)
+    {
+      return true;
+    }
+    return (ex.getSQLState() != null) && ex.getSQLState().startsWith("23");
   }
 
-  protected String sqlCreateOidTable()
+  /**
+   * Adds the primary key on the category column to the existing table unless it has one.
+   *
+   * @throws DatabaseAccessException if a category has more than one row.
+   */
+  protected void migratePrimaryKeyIfNecessary(Connection conn) throws SQLException
   {
-    StringBuffer buffer = new StringBuffer(200);
-
-    buffer.append("CREATE TABLE ");
-    buffer.append(getTableName());
-    buffer.append("(\n  ");
-    buffer.append(getCategoryColumnName());
-    buffer.append("\t VARCHAR(50),\n  ");
-    buffer.append(getNextIdColumnName());
-    buffer.append("\t BIGINT,\n");
-    buffer.append(getBlockSizeColumnName());
-    buffer.append("\t INTEGER)\n");
+    DatabaseMetaData meta;
+    TableLocation location;
+    List<String> duplicates;
 
-    return buffer.toString();
+    meta = conn.getMetaData();
+    location = findTableInMetaData(meta);
+    if ((location == null) || hasPrimaryKey(meta, location))
+    {
+      return;
+    }
+    duplicates = readDuplicateCategories(conn);
+    if (!duplicates.isEmpty())
+    {
+      throw new DatabaseAccessException("Cannot add primary key to table '%s', categories with more than one row: %s", getTableName(), duplicates);
+    }
+    if (isCategoryColumnNullable(meta, location))
+    {
+      executeStatement(conn, sqlSetCategoryNotNull(meta.getDatabaseProductName()));
+    }
+    executeStatement(conn, sqlAddPrimaryKey());
+    conn.commit();
+    logger().infof("Added primary key %s to table '%s'", sqlPrimaryKeyName(), getTableName());
   }
 
-  protected String sqlInsertCategoryRow(String cat)
+  protected boolean hasPrimaryKey(Connection conn) throws SQLException
   {
-    StringBuffer buffer = new StringBuffer(200);
-
-    buffer.append("INSERT INTO ");
-    buffer.append(getTableName());
-    buffer.append(" VALUES ( '");
-    buffer.append(cat);
-    buffer.append("', '");
-    buffer.append(Long.toString(getNextId()));
-    buffer.append("', ");
-    buffer.append(getBlockSize());
-    buffer.append(" )");
+    DatabaseMetaData meta;
+    TableLocation location;
 
-    return buffer.toString();
+    meta = conn.getMetaData();
+    location = findTableInMetaData(meta);
+    return (location != null) && hasPrimaryKey(meta, location);
   }
 
-  protected String sqlUpdateNextId()
+  protected boolean hasPrimaryKey(DatabaseMetaData meta, TableLocation location) throws SQLException
   {
-    if (getSqlUpdateStatement() == null)
-    {
-      StringBuffer buffer = new StringBuffer(200);
-
-      buffer.append("UPDATE ");
-      buffer.append(getTableName());
-      buffer.append(" SET ");
-      buffer.append(getNextIdColumnName());
-      buffer.append("=? WHERE ");
-      buffer.append(getCategoryColumnName());
-      buffer.append(" = '");
-      buffer.append(getCategory());
-      buffer.append("'");
+    ResultSet result;
 
-      setSqlUpdateStatement(buffer.toString());
+    result = meta.getPrimaryKeys(location.catalog, location.schema, location.name);
+    try
+    {
+      return result.next();
+    }
+    finally
+    {
+      result.close();
     }
-    return getSqlUpdateStatement();
   }
 
-  protected String sqlSelectNextId()
+  protected boolean isCategoryColumnNullable(DatabaseMetaData meta, TableLocation location) throws SQLException
   {
-    String statement;
+    ResultSet result;
+    String columnName;
 
-    if (getSqlSelectForUpdateStatement() == null)
+    columnName = toStoredIdentifier(meta, getCategoryColumnName());
+    result = meta.getColumns(location.catalog, location.schema, location.name, columnName);
+    try
     {
-      //@formatter:off
-      statement = String.format("SELECT %s, %s FROM %s WHERE %s = '%s' FOR UPDATE%n", 
-          getNextIdColumnName(), getBlockSizeColumnName(), getTableName(), getCategoryColumnName(), getCategory());
-      //@formatter:on
-      setSqlSelectForUpdateStatement(statement);
+      while (result.next())
+      {
+        if (columnName.equalsIgnoreCase(result.getString("COLUMN_NAME")))
+        {
+          return result.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls;
+        }
+      }
+      return false;
+    }
+    finally
+    {
+      result.close();
     }
-    return getSqlSelectForUpdateStatement();
   }
 
-  protected String sqlSelectCategory()
+  protected void executeStatement(Connection conn, String sql) throws SQLException
   {
-    if (getSqlSelectCategoryStatement() == null)
+    Statement statement;
+
+    statement = conn.createStatement();
+    try
     {
-      StringBuffer buffer = new StringBuffer(200);
+      statement.execute(sql);
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+  }
 
-      buffer.append("SELECT ");
-      buffer.append(getCategoryColumnName());
-      buffer.append(" FROM ");
-      buffer.append(getTableName());
-      buffer.append(" WHERE ");
-      buffer.append(getCategoryColumnName());
-      buffer.append(" = '");
-      buffer.append(getCategory());
-      buffer.append("'");
+  protected List<String> readDuplicateCategories(Connection conn) throws SQLException
+  {
+    List<String> categories = new ArrayList<String>();
+    Statement statement;
+    ResultSet result;
 
-      setSqlSelectCategoryStatement(buffer.toString());
+    statement = conn.createStatement();
+    try
+    {
+      result = statement.executeQuery(sqlSelectDuplicateCategories());
+      while (result.next())
+      {
+        categories.add(result.getString(1));
+      }
+      result.close();
     }
-    return getSqlSelectCategoryStatement();
+    finally
+    {
+      closeStatement(statement);
+    }
+    return categories;
   }
 
-  protected String sqlSelectAny()
+  /**
+   * Returns true if the table is listed in the meta data of the database.
+   * An unqualified table name might be listed for another schema than the current one,
+   * so that is confirmed by a query on the table. If the meta data cannot be read,
+   * the query decides as well.
+   */
+  protected boolean checkTableExists(Connection conn)
   {
-    if (getSqlSelectAnyStatement() == null)
+    try
     {
-      StringBuffer buffer = new StringBuffer(200);
+      if (findTableInMetaData(conn.getMetaData()) == null)
+      {
+        return false;
+      }
+      return (getTableQualifier() != null) || checkTableQueryable(conn);
+    }
+    catch (SQLException e)
+    {
+      logSqlExceptionStacktrace(e, "Reading meta data of table '%s' failed.", getTableName());
+      return checkTableQueryable(conn);
+    }
+  }
 
-      buffer.append("SELECT ");
-      buffer.append(getCategoryColumnName());
-      buffer.append(" FROM ");
-      buffer.append(getTableName());
+  /**
+   * Returns the catalog, schema and name of the table as stored in the meta data
+   * or null if the table does not exist. A table qualifier is looked up as schema
+   * and then as catalog.
+   */
+  protected TableLocation findTableInMetaData(DatabaseMetaData meta) throws SQLException
+  {
+    String tableName;
+    String qualifier;
+    TableLocation location;
 
-      setSqlSelectAnyStatement(buffer.toString());
+    tableName = toStoredIdentifier(meta, getUnqualifiedTableName());
+    if (getTableQualifier() == null)
+    {
+      return findTableInMetaData(meta, null, null, tableName);
     }
-    return getSqlSelectAnyStatement();
+    qualifier = toStoredIdentifier(meta, getTableQualifier());
+    location = findTableInMetaData(meta, null, qualifier, tableName);
+    if (location == null)
+    {
+      location = findTableInMetaData(meta, qualifier, null, tableName);
+    }
+    return location;
   }
 
-  protected void createOidTable(Connection conn) throws SQLException
+  protected TableLocation findTableInMetaData(DatabaseMetaData meta, String catalog, String schema, String tableName) throws SQLException
   {
-    Statement statement;
+    ResultSet result;
 
-    statement = conn.createStatement();
-    statement.execute(sqlCreateOidTable());
-    conn.commit();
-    createRowForCategory(conn);
+    result = meta.getTables(catalog, schema, tableName, null);
+    try
+    {
+      while (result.next())
+      {
+        // The name is a pattern, so '_' matches any character
+        if (tableName.equalsIgnoreCase(result.getString("TABLE_NAME")))
+        {
+          return new TableLocation(result.getString("TABLE_CAT"), result.getString("TABLE_SCHEM"), result.getString("TABLE_NAME"));
+        }
+      }
+      return null;
+    }
+    finally
+    {
+      result.close();
+    }
   }
 
-  protected boolean createRowForCategory(Connection conn) throws SQLException
+  /**
+   * Returns the given unquoted identifier in the case the database stores it.
+   */
+  protected String toStoredIdentifier(DatabaseMetaData meta, String identifier) throws SQLException
   {
-    Statement statement;
-
-    statement = conn.createStatement();
-    statement.execute(sqlInsertCategoryRow(getCategory()));
-    conn.commit();
-    return true;
+    if (meta.storesUpperCaseIdentifiers())
+    {
+      return identifier.toUpperCase();
+    }
+    if (meta.storesLowerCaseIdentifiers())
+    {
+      return identifier.toLowerCase();
+    }
+    return identifier;
   }
 
-  protected boolean checkTableExists(Connection conn)
+  /**
+   * Returns true if a query on the table succeeds. At most one row is read.
+   */
+  protected boolean checkTableQueryable(Connection conn)
   {
+    Statement statement = null;
+
     try
     {
-      return anyRowExists(conn, sqlSelectAny());
+      statement = conn.createStatement();
+      statement.setMaxRows(1);
+      statement.executeQuery(sqlSelectAny()).close();
+      return true;
     }
     catch (@SuppressWarnings("unused") SQLException e)
     {
+      rollback(conn);
       return false;
     }
+    finally
+    {
+      closeStatement(statement);
+    }
   }
 
   protected boolean checkCategoryRowExists(Connection conn)
   {
+    if (hasRowStripes())
+    {
+      for (ObjectIdentifierDB stripe : getRowStripes())
+      {
+        if (!stripe.checkCategoryRowExists(conn))
+        {
+          return false;
+        }
+      }
+      return true;
+    }
     try
     {
-      return anyRowExists(conn, sqlSelectCategory());
+      return anyRowExists(conn, sqlSelectCategory(), getCategoryRowName());
     }
     catch (@SuppressWarnings("unused") SQLException e)
     {
@@ -568,21 +3240,37 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
     }
   }
 
-  protected boolean anyRowExists(Connection conn, String sql) throws SQLException
+  /**
+   * Returns true if the given query returns at least one row.
+   *
+   * @param parameters The values of the bind parameters of the query.
+   */
+  protected boolean anyRowExists(Connection conn, String sql, String... parameters) throws SQLException
   {
     PreparedStatement statement = null;
     ResultSet result = null;
     boolean found = false;
 
-    statement = conn.prepareStatement(sql);
-    result = statement.executeQuery();
+    statement = prepareStatement(conn, sql);
     try
     {
-      found = result.next();
+      for (int i = 0; i < parameters.length; i++)
+      {
+        statement.setString(i + 1, parameters[i]);
+      }
+      result = statement.executeQuery();
+      try
+      {
+        found = result.next();
+      }
+      finally
+      {
+        result.close();
+      }
     }
     finally
     {
-      result.close();
+      closeStatement(statement);
     }
     return found;
   }
@@ -610,17 +3298,52 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
   }
 
   /**
-   * Returns a new connection with autoCommit=false.
+   * Returns a new connection with autoCommit=false or the persistent connection
+   * which then is used exclusively until {@link #closeConnection(Connection)}.
    */
   protected Connection getDbConnection() throws SQLException
   {
+    if (isPersistentConnection())
+    {
+      return getDedicatedConnection().acquire();
+    }
     Connection connection = getDataSource().getConnection();
     connection.setAutoCommit(false);
     return connection;
   }
 
+  protected synchronized DedicatedConnection getDedicatedConnection()
+  {
+    if (dedicatedConnection == null)
+    {
+      dedicatedConnection = DedicatedConnection.create(getDataSource());
+    }
+    return dedicatedConnection;
+  }
+
+  protected boolean isDedicatedConnection(Connection conn)
+  {
+    return (dedicatedConnection != null) && dedicatedConnection.isConnection(conn);
+  }
+
+  /**
+   * Returns a new prepared statement or the cached one if the connection is the persistent connection.
+   */
+  protected PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException
+  {
+    if (isDedicatedConnection(conn))
+    {
+      return dedicatedConnection.prepareStatement(sql);
+    }
+    return conn.prepareStatement(sql);
+  }
+
   protected void rollback(Connection conn)
   {
+    if (isDedicatedConnection(conn))
+    {
+      dedicatedConnection.invalidate();
+    }
     try
     {
       conn.rollback();
@@ -633,6 +3356,11 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
 
   protected void closeConnection(Connection conn)
   {
+    if (isDedicatedConnection(conn))
+    {
+      dedicatedConnection.release();
+      return;
+    }
     if (conn != null)
     {
       try
@@ -648,6 +3376,10 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
 
   protected void closeStatement(Statement stmt)
   {
+    if ((dedicatedConnection != null) && dedicatedConnection.isCached(stmt))
+    {
+      return;
+    }
     if (stmt != null)
     {
       try
@@ -671,6 +3403,15 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
     return LoggerProvider.getLogger();
   }
 
+  protected Executor getPrefetchExecutor()
+  {
+    if (this.prefetchExecutor == null)
+    {
+      return DefaultPrefetchExecutorHolder.EXECUTOR;
+    }
+    return this.prefetchExecutor;
+  }
+
   protected DataSource getDataSource()
   {
     return this.dataSource;
@@ -802,4 +3543,43 @@ public class ObjectIdentifierDB extends ObjectIdentifierGenerator
   {
     return String.format("%s('%s', '%s')", getClass().getSimpleName(), getTableName(), getCategory());
   }
+
+  // =========================================================================
+  // INNER CLASSES
+  // =========================================================================
+  /**
+   * The location of the table as stored in the meta data of the database.
+   */
+  protected static class TableLocation
+  {
+    final String catalog;
+    final String schema;
+    final String name;
+
+    TableLocation(String catalog, String schema, String name)
+    {
+      super();
+      this.catalog = catalog;
+      this.schema = schema;
+      this.name = name;
+    }
+  }
+
+  /**
+   * Lazily creates the pool of daemon threads that is shared by all generators
+   * without an explicitly set prefetch executor.
+   */
+  private static class DefaultPrefetchExecutorHolder
+  {
+    static final Executor EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable runnable)
+      {
+        Thread thread = new Thread(runnable, "pf-db-id-prefetch");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
 }
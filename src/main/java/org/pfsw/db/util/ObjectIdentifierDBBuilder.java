@@ -1,21 +1,47 @@
 // ===========================================================================
 // CONTENT  : CLASS ObjectIdentifierDBBuilder
 // AUTHOR   : Manfred Duchrow
-// VERSION  : 1.0 - 12/04/2020
+// VERSION  : 1.1 - 17/10/2026
 // HISTORY  :
 //  12/04/2020  mdu  CREATED
+//  17/10/2026  mdu  added -> setPrefetchThreshold(), setPrefetchExecutor()
+//  17/10/2026  mdu  added -> doubleBuffered()
+//  17/10/2026  mdu  added -> lockFree()
+//  17/10/2026  mdu  added -> striped()
+//  17/10/2026  mdu  added -> adaptiveBlockSize()
+//  17/10/2026  mdu  added -> setBlockAllocation()
+//  17/10/2026  mdu  added -> createForSequence(), setSequenceName()
+//  17/10/2026  mdu  added -> optimisticAllocation()
+//  17/10/2026  mdu  added -> rangeJournal()
+//  17/10/2026  mdu  added -> sharedRegion()
+//  17/10/2026  mdu  added -> stride()
+//  17/10/2026  mdu  added -> rowStripes()
+//  17/10/2026  mdu  added -> create(IdBlockStore), setBlockStore()
+//  17/10/2026  mdu  added -> setRefillCoalescer()
+//  17/10/2026  mdu  added -> setRefillScheduler()
+//  17/10/2026  mdu  added -> persistentConnection()
+//  17/10/2026  mdu  added -> warmUp()
+//  17/10/2026  mdu  added -> migratePrimaryKey()
+//  17/10/2026  mdu  added -> sharedRegion(File)
+//  17/10/2026  mdu  changed -> sharedRegion(File, int) accepts 0 and rejects negative chunk sizes
 //
-// Copyright (c) 2020, by MDCS. All rights reserved.
+// Copyright (c) 2020-2026, by MDCS. All rights reserved.
 // ===========================================================================
 package org.pfsw.db.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
 import javax.sql.DataSource;
 
+import org.pfsw.db.DatabaseAccessException;
+
 /**
  * Builder for ObjectIdentifierDB that supports fluent API.
  *
  * @author Manfred Duchrow
- * @version 1.0
+ * @version 1.1
  */
 public class ObjectIdentifierDBBuilder
 {
@@ -40,12 +66,44 @@ public class ObjectIdentifierDBBuilder
     return create(ds).setTableSpec(tableSpec);
   }
   
+  /**
+   * Creates a new builder instance for a generator that is backed by a native
+   * database sequence (see {@link SequenceIdentifierDB}).
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   */
+  public static ObjectIdentifierDBBuilder createForSequence(DataSource ds)
+  {
+    return new ObjectIdentifierDBBuilder(new SequenceIdentifierDB(ds));
+  }
+
+  /**
+   * Creates a new builder instance for a generator that reserves its blocks in
+   * the given store rather than in a database table.
+   *
+   * @param store The store of the next IDs (must not be null).
+   */
+  public static ObjectIdentifierDBBuilder create(IdBlockStore store)
+  {
+    return new ObjectIdentifierDBBuilder((DataSource)null).setBlockStore(store);
+  }
+
   private final ObjectIdentifierDB objectIdentifierDB;
+  private File journalDirectory = null;
+  private int journalChunkSize = IdRangeJournal.DEFAULT_CHUNK_SIZE;
+  private File regionDirectory = null;
+  private int regionChunkSize = 0;
+  private boolean warmUp = false;
 
   protected ObjectIdentifierDBBuilder(DataSource ds)
+  {
+    this(new ObjectIdentifierDB(ds));
+  }
+
+  protected ObjectIdentifierDBBuilder(ObjectIdentifierDB generator)
   {
     super();
-    this.objectIdentifierDB = new ObjectIdentifierDB(ds);
+    this.objectIdentifierDB = generator;
   }
   
   /**
@@ -111,6 +169,105 @@ public class ObjectIdentifierDBBuilder
     return this;
   }
   
+  /**
+   * Lets the block size adapt to the observed consumption rate, so that each block
+   * lasts for about the given time window. The block size set via {@link #setBlockSize(int)}
+   * is used for the first block.
+   *
+   * @param minBlockSize The smallest block size to be used (must be > 0).
+   * @param maxBlockSize The biggest block size to be used (must be >= minBlockSize).
+   * @param targetWindowMillis The time in milliseconds a block should last (must be > 0).
+   * @param writeBack If true the chosen block size is written to the block size column as well.
+   */
+  public ObjectIdentifierDBBuilder adaptiveBlockSize(int minBlockSize, int maxBlockSize, long targetWindowMillis, boolean writeBack)
+  {
+    AdaptiveBlockSizePolicy policy;
+
+    policy = AdaptiveBlockSizePolicy.create(minBlockSize, maxBlockSize, targetWindowMillis).setWriteBack(writeBack);
+    getObjectIdentifierDB().setAdaptiveBlockSizePolicy(policy);
+    return this;
+  }
+
+  /**
+   * Defines which SQL statements are used to reserve the ID blocks in the database.
+   * By default {@link IdBlockAllocation#SELECT_FOR_UPDATE} is used.
+   */
+  public ObjectIdentifierDBBuilder setBlockAllocation(IdBlockAllocation allocation)
+  {
+    getObjectIdentifierDB().setBlockAllocation(allocation);
+    return this;
+  }
+
+  /**
+   * Lets the ID blocks be reserved with {@link IdBlockAllocation#OPTIMISTIC}, i.e. without
+   * any row lock but with a conditional update that gets retried on conflicts.
+   *
+   * @param maxRetries The number of retries after which the reservation fails (must be >= 0).
+   * @param backoffMillis The base time in milliseconds for the randomized backoff before a retry (must be >= 0).
+   */
+  public ObjectIdentifierDBBuilder optimisticAllocation(int maxRetries, long backoffMillis)
+  {
+    //@formatter:off
+    getObjectIdentifierDB()
+        .setOptimisticMaxRetries(maxRetries)
+        .setOptimisticBackoffMillis(backoffMillis)
+        .setBlockAllocation(IdBlockAllocation.OPTIMISTIC);
+    //@formatter:on
+    return this;
+  }
+
+  /**
+   * Activates the background reservation of the next block as soon as the number
+   * of remaining in-memory IDs falls below the given threshold.
+   * By default prefetching is disabled (threshold = 0).
+   */
+  public ObjectIdentifierDBBuilder setPrefetchThreshold(int threshold)
+  {
+    getObjectIdentifierDB().setPrefetchThreshold(threshold);
+    return this;
+  }
+
+  /**
+   * Sets the executor that runs the background prefetch of ID blocks.
+   * By default a shared pool of daemon threads is used.
+   */
+  public ObjectIdentifierDBBuilder setPrefetchExecutor(Executor executor)
+  {
+    getObjectIdentifierDB().setPrefetchExecutor(executor);
+    return this;
+  }
+
+  /**
+   * Activates the double-buffered segment mode where the next block gets reserved
+   * into a standby segment while the IDs are served from the current segment.
+   */
+  public ObjectIdentifierDBBuilder doubleBuffered()
+  {
+    getObjectIdentifierDB().setDoubleBuffered(true);
+    return this;
+  }
+
+  /**
+   * Activates the lock-free mode where the IDs are served from a segment by an atomic
+   * counter and only the refill of the segment is synchronized.
+   */
+  public ObjectIdentifierDBBuilder lockFree()
+  {
+    getObjectIdentifierDB().setLockFree(true);
+    return this;
+  }
+
+  /**
+   * Activates the striped mode where each reserved block gets split into the given
+   * number of sub-blocks and each thread takes its IDs from its own sub-block.
+   * The block size should be a multiple of the stripe count.
+   */
+  public ObjectIdentifierDBBuilder striped(int stripeCount)
+  {
+    getObjectIdentifierDB().setStripeCount(stripeCount);
+    return this;
+  }
+
   /**
    * Sets the length of the resulting identifiers.
    * This implies that padding is activated and the identifiers will
@@ -135,6 +292,92 @@ public class ObjectIdentifierDBBuilder
     return setLength(-1);
   }
   
+  /**
+   * Activates the stride mode where this generator is the node with the given index
+   * among nodeCount nodes. Each node reserves its blocks in its own row and generates
+   * only IDs that are congruent to nodeIndex modulo nodeCount.
+   * All nodes must use the same node count for the whole lifetime of the category.
+   *
+   * @param nodeCount The number of nodes (must be > 0).
+   * @param nodeIndex The index of this node (0 .. nodeCount - 1).
+   */
+  public ObjectIdentifierDBBuilder stride(int nodeCount, int nodeIndex)
+  {
+    getObjectIdentifierDB().setStride(nodeCount, nodeIndex);
+    return this;
+  }
+
+  /**
+   * Lets the generator reserve its blocks in the given store instead of its own table
+   * (see {@link IdBlockStore}). A value of null switches back to the own table.
+   */
+  public ObjectIdentifierDBBuilder setBlockStore(IdBlockStore store)
+  {
+    getObjectIdentifierDB().setBlockStore(store);
+    return this;
+  }
+
+  /**
+   * Lets the generator reserve its blocks together with other generators in one
+   * transaction (see {@link IdRefillCoalescer}). A value of null switches it off.
+   */
+  public ObjectIdentifierDBBuilder setRefillCoalescer(IdRefillCoalescer coalescer)
+  {
+    getObjectIdentifierDB().setRefillCoalescer(coalescer);
+    return this;
+  }
+
+  /**
+   * Lets the generator prefetch its blocks by the given scheduler that is shared
+   * with other generators (see {@link IdRefillScheduler}). A value of null switches it off.
+   */
+  public ObjectIdentifierDBBuilder setRefillScheduler(IdRefillScheduler scheduler)
+  {
+    getObjectIdentifierDB().setRefillScheduler(scheduler);
+    return this;
+  }
+
+  /**
+   * Lets the generator keep one connection with its prepared statements open across
+   * the refills (see {@link ObjectIdentifierDB#setPersistentConnection(boolean)}).
+   */
+  public ObjectIdentifierDBBuilder persistentConnection()
+  {
+    getObjectIdentifierDB().setPersistentConnection(true);
+    return this;
+  }
+
+  /**
+   * Lets the generator add the primary key on the category column to an existing table
+   * that has none (see {@link ObjectIdentifierDB#setPrimaryKeyMigration(boolean)}).
+   */
+  public ObjectIdentifierDBBuilder migratePrimaryKey()
+  {
+    getObjectIdentifierDB().setPrimaryKeyMigration(true);
+    return this;
+  }
+
+  /**
+   * Lets {@link #build()} create the table and row if necessary and load the first block,
+   * so the first identifier is served from memory (see {@link ObjectIdentifierDB#warmUp()}).
+   */
+  public ObjectIdentifierDBBuilder warmUp()
+  {
+    this.warmUp = true;
+    return this;
+  }
+
+  /**
+   * Splits the category into the given number of rows that are used for the refills
+   * in round-robin order (see {@link ObjectIdentifierDB#setRowStripeCount(int)}).
+   * All generators of the category must use the same number of rows and the same block size.
+   */
+  public ObjectIdentifierDBBuilder rowStripes(int count)
+  {
+    getObjectIdentifierDB().setRowStripeCount(count);
+    return this;
+  }
+
   /**
    * Sets the padding character to the given values.
    * The default padding character is '0'.
@@ -198,11 +441,126 @@ public class ObjectIdentifierDBBuilder
     return this;
   }
   
+  /**
+   * Sets the name of the database sequence. By default it is the table name and the
+   * category concatenated by an underscore.
+   * 
+   * @throws IllegalStateException if this builder has not been created by {@link #createForSequence(DataSource)}.
+   */
+  public ObjectIdentifierDBBuilder setSequenceName(String sequenceName)
+  {
+    if (!(getObjectIdentifierDB() instanceof SequenceIdentifierDB))
+    {
+      throw new IllegalStateException("A sequence name can only be set for a sequence based ID generator");
+    }
+    ((SequenceIdentifierDB)getObjectIdentifierDB()).setSequenceName(sequenceName);
+    return this;
+  }
+
+  /**
+   * Lets the generator record its current ID range in a journal file in the given
+   * directory, so that the unused IDs can be consumed after an abrupt termination
+   * (see {@link IdRangeJournal}). The file name is derived from the category (and the node index in stride mode).
+   *
+   * @param directory The directory of the journal files (must not be null).
+   * @param chunkSize The maximum number of IDs lost on abrupt termination (must be > 0).
+   */
+  public ObjectIdentifierDBBuilder rangeJournal(File directory, int chunkSize)
+  {
+    this.journalDirectory = directory;
+    this.journalChunkSize = chunkSize;
+    return this;
+  }
+
+  /**
+   * Lets the generator share the blocks reserved in the database with the generators
+   * of the same table and category in other processes on the same host
+   * (see {@link SharedIdRegion}). Each generator takes chunks of the given size
+   * from the region file in the given directory.
+   * <p>
+   * Each chunk costs a lock and unlock system call on the region file plus a monitor,
+   * so the chunk size should be a multiple of the number of IDs the process typically
+   * consumes between two refills. If in doubt use {@link #sharedRegion(File)}.
+   *
+   * @param directory The directory of the region files (must not be null).
+   * @param chunkSize The number of IDs taken at once from the region or 0 to derive it
+   *                  from the consumption rate like {@link #sharedRegion(File)} does (must not be negative).
+   * @throws IllegalArgumentException if chunkSize is negative.
+   */
+  public ObjectIdentifierDBBuilder sharedRegion(File directory, int chunkSize)
+  {
+    if (chunkSize < 0)
+    {
+      throw new IllegalArgumentException("chunkSize must not be negative but is " + chunkSize);
+    }
+    this.regionDirectory = directory;
+    this.regionChunkSize = chunkSize;
+    return this;
+  }
+
+  /**
+   * Like {@link #sharedRegion(File, int)}, but each chunk is sized to last
+   * {@link ObjectIdentifierDB#DEFAULT_SHARED_CHUNK_WINDOW_MILLIS} at the observed consumption rate.
+   *
+   * @param directory The directory of the region files (must not be null).
+   */
+  public ObjectIdentifierDBBuilder sharedRegion(File directory)
+  {
+    return sharedRegion(directory, 0);
+  }
+
+  /**
+   * Returns the configured generator.
+   *
+   * @throws DatabaseAccessException if a range journal or shared region is configured but cannot be opened
+   * or if the warm-up is requested and fails.
+   */
   public ObjectIdentifierDB build()
   {
+    if (journalDirectory != null)
+    {
+      getObjectIdentifierDB().setRangeJournal(openRangeJournal());
+    }
+    if (regionDirectory != null)
+    {
+      getObjectIdentifierDB().setSharedRegion(openSharedRegion(), regionChunkSize);
+    }
+    if (warmUp)
+    {
+      getObjectIdentifierDB().warmUp();
+    }
     return getObjectIdentifierDB();
   }
 
+  protected IdRangeJournal openRangeJournal()
+  {
+    try
+    {
+      return IdRangeJournal.open(journalDirectory, getObjectIdentifierDB().getCategoryRowName()).setChunkSize(journalChunkSize);
+    }
+    catch (IOException e)
+    {
+      throw new DatabaseAccessException(e, "Opening ID range journal for category '%s' in '%s' failed",
+          getObjectIdentifierDB().getCategory(), journalDirectory);
+    }
+  }
+
+  protected SharedIdRegion openSharedRegion()
+  {
+    String name;
+
+    name = getObjectIdentifierDB().getTableName() + "_" + getObjectIdentifierDB().getCategoryRowName();
+    try
+    {
+      return SharedIdRegion.open(regionDirectory, name);
+    }
+    catch (IOException e)
+    {
+      throw new DatabaseAccessException(e, "Opening shared ID region for category '%s' in '%s' failed",
+          getObjectIdentifierDB().getCategory(), regionDirectory);
+    }
+  }
+
   protected ObjectIdentifierDB getObjectIdentifierDB()
   {
     return this.objectIdentifierDB;
@@ -0,0 +1,454 @@
+// ===========================================================================
+// CONTENT  : CLASS ObjectIdentifierFile
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  bugfix  -> reserveIdentifiers() takes small ranges from the regular block
+//  17/10/2026  mdu  bugfix  -> high-water mark is written alternately to two slots, so a torn write cannot destroy it
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.pfsw.bif.identifier.IdentifierGenerationException;
+
+/**
+ * Instances of this class provide generation of unique identifiers that are
+ * backed by a local memory-mapped file rather than by a database table.
+ * It is meant for embedded use where no database is available.
+ * <p>
+ * Like {@link ObjectIdentifierDB} it reserves blocks of IDs and hands them out from
+ * memory without any locking. The file contains a high-water mark that is always
+ * written before any ID below it is handed out, so no ID is handed out twice after a restart.
+ * <p>
+ * To keep the number of synchronous writes to the storage device low, the high-water mark
+ * is moved forward by several blocks at once (see {@link #setBlocksPerForce(int)}) and
+ * only then forced to the device. Since the file is memory-mapped, the mark survives the
+ * abrupt termination of the process in any case. The number of blocks per force
+ * only determines how many IDs are skipped after a crash.
+ * {@link #close()} writes the exact next ID, so nothing is skipped after an orderly shutdown.
+ * <p>
+ * The file has two slots for the high-water mark, each with a sequence number and a checksum.
+ * They are written alternately and the valid slot with the higher sequence number is read.
+ * So if a crash tears the write of one slot, the previous mark in the other slot is used.
+ * That mark is safe, because no ID above it is handed out before the write has been forced.
+ * <p>
+ * The file is locked exclusively while it is open, so it cannot be used by two
+ * generators at the same time.
+ * <p>
+ * In any critical situation this class throws an {@link IdentifierGenerationException}.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class ObjectIdentifierFile extends ObjectIdentifierGenerator implements Closeable
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final int DEFAULT_BLOCKSIZE = 1000;
+  public static final int DEFAULT_BLOCKS_PER_FORCE = 10;
+  public static final String FILE_EXTENSION = ".oid";
+
+  private static final int MAGIC = 0x5046494F;
+  private static final int FORMAT_VERSION = 1;
+  private static final int POS_MAGIC = 0;
+  private static final int POS_VERSION = 4;
+  private static final int POS_FIRST_SLOT = 8;
+  private static final int SLOT_SIZE = 24;
+  private static final int SLOT_OFFSET_SEQUENCE = 0;
+  private static final int SLOT_OFFSET_HIGH_WATER_MARK = 8;
+  private static final int SLOT_OFFSET_CHECKSUM = 16;
+  private static final int FILE_SIZE = POS_FIRST_SLOT + (2 * SLOT_SIZE);
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final FileLock fileLock;
+  private final MappedByteBuffer buffer;
+  private final AtomicReference<IdSegment> currentSegment = new AtomicReference<IdSegment>();
+  private int blockSize = DEFAULT_BLOCKSIZE;
+  private int blocksPerForce = DEFAULT_BLOCKS_PER_FORCE;
+  private long nextBlockStart;
+  private long highWaterMark;
+  private long slotSequence = 0;
+  private long forceCount = 0;
+  private volatile boolean closed = false;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Opens the file for the given category in the given directory.
+   * The file and the directory get created if necessary.
+   *
+   * @param directory The directory that contains the files (must not be null).
+   * @param category The category of the IDs (must not be null).
+   * @param startId The first ID to be generated if the file does not yet exist.
+   * @throws IdentifierGenerationException if the file cannot be created, mapped or locked.
+   */
+  public static ObjectIdentifierFile open(File directory, String category, long startId)
+  {
+    if (!directory.isDirectory() && !directory.mkdirs())
+    {
+      throw new IdentifierGenerationException("Cannot create directory %s", directory);
+    }
+    return open(new File(directory, category.replaceAll("[^A-Za-z0-9_.-]", "_") + FILE_EXTENSION), startId);
+  }
+
+  /**
+   * Opens the given file. It gets created if necessary.
+   *
+   * @param file The file that contains the high-water mark (must not be null).
+   * @param startId The first ID to be generated if the file does not yet exist.
+   * @throws IdentifierGenerationException if the file cannot be created, mapped or locked or contains invalid data.
+   */
+  public static ObjectIdentifierFile open(File file, long startId)
+  {
+    return new ObjectIdentifierFile(file, startId);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  protected ObjectIdentifierFile(File file, long startId)
+  {
+    super();
+    FileChannel channel;
+    FileLock lock = null;
+
+    this.file = file;
+    try
+    {
+      this.randomAccessFile = new RandomAccessFile(file, "rw");
+    }
+    catch (IOException e)
+    {
+      throw new IdentifierGenerationException(e, "Cannot open ID file %s", file);
+    }
+    try
+    {
+      channel = randomAccessFile.getChannel();
+      try
+      {
+        lock = channel.tryLock();
+      }
+      catch (@SuppressWarnings("unused") OverlappingFileLockException e)
+      {
+        lock = null;
+      }
+      if (lock == null)
+      {
+        throw new IOException("ID file is already in use");
+      }
+      this.fileLock = lock;
+      this.buffer = channel.map(MapMode.READ_WRITE, 0, FILE_SIZE);
+      this.highWaterMark = readHighWaterMark(startId);
+      this.nextBlockStart = this.highWaterMark;
+    }
+    catch (IOException e)
+    {
+      closeQuietly(lock);
+      throw new IdentifierGenerationException(e, "Cannot open ID file %s", file);
+    }
+    catch (RuntimeException e)
+    {
+      closeQuietly(lock);
+      throw e;
+    }
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  @Override
+  public long nextIdentifier()
+  {
+    IdSegment segment;
+    long id;
+
+    while (true)
+    {
+      segment = currentSegment.get();
+      if (segment != null)
+      {
+        id = segment.next();
+        if (id != IdSegment.EXHAUSTED)
+        {
+          return id;
+        }
+      }
+      swapSegment(segment);
+    }
+  }
+
+  /**
+   * Returns a range of new consecutive identifiers. If the current block does not
+   * contain enough IDs, its rest is skipped and the range is taken from the next regular block.
+   * Only a count larger than the block size gets a separate block of exactly that size.
+   *
+   * @param count The number of identifiers to reserve (must be > 0).
+   * @throws IllegalArgumentException if count is not > 0.
+   */
+  @Override
+  public IdRange reserveIdentifiers(int count)
+  {
+    IdSegment segment;
+    IdRange range;
+
+    checkReserveCount(count);
+    if (count <= getBlockSize())
+    {
+      // A second swap is only necessary if other threads took the new segment's IDs in the meantime
+      for (int attempt = 0; attempt < 2; attempt++)
+      {
+        segment = currentSegment.get();
+        if (segment != null)
+        {
+          range = segment.reserveExactly(count);
+          if (range != null)
+          {
+            return range;
+          }
+          // Skips the rest, so no other thread keeps serving from the replaced segment
+          segment.reserve(Integer.MAX_VALUE);
+        }
+        swapSegment(segment);
+      }
+    }
+    return reserveBlock(count);
+  }
+
+  /**
+   * Writes the next ID that has not yet been handed out to the file and releases it.
+   * After closing, this generator throws an IllegalStateException as soon as it would
+   * need to reserve another block. Calling this method more than once has no effect.
+   */
+  @Override
+  public synchronized void close()
+  {
+    IdSegment segment;
+    IdRange unused;
+    long mark;
+
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    mark = nextBlockStart;
+    segment = currentSegment.get();
+    if (segment != null)
+    {
+      unused = segment.reserve(Integer.MAX_VALUE);
+      if ((unused != null) && (unused.getLast() + 1 == nextBlockStart))
+      {
+        mark = unused.getStart();
+      }
+    }
+    writeHighWaterMark(mark);
+    buffer.force();
+    closeQuietly(fileLock);
+  }
+
+  public boolean isClosed()
+  {
+    return this.closed;
+  }
+
+  public File getFile()
+  {
+    return this.file;
+  }
+
+  public int getBlockSize()
+  {
+    return this.blockSize;
+  }
+
+  /**
+   * Sets how many IDs are reserved in-memory at once.
+   * The default is {@link #DEFAULT_BLOCKSIZE}.
+   */
+  public ObjectIdentifierFile setBlockSize(int newValue)
+  {
+    if (newValue > 0)
+    {
+      this.blockSize = newValue;
+    }
+    return this;
+  }
+
+  public int getBlocksPerForce()
+  {
+    return this.blocksPerForce;
+  }
+
+  /**
+   * Sets how many blocks the high-water mark in the file is moved forward at once
+   * before it gets forced to the storage device. A value of 1 forces each block.
+   * The default is {@link #DEFAULT_BLOCKS_PER_FORCE}.
+   */
+  public ObjectIdentifierFile setBlocksPerForce(int newValue)
+  {
+    if (newValue > 0)
+    {
+      this.blocksPerForce = newValue;
+    }
+    return this;
+  }
+
+  /**
+   * Returns how often the file has been forced to the storage device since it has been opened.
+   */
+  public synchronized long getForceCount()
+  {
+    return this.forceCount;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s('%s')", getClass().getSimpleName(), getFile().getPath());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Replaces the given exhausted segment by a new one.
+   * Nothing happens if another thread already replaced it.
+   */
+  protected synchronized void swapSegment(IdSegment exhaustedSegment)
+  {
+    if (currentSegment.get() != exhaustedSegment)
+    {
+      return;
+    }
+    currentSegment.set(IdSegment.create(reserveBlock(getBlockSize())));
+  }
+
+  /**
+   * Reserves the next block of the given size. If it is not yet covered by the
+   * high-water mark in the file, the mark gets moved forward and forced to the storage
+   * device before the block is returned.
+   */
+  protected synchronized IdRange reserveBlock(int count)
+  {
+    IdRange block;
+
+    if (closed)
+    {
+      throw new IllegalStateException(String.format("%s has been closed", this));
+    }
+    block = IdRange.create(nextBlockStart, count);
+    if (block.getLast() >= highWaterMark)
+    {
+      highWaterMark = block.getLast() + 1 + ((long)getBlockSize() * (getBlocksPerForce() - 1));
+      writeHighWaterMark(highWaterMark);
+      buffer.force();
+      forceCount++;
+    }
+    nextBlockStart = block.getLast() + 1;
+    return block;
+  }
+
+  /**
+   * Returns the high-water mark of the valid slot with the higher sequence number.
+   *
+   * @throws IdentifierGenerationException if the file has been written but contains no valid slot.
+   */
+  protected long readHighWaterMark(long startId)
+  {
+    int slotPos;
+    long sequence;
+    long mark;
+    long bestSequence = 0;
+    long bestMark = 0;
+
+    if (buffer.getInt(POS_MAGIC) == 0)
+    {
+      return startId;
+    }
+    if ((buffer.getInt(POS_MAGIC) != MAGIC) || (buffer.getInt(POS_VERSION) != FORMAT_VERSION))
+    {
+      throw new IdentifierGenerationException("Invalid content in ID file %s", getFile());
+    }
+    for (int slot = 0; slot < 2; slot++)
+    {
+      slotPos = POS_FIRST_SLOT + (slot * SLOT_SIZE);
+      sequence = buffer.getLong(slotPos + SLOT_OFFSET_SEQUENCE);
+      mark = buffer.getLong(slotPos + SLOT_OFFSET_HIGH_WATER_MARK);
+      if ((sequence > bestSequence) && (buffer.getLong(slotPos + SLOT_OFFSET_CHECKSUM) == checksum(sequence, mark)))
+      {
+        bestSequence = sequence;
+        bestMark = mark;
+      }
+    }
+    if (bestSequence == 0)
+    {
+      throw new IdentifierGenerationException("No valid high-water mark in ID file %s", getFile());
+    }
+    slotSequence = bestSequence;
+    return bestMark;
+  }
+
+  /**
+   * Writes the given mark into the slot that does not contain the current mark.
+   */
+  protected void writeHighWaterMark(long mark)
+  {
+    int slotPos;
+
+    slotSequence++;
+    slotPos = POS_FIRST_SLOT + ((int)(slotSequence % 2) * SLOT_SIZE);
+    buffer.putLong(slotPos + SLOT_OFFSET_SEQUENCE, slotSequence);
+    buffer.putLong(slotPos + SLOT_OFFSET_HIGH_WATER_MARK, mark);
+    buffer.putLong(slotPos + SLOT_OFFSET_CHECKSUM, checksum(slotSequence, mark));
+    // The header comes last, so a file without any complete slot still counts as new
+    buffer.putInt(POS_VERSION, FORMAT_VERSION);
+    buffer.putInt(POS_MAGIC, MAGIC);
+  }
+
+  protected long checksum(long sequence, long mark)
+  {
+    return MAGIC ^ Long.rotateLeft(mark, 29) ^ Long.rotateLeft(sequence, 47) ^ 0x5DEECE66DL;
+  }
+
+  protected void closeQuietly(FileLock lock)
+  {
+    try
+    {
+      if (lock != null)
+      {
+        lock.release();
+      }
+    }
+    catch (@SuppressWarnings("unused") IOException e)
+    {
+      // Closing the file releases the lock anyway
+    }
+    try
+    {
+      randomAccessFile.close();
+    }
+    catch (@SuppressWarnings("unused") IOException e)
+    {
+      // Nothing sensible to do
+    }
+  }
+}
@@ -1,7 +1,7 @@
 // ===========================================================================
 // CONTENT  : CLASS ObjectIdentifierGenerator
 // AUTHOR   : Manfred Duchrow
-// VERSION  : 1.6 - 13/04/2020
+// VERSION  : 1.7 - 17/10/2026
 // HISTORY  :
 //  12/12/2000  duma  CREATED
 //  02/12/2001  duma  moved from com.mdcs.db.util
@@ -11,8 +11,9 @@
 //	26/07/2003	duma	bugfix	->	idLength of 1 was not allowed
 //	22/02/2008	mdu		changed	->	to extend ObjectIdGenerator
 //  13/02/2020  mdu   added   ->  setStartId()
+//  17/10/2026  mdu   added   ->  reserveIdentifiers()
 //
-// Copyright (c) 2000-2020, by Manfred Duchrow. All rights reserved.
+// Copyright (c) 2000-2026, by Manfred Duchrow. All rights reserved.
 // ===========================================================================
 package org.pfsw.db.util;
 
@@ -23,7 +24,7 @@ import org.pfsw.text.ObjectIdGenerator;
  * starting at 1.
  *
  * @author Manfred Duchrow
- * @version 1.6
+ * @version 1.7
  */
 public class ObjectIdentifierGenerator extends ObjectIdGenerator implements ObjectIdentifierProducer
 {
@@ -60,6 +61,25 @@ public class ObjectIdentifierGenerator extends ObjectIdGenerator implements Obje
     setStartId(startId);
   }
   
+  @Override
+  public synchronized IdRange reserveIdentifiers(int count)
+  {
+    long id;
+
+    checkReserveCount(count);
+    id = getNextId();
+    setNextId(id + count);
+    return IdRange.create(id, count);
+  }
+
+  protected void checkReserveCount(int count)
+  {
+    if (count <= 0)
+    {
+      throw new IllegalArgumentException("The number of identifiers to reserve must be greater than 0 but is " + count);
+    }
+  }
+
   protected void setStartId(long startId)
   {
     if (startId >= 0)
@@ -1,14 +1,16 @@
 // ===========================================================================
 // CONTENT  : INTERFACE ObjectIdentifierProducer
 // AUTHOR   : Manfred Duchrow
-// VERSION  : 1.3 - 22/02/2008
+// VERSION  : 1.4 - 17/10/2026
 // HISTORY  :
 //  05/01/2001  duma  CREATED
 //  02/12/2001  duma  moved from com.mdcs.db.util
 //	28/06/2002	duma	added	nextIdentifier()
 //	22/02/2008	mdu		changed -->	to extend IObjectIdGenerator
+//  17/10/2026  mdu   added   --> reserveIdentifiers()
+//  17/10/2026  mdu   changed --> reserveIdentifiers() documents non-consecutive ranges
 //
-// Copyright (c) 2001-2008, by Manfred Duchrow. All rights reserved.
+// Copyright (c) 2001-2026, by Manfred Duchrow. All rights reserved.
 // ===========================================================================
 package org.pfsw.db.util;
 
@@ -18,7 +20,7 @@ import org.pfsw.bif.identifier.IObjectIdGenerator;
  * An object that generates new identifiers must implement this interface.
  *
  * @author Manfred Duchrow
- * @version 1.3
+ * @version 1.4
  */
 public interface ObjectIdentifierProducer extends IObjectIdGenerator
 {
@@ -27,4 +29,17 @@ public interface ObjectIdentifierProducer extends IObjectIdGenerator
    */
   public long nextIdentifier();
 
+  /**
+   * Returns a range of new identifiers that are reserved at once.
+   * That is much cheaper than calling {@link #nextIdentifier()} repeatedly.
+   * The identifiers are usually consecutive, but a generator that interleaves
+   * its IDs with other nodes (stride mode) returns a range with a step greater than 1.
+   * So callers must use {@link IdRange#getStep()} (or {@link IdRange#toArray()})
+   * rather than assuming that all values between first and last belong to the range.
+   * 
+   * @param count The number of identifiers to reserve (must be > 0).
+   * @throws IllegalArgumentException if count is not > 0.
+   */
+  public IdRange reserveIdentifiers(int count);
+
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+// ===========================================================================
+// CONTENT  : CLASS SequenceIdBlockStore
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  doc -> increment of an existing sequence is kept
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.pfsw.db.DatabaseAccessException;
+
+/**
+ * A block store that is backed by a native database sequence per category
+ * (see {@link SequenceIdentifierDB}). The increment of each sequence is the block size
+ * passed to {@link #initializeCategory(String, long, int)} unless the sequence exists already.
+ * Then its increment is kept. At most that number of identifiers can be reserved at once. Ranges cannot be given back to a sequence.
+ * <p>
+ * In any critical (fatal) situation this class throws a {@link DatabaseAccessException}.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class SequenceIdBlockStore implements IdBlockStore
+{
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final DataSource dataSource;
+  private final IdGeneratorTableSpec tableSpec;
+  private final ConcurrentMap<String, SequenceIdentifierDB> sequences = new ConcurrentHashMap<String, SequenceIdentifierDB>();
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new store with sequence names derived from the default ID table name.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   */
+  public static SequenceIdBlockStore create(DataSource ds)
+  {
+    return create(ds, IdGeneratorTableSpec.create());
+  }
+
+  /**
+   * Creates a new store with sequence names derived from the given table name and qualifier.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   * @param tableSpec The table name and qualifier the sequence names are derived from (must not be null).
+   */
+  public static SequenceIdBlockStore create(DataSource ds, IdGeneratorTableSpec tableSpec)
+  {
+    return new SequenceIdBlockStore(ds, tableSpec);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  public SequenceIdBlockStore(DataSource ds, IdGeneratorTableSpec tableSpec)
+  {
+    super();
+    this.dataSource = ds;
+    this.tableSpec = tableSpec;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Creates the category's sequence if necessary.
+   */
+  @Override
+  public boolean initializeCategory(String category, long startId, int blockSize)
+  {
+    SequenceIdentifierDB sequence;
+
+    sequence = SequenceIdentifierDB.create(getDataSource(), category);
+    sequence.setTableSpec(getTableSpec());
+    sequence.setBlockSize(blockSize);
+    sequence.setStartId(startId);
+    if (!sequence.isAllInitialized())
+    {
+      return false;
+    }
+    sequences.putIfAbsent(category, sequence);
+    return true;
+  }
+
+  /**
+   * @throws IllegalArgumentException if count exceeds the increment of the sequence.
+   */
+  @Override
+  public IdRange reserveRange(String category, int count)
+  {
+    SequenceIdentifierDB sequence;
+
+    sequence = sequences.get(category);
+    if (sequence == null)
+    {
+      return null;
+    }
+    return sequence.blockFromDB(count);
+  }
+
+  /**
+   * A sequence cannot be reset safely, so this always returns false.
+   */
+  @Override
+  public boolean releaseRange(String category, IdRange range)
+  {
+    return false;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s('%s')", getClass().getSimpleName(), getTableSpec().getUnqualifiedTableName());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  protected DataSource getDataSource()
+  {
+    return this.dataSource;
+  }
+
+  protected IdGeneratorTableSpec getTableSpec()
+  {
+    return this.tableSpec;
+  }
+}
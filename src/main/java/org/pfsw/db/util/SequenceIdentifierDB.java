@@ -0,0 +1,460 @@
+// ===========================================================================
+// CONTENT  : CLASS SequenceIdentifierDB
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  changed -> close() does not return unused IDs
+//  17/10/2026  mdu  changed -> statement is cached on a persistent connection
+//  17/10/2026  mdu  changed -> sequence creation no longer synchronizes on the DataSource
+//  17/10/2026  mdu  bugfix  -> block size is taken from the increment of the sequence, failed creation is reported
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+
+import org.pfsw.db.DatabaseAccessException;
+
+/**
+ * An identifier generator that is backed by a native database sequence rather than
+ * by a row in the OIDADMIN table.
+ * <p>
+ * The sequence is created with INCREMENT BY &lt;blockSize&gt;, so each value fetched from
+ * the sequence is the first identifier of a block of blockSize identifiers that are then
+ * handed out from memory (hi/lo). Fetching the next value needs no row lock, which
+ * makes this generator preferable when many nodes generate identifiers of the same category.
+ * <p>
+ * All in-memory modes of {@link ObjectIdentifierDB} (prefetch, lock-free, striped, ...)
+ * are available. Since the increment of the sequence is fixed, the block size cannot
+ * change. Hence an {@link AdaptiveBlockSizePolicy} is ignored and a bulk reservation of more
+ * identifiers than the block size is rejected with an IllegalArgumentException.
+ * A sequence cannot be reset safely, so {@link #close()} does not return unused identifiers.
+ * <p>
+ * During initialization the increment of the sequence is read from the catalog of the
+ * database. If it differs from the block size, the increment replaces the block size,
+ * because bigger blocks would overlap with the blocks of other generators.
+ * <p>
+ * The sequence name is derived from the table name and the category unless it is
+ * set explicitly (see {@link #setSequenceName(String)}). A missing sequence gets
+ * created with the start ID of this generator.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class SequenceIdentifierDB extends ObjectIdentifierDB
+{
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private String sequenceName = null;
+  private volatile String sqlNextValueStatement = null;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new instance with the data source and category.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   * @param categoryName The name of the OID's category (must not be null).
+   */
+  public static SequenceIdentifierDB create(DataSource ds, String categoryName)
+  {
+    return new SequenceIdentifierDB(ds, categoryName);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  /**
+   * Initialize the new instance with the given data source.
+   *
+   * @param ds A valid data source that allows connection to a database.
+   */
+  public SequenceIdentifierDB(DataSource ds)
+  {
+    super(ds);
+  }
+
+  /**
+   * Initialize the new instance with the data source.
+   * Assign a category where the OIDs belong to.
+   *
+   * @param ds A valid data source that allows connection to a database.
+   * @param categoryName The name of the OID's category.
+   */
+  public SequenceIdentifierDB(DataSource ds, String categoryName)
+  {
+    super(ds, categoryName);
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Returns the (qualified) name of the database sequence.
+   */
+  public String getSequenceName()
+  {
+    String name;
+
+    if (this.sequenceName != null)
+    {
+      return this.sequenceName;
+    }
+    name = getUnqualifiedTableName() + "_" + getCategory().toUpperCase().replaceAll("[^A-Z0-9_]", "_");
+    if (hasTableQualifier())
+    {
+      return getTableQualifier() + "." + name;
+    }
+    return name;
+  }
+
+  /**
+   * Sets the name of the database sequence.
+   * A value of null resets it to the derived name that is the table name and the
+   * category concatenated by an underscore.
+   */
+  public SequenceIdentifierDB setSequenceName(String name)
+  {
+    this.sequenceName = name;
+    return this;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s('%s')", getClass().getSimpleName(), getSequenceName());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Creates the sequence unless it exists already. Generators of this JVM that use the
+   * same sequence and data source do that only once at a time.
+   */
+  @Override
+  protected boolean initializeTableIfNecessary()
+  {
+    //@formatter:off
+    return InitializationBarrier.runOnce(getDataSource(), InitializationBarrier.KIND_SEQUENCE, getSequenceName(), 
+        new Callable<Boolean>()
+        {
+          @Override
+          public Boolean call()
+          {
+            return Boolean.valueOf(createSequenceIfNecessary());
+          }
+        });
+    //@formatter:on
+  }
+
+  /**
+   * Creates the sequence if the catalog of the database does not contain it.
+   * A failed creation is only ignored if the sequence exists afterwards,
+   * because another process created it in the meantime.
+   *
+   * @throws DatabaseAccessException if the catalog cannot be read or the sequence cannot be created.
+   */
+  protected boolean createSequenceIfNecessary()
+  {
+    Connection conn = null;
+
+    try
+    {
+      conn = getDbConnection();
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Opening database connection for initializing sequence '%s' failed!", getSequenceName());
+      throw new DatabaseAccessException(ex, "Opening database connection for initializing sequence '%s' failed!", getSequenceName());
+    }
+    try
+    {
+      if (readSequenceIncrement(conn) > 0)
+      {
+        return true;
+      }
+      try
+      {
+        createSequence(conn);
+      }
+      catch (SQLException ex)
+      {
+        rollback(conn);
+        if (readSequenceIncrement(conn) <= 0)
+        {
+          throw ex;
+        }
+      }
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Creating sequence '%s' failed.", getSequenceName());
+      rollback(conn);
+      throw new DatabaseAccessException(ex, "Creating sequence '%s' failed.", getSequenceName());
+    }
+    finally
+    {
+      closeConnection(conn);
+    }
+    return true;
+  }
+
+  /**
+   * There is no category row for a sequence. Instead the increment of the sequence
+   * is read and taken as the block size of this generator.
+   *
+   * @throws DatabaseAccessException if the increment cannot be read.
+   */
+  @Override
+  protected boolean initializeCategory()
+  {
+    Connection conn = null;
+    long increment;
+
+    try
+    {
+      conn = getDbConnection();
+      increment = readSequenceIncrement(conn);
+      conn.commit();
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Reading the increment of sequence '%s' failed.", getSequenceName());
+      rollback(conn);
+      throw new DatabaseAccessException(ex, "Reading the increment of sequence '%s' failed.", getSequenceName());
+    }
+    finally
+    {
+      closeConnection(conn);
+    }
+    if ((increment <= 0) || (increment > Integer.MAX_VALUE))
+    {
+      throw new DatabaseAccessException("Sequence '%s' has the unsupported increment %d", getSequenceName(), increment);
+    }
+    if (increment != getBlockSize())
+    {
+      logger().warnf("Block size %d of %s replaced by the increment %d of the sequence", getBlockSize(), this, increment);
+      setBlockSize((int)increment);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the increment of the sequence as found in the catalog of the database
+   * or 0 if the sequence does not exist.
+   *
+   * @throws SQLException if the catalog cannot be read or contains several sequences of that name with different increments.
+   */
+  protected long readSequenceIncrement(Connection conn) throws SQLException
+  {
+    PreparedStatement statement;
+    ResultSet result;
+    String[] schemaAndName;
+    long increment = 0;
+
+    schemaAndName = splitSequenceName();
+    statement = conn.prepareStatement(sqlSelectSequenceIncrement(conn.getMetaData().getDatabaseProductName(), schemaAndName[0] != null));
+    try
+    {
+      statement.setString(1, schemaAndName[1].toUpperCase());
+      if (schemaAndName[0] != null)
+      {
+        statement.setString(2, schemaAndName[0].toUpperCase());
+      }
+      result = statement.executeQuery();
+      while (result.next())
+      {
+        if ((increment != 0) && (increment != result.getLong(1)))
+        {
+          throw new SQLException(String.format("Several sequences named '%s' with different increments found, the name must be qualified", getSequenceName()));
+        }
+        increment = result.getLong(1);
+      }
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+    return increment;
+  }
+
+  /**
+   * Returns the schema (or null if the name is unqualified) and the unqualified name of the sequence.
+   */
+  protected String[] splitSequenceName()
+  {
+    String name;
+    int index;
+
+    name = getSequenceName();
+    index = name.lastIndexOf('.');
+    if (index < 0)
+    {
+      return new String[] { null, name };
+    }
+    return new String[] { name.substring(0, index), name.substring(index + 1) };
+  }
+
+  /**
+   * Returns the query that selects the increment of the sequence from the catalog in the SQL dialect
+   * of the given database. The first parameter is the upper case sequence name, the second one
+   * the upper case schema name if requested.
+   */
+  protected String sqlSelectSequenceIncrement(String databaseProductName, boolean withSchema)
+  {
+    String name;
+
+    name = (databaseProductName == null) ? "" : databaseProductName.toLowerCase();
+    if (name.contains("oracle"))
+    {
+      if (withSchema)
+      {
+        return "SELECT INCREMENT_BY FROM ALL_SEQUENCES WHERE SEQUENCE_NAME = ? AND SEQUENCE_OWNER = ?";
+      }
+      return "SELECT INCREMENT_BY FROM USER_SEQUENCES WHERE SEQUENCE_NAME = ?";
+    }
+    if (name.contains("derby"))
+    {
+      //@formatter:off
+      return "SELECT q.INCREMENT FROM SYS.SYSSEQUENCES q JOIN SYS.SYSSCHEMAS s ON q.SCHEMAID = s.SCHEMAID WHERE UPPER(q.SEQUENCENAME) = ?"
+          + (withSchema ? " AND UPPER(s.SCHEMANAME) = ?" : "");
+      //@formatter:on
+    }
+    if (name.contains("db2"))
+    {
+      return "SELECT INCREMENT FROM SYSCAT.SEQUENCES WHERE UPPER(SEQNAME) = ?" + (withSchema ? " AND UPPER(SEQSCHEMA) = ?" : "");
+    }
+    // The SQL standard catalog, e.g. H2, HSQLDB, PostgreSQL, SQL Server
+    return "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE UPPER(SEQUENCE_NAME) = ?" + (withSchema ? " AND UPPER(SEQUENCE_SCHEMA) = ?" : "");
+  }
+
+  /**
+   * Fetches the next value of the sequence which is the start of the next block.
+   *
+   * @param requestedCount The size of the block (must not exceed the block size) or 0 for the whole block.
+   * @return The reserved block.
+   */
+  @Override
+  protected IdRange blockFromDB(int requestedCount)
+  {
+    Connection conn = null;
+    PreparedStatement statement = null;
+    ResultSet result = null;
+    long id;
+
+    if (requestedCount > getBlockSize())
+    {
+      throw new IllegalArgumentException(String.format("Cannot reserve %d consecutive identifiers from sequence '%s' with an increment of %d",
+          requestedCount, getSequenceName(), getBlockSize()));
+    }
+    try
+    {
+      conn = getDbConnection();
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Opening database for reading sequence '%s' failed!", getSequenceName());
+      throw new DatabaseAccessException(ex, "Opening database for reading sequence '%s' failed!", getSequenceName());
+    }
+    try
+    {
+      statement = prepareStatement(conn, sqlNextSequenceValue(conn));
+      result = statement.executeQuery();
+      if (!result.next())
+      {
+        throw new DatabaseAccessException("No value returned from sequence '%s'", getSequenceName());
+      }
+      id = result.getLong(1);
+      conn.commit();
+      logger().debugf("[%s] next-id from sequence '%s': %d%n", Thread.currentThread().getName(), getSequenceName(), id);
+    }
+    catch (SQLException ex)
+    {
+      logSqlExceptionStacktrace(ex, "Reading sequence '%s' failed.", getSequenceName());
+      rollback(conn);
+      throw new DatabaseAccessException(ex, "Reading sequence '%s' failed.", getSequenceName());
+    }
+    finally
+    {
+      closeStatement(statement);
+      closeConnection(conn);
+    }
+    return IdRange.create(id, (requestedCount > 0) ? requestedCount : getBlockSize());
+  }
+
+  /**
+   * Unused identifiers cannot be returned to a sequence.
+   */
+  @Override
+  protected long releaseUnusedRanges(List<IdRange> ranges)
+  {
+    return 0;
+  }
+
+  protected void createSequence(Connection conn) throws SQLException
+  {
+    Statement statement;
+
+    statement = conn.createStatement();
+    try
+    {
+      statement.execute(sqlCreateSequence());
+      conn.commit();
+    }
+    finally
+    {
+      closeStatement(statement);
+    }
+  }
+
+  protected String sqlCreateSequence()
+  {
+    return String.format("CREATE SEQUENCE %s START WITH %d INCREMENT BY %d", getSequenceName(), getNextId(), getBlockSize());
+  }
+
+  /**
+   * Returns the statement that fetches the next value of the sequence in the SQL dialect
+   * of the database behind the given connection.
+   */
+  protected String sqlNextSequenceValue(Connection conn) throws SQLException
+  {
+    if (sqlNextValueStatement == null)
+    {
+      sqlNextValueStatement = sqlNextSequenceValue(conn.getMetaData().getDatabaseProductName());
+    }
+    return sqlNextValueStatement;
+  }
+
+  protected String sqlNextSequenceValue(String databaseProductName)
+  {
+    String name;
+
+    name = (databaseProductName == null) ? "" : databaseProductName.toLowerCase();
+    if (name.contains("postgresql"))
+    {
+      return String.format("SELECT nextval('%s')", getSequenceName());
+    }
+    if (name.contains("oracle"))
+    {
+      return String.format("SELECT %s.NEXTVAL FROM DUAL", getSequenceName());
+    }
+    if (name.contains("derby") || name.contains("db2") || name.contains("hsql"))
+    {
+      return String.format("VALUES NEXT VALUE FOR %s", getSequenceName());
+    }
+    return String.format("SELECT NEXT VALUE FOR %s", getSequenceName());
+  }
+}
@@ -0,0 +1,431 @@
+// ===========================================================================
+// CONTENT  : CLASS SharedIdRegion
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//  17/10/2026  mdu  doc   -> cost of taking a chunk
+//  17/10/2026  mdu  bugfix -> durable high-water mark, so no ID is handed out twice after an OS crash
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.pfsw.db.DatabaseAccessException;
+
+/**
+ * A memory-mapped file that holds an ID block which is shared by all processes
+ * on the same host that generate IDs of the same category.
+ * Each process takes chunks of IDs from the shared block. Only the process that finds
+ * the shared block drained reserves the next block in the database.
+ * That way the number of database round trips is divided by the number of
+ * co-located processes.
+ * <p>
+ * The processes coordinate by an exclusive lock on the file that is held only while
+ * a chunk is taken (and while the shared block gets refilled). Within one JVM the
+ * access to the same file is serialized by a monitor per file, so several instances
+ * for the same file may be used. So each chunk costs a lock and an unlock system call
+ * plus a monitor, which is why chunks should cover many IDs.
+ * <p>
+ * The content of the file survives restarts. The IDs left in the shared block
+ * have been reserved in the database and not yet been handed out by any process,
+ * so they are still taken after a restart.
+ * <p>
+ * Like {@link ObjectIdentifierFile} the file contains a high-water mark that is forced to the
+ * storage device before any ID below it is handed out. To keep the number of synchronous
+ * writes low, it is moved forward by several chunks at once (see {@link #setChunksPerForce(int)}).
+ * Opening the file moves the next ID up to the mark, because the content might be an older,
+ * forced state after a crash of the operating system. So the IDs between the next ID and the
+ * mark are skipped, unless the last instance has been closed in an orderly way, which writes
+ * the exact mark. Hence opening the file while other processes use it skips some IDs as well.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class SharedIdRegion implements Closeable
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  public static final String FILE_EXTENSION = ".idregion";
+  public static final int DEFAULT_CHUNKS_PER_FORCE = 10;
+
+  private static final int MAGIC = 0x50465352;
+  private static final int FORMAT_VERSION = 1;
+  private static final int POS_MAGIC = 0;
+  private static final int POS_VERSION = 4;
+  private static final int POS_NEXT = 8;
+  private static final int POS_LAST = 16;
+  private static final int POS_HIGH_WATER_MARK = 24;
+  private static final int POS_CHECKSUM = 32;
+  private static final int FILE_SIZE = 40;
+
+  private static final ConcurrentMap<String, Object> PROCESS_MONITORS = new ConcurrentHashMap<String, Object>();
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final MappedByteBuffer buffer;
+  private final Object processMonitor;
+  private long refillCount = 0;
+  private long forceCount = 0;
+  private int chunksPerForce = DEFAULT_CHUNKS_PER_FORCE;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Opens the region file for the given name in the given directory.
+   * The file and the directory get created if necessary.
+   *
+   * @param directory The directory that contains the region files (must not be null).
+   * @param name The name of the ID sequence, usually table and category (must not be null).
+   * @throws IOException if the file cannot be created or mapped.
+   */
+  public static SharedIdRegion open(File directory, String name) throws IOException
+  {
+    if (!directory.isDirectory() && !directory.mkdirs())
+    {
+      throw new IOException("Cannot create region directory " + directory);
+    }
+    return open(new File(directory, name.replaceAll("[^A-Za-z0-9_.-]", "_") + FILE_EXTENSION));
+  }
+
+  /**
+   * Opens the given region file. It gets created if necessary.
+   *
+   * @param file The region file (must not be null).
+   * @throws IOException if the file cannot be created or mapped.
+   */
+  public static SharedIdRegion open(File file) throws IOException
+  {
+    return new SharedIdRegion(file);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  protected SharedIdRegion(File file) throws IOException
+  {
+    super();
+    Object monitor;
+
+    this.file = file;
+    this.randomAccessFile = new RandomAccessFile(file, "rw");
+    try
+    {
+      this.buffer = randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, FILE_SIZE);
+    }
+    catch (IOException e)
+    {
+      randomAccessFile.close();
+      throw e;
+    }
+    monitor = PROCESS_MONITORS.putIfAbsent(file.getCanonicalPath(), new Object());
+    this.processMonitor = (monitor == null) ? PROCESS_MONITORS.get(file.getCanonicalPath()) : monitor;
+    try
+    {
+      skipToHighWaterMark();
+    }
+    catch (RuntimeException e)
+    {
+      randomAccessFile.close();
+      throw e;
+    }
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Takes up to the given number of IDs from the shared block. If the shared block
+   * is drained, it gets refilled by the given supplier first, while all other
+   * processes wait.
+   *
+   * @param count The maximum number of IDs to take (must be > 0).
+   * @param refill Reserves the next block in the database. It may return null if no block can be reserved.
+   * @return The taken IDs or null if the refill returned null.
+   * @throws DatabaseAccessException if the file cannot be locked or the refill fails.
+   */
+  public IdRange take(int count, Callable<IdRange> refill)
+  {
+    FileLock lock;
+    IdRange block;
+    long next;
+    long last;
+    long mark;
+    int taken;
+
+    synchronized (getProcessMonitor())
+    {
+      lock = lockFile();
+      try
+      {
+        next = buffer.getLong(POS_NEXT);
+        last = buffer.getLong(POS_LAST);
+        mark = buffer.getLong(POS_HIGH_WATER_MARK);
+        if (!isValid(next, last, mark) || (next > last))
+        {
+          block = refill(refill);
+          if (block == null)
+          {
+            return null;
+          }
+          next = block.getStart();
+          last = block.getLast();
+          mark = next;
+          refillCount++;
+        }
+        taken = (int)Math.min(count, last - next + 1);
+        if (next + taken > mark)
+        {
+          mark = Math.min(last + 1, next + taken + ((long)count * (getChunksPerForce() - 1)));
+          write(next + taken, last, mark);
+          force();
+        }
+        else
+        {
+          write(next + taken, last, mark);
+        }
+        return IdRange.create(next, taken);
+      }
+      finally
+      {
+        unlockFile(lock);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of IDs that are left in the shared block.
+   */
+  public long getRemainingCount()
+  {
+    long next;
+    long last;
+
+    synchronized (getProcessMonitor())
+    {
+      next = buffer.getLong(POS_NEXT);
+      last = buffer.getLong(POS_LAST);
+      return (isValid(next, last, buffer.getLong(POS_HIGH_WATER_MARK)) && (next <= last)) ? (last - next + 1) : 0;
+    }
+  }
+
+  public int getChunksPerForce()
+  {
+    return this.chunksPerForce;
+  }
+
+  /**
+   * Sets by how many chunks the high-water mark in the file is moved forward at once
+   * before it gets forced to the storage device. A value of 1 forces each chunk.
+   * The default is {@link #DEFAULT_CHUNKS_PER_FORCE}.
+   */
+  public SharedIdRegion setChunksPerForce(int newValue)
+  {
+    if (newValue > 0)
+    {
+      this.chunksPerForce = newValue;
+    }
+    return this;
+  }
+
+  /**
+   * Returns how often the file has been forced to the storage device by this instance.
+   */
+  public long getForceCount()
+  {
+    synchronized (getProcessMonitor())
+    {
+      return this.forceCount;
+    }
+  }
+
+  /**
+   * Returns how often the shared block has been refilled by this instance.
+   */
+  public long getRefillCount()
+  {
+    synchronized (getProcessMonitor())
+    {
+      return this.refillCount;
+    }
+  }
+
+  public File getFile()
+  {
+    return this.file;
+  }
+
+  /**
+   * Writes the exact next ID as high-water mark, so no IDs are skipped by the next
+   * opening of the file, and closes the file.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    FileLock lock;
+    long next;
+    long last;
+
+    if (!randomAccessFile.getChannel().isOpen())
+    {
+      return;
+    }
+    try
+    {
+      synchronized (getProcessMonitor())
+      {
+        lock = lockFile();
+        try
+        {
+          next = buffer.getLong(POS_NEXT);
+          last = buffer.getLong(POS_LAST);
+          if (isValid(next, last, buffer.getLong(POS_HIGH_WATER_MARK)))
+          {
+            write(next, last, next);
+            force();
+          }
+        }
+        finally
+        {
+          unlockFile(lock);
+        }
+      }
+    }
+    finally
+    {
+      randomAccessFile.close();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(%s)", getClass().getSimpleName(), getFile().getName());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  protected IdRange refill(Callable<IdRange> refill)
+  {
+    try
+    {
+      return refill.call();
+    }
+    catch (RuntimeException e)
+    {
+      throw e;
+    }
+    catch (Exception e)
+    {
+      throw new DatabaseAccessException(e, "Refilling shared ID region %s failed", getFile());
+    }
+  }
+
+  /**
+   * Moves the next ID up to the high-water mark, because the IDs below the mark
+   * might have been handed out before a crash of the operating system.
+   */
+  protected void skipToHighWaterMark()
+  {
+    FileLock lock;
+    long next;
+    long last;
+    long mark;
+
+    synchronized (getProcessMonitor())
+    {
+      lock = lockFile();
+      try
+      {
+        next = buffer.getLong(POS_NEXT);
+        last = buffer.getLong(POS_LAST);
+        mark = buffer.getLong(POS_HIGH_WATER_MARK);
+        if (isValid(next, last, mark) && (mark > next))
+        {
+          write(mark, last, mark);
+          force();
+        }
+      }
+      finally
+      {
+        unlockFile(lock);
+      }
+    }
+  }
+
+  protected void force()
+  {
+    buffer.force();
+    forceCount++;
+  }
+
+  protected FileLock lockFile()
+  {
+    try
+    {
+      return randomAccessFile.getChannel().lock();
+    }
+    catch (IOException e)
+    {
+      throw new DatabaseAccessException(e, "Locking shared ID region %s failed", getFile());
+    }
+  }
+
+  protected void unlockFile(FileLock lock)
+  {
+    try
+    {
+      lock.release();
+    }
+    catch (IOException e)
+    {
+      throw new DatabaseAccessException(e, "Unlocking shared ID region %s failed", getFile());
+    }
+  }
+
+  protected boolean isValid(long next, long last, long mark)
+  {
+    //@formatter:off
+    return (buffer.getInt(POS_MAGIC) == MAGIC)
+        && (buffer.getInt(POS_VERSION) == FORMAT_VERSION)
+        && (buffer.getLong(POS_CHECKSUM) == checksum(next, last, mark));
+    //@formatter:on
+  }
+
+  protected void write(long next, long last, long mark)
+  {
+    buffer.putInt(POS_MAGIC, MAGIC);
+    buffer.putInt(POS_VERSION, FORMAT_VERSION);
+    buffer.putLong(POS_NEXT, next);
+    buffer.putLong(POS_LAST, last);
+    buffer.putLong(POS_HIGH_WATER_MARK, mark);
+    buffer.putLong(POS_CHECKSUM, checksum(next, last, mark));
+  }
+
+  protected long checksum(long next, long last, long mark)
+  {
+    return MAGIC ^ Long.rotateLeft(next, 17) ^ Long.rotateLeft(last, 47) ^ Long.rotateLeft(mark, 31);
+  }
+
+  protected Object getProcessMonitor()
+  {
+    return this.processMonitor;
+  }
+}
@@ -0,0 +1,430 @@
+// ===========================================================================
+// CONTENT  : CLASS TimeBasedIdentifierGenerator
+// AUTHOR   : Manfred Duchrow
+// VERSION  : 1.0 - 17/10/2026
+// HISTORY  :
+//  17/10/2026  mdu  CREATED
+//
+// Copyright (c) 2026, by MDCS. All rights reserved.
+// ===========================================================================
+package org.pfsw.db.util;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.pfsw.bif.identifier.IdentifierGenerationException;
+import org.pfsw.db.DatabaseAccessException;
+import org.pfsw.db.LoggerProvider;
+import org.pfsw.logging.Logger2;
+
+/**
+ * Instances of this class generate identifiers without any coordination with other
+ * nodes. Each identifier is composed of
+ * <ul>
+ * <li>41 bits milliseconds since the epoch of this generator (see {@link #setEpochMillis(long)})</li>
+ * <li>10 bits node ID</li>
+ * <li>12 bits sequence number within the millisecond</li>
+ * </ul>
+ * So the identifiers of one node are ascending and up to 4096 identifiers per millisecond
+ * can be generated by each node.
+ * <p>
+ * The node ID can be fixed or leased from the ID table by a {@link NodeIdLease}.
+ * A leased node ID gets renewed by a background thread, so the database is never accessed
+ * while identifiers are generated. If the lease cannot be renewed in time or has been taken
+ * over by another node, an {@link IdentifierGenerationException} is thrown.
+ * <p>
+ * If the clock moves backwards, the generator keeps using the last timestamp and continues
+ * with the following ones as soon as the sequence numbers of a millisecond are used up.
+ * The timestamps in use may run ahead of the clock by at most the maximum clock skew
+ * (see {@link #setMaxClockSkewMillis(long)}). Beyond that the generator waits for the clock.
+ * If the clock has moved backwards by more than the maximum clock skew,
+ * an {@link IdentifierGenerationException} is thrown.
+ *
+ * @author Manfred Duchrow
+ * @version 1.0
+ */
+public class TimeBasedIdentifierGenerator extends ObjectIdentifierGenerator implements Closeable
+{
+  // =========================================================================
+  // CONSTANTS
+  // =========================================================================
+  /**
+   * 2020-01-01T00:00:00Z
+   */
+  public static final long DEFAULT_EPOCH_MILLIS = 1577836800000L;
+  public static final long DEFAULT_MAX_CLOCK_SKEW_MILLIS = 1000L;
+  public static final int NODE_ID_BITS = 10;
+  public static final int SEQUENCE_BITS = 12;
+  public static final int MAX_NODE_ID = (1 << NODE_ID_BITS) - 1;
+  public static final int SEQUENCES_PER_MILLI = 1 << SEQUENCE_BITS;
+
+  private static final int TIMESTAMP_BITS = 63 - NODE_ID_BITS - SEQUENCE_BITS;
+  private static final long MAX_TIMESTAMP = (1L << TIMESTAMP_BITS) - 1;
+
+  // =========================================================================
+  // INSTANCE VARIABLES
+  // =========================================================================
+  private final int nodeId;
+  private final NodeIdLease lease;
+  private long epochMillis = DEFAULT_EPOCH_MILLIS;
+  private long maxClockSkewMillis = DEFAULT_MAX_CLOCK_SKEW_MILLIS;
+  private long lastTimestamp;
+  private int nextSequence;
+  private ScheduledExecutorService heartbeatExecutor = null;
+  private volatile boolean closed = false;
+
+  // =========================================================================
+  // CLASS METHODS
+  // =========================================================================
+  /**
+   * Creates a new generator with a node ID that is leased from the default ID table.
+   *
+   * @param ds A valid data source that allows connection to a database (must not be null).
+   * @param categoryName The category the node IDs belong to (must not be null).
+   * @throws DatabaseAccessException if no node ID can be acquired.
+   */
+  public static TimeBasedIdentifierGenerator create(DataSource ds, String categoryName)
+  {
+    return create(NodeIdLease.create(ds, categoryName));
+  }
+
+  /**
+   * Creates a new generator with a node ID from the given lease.
+   * The node ID gets acquired if the lease does not yet hold one.
+   *
+   * @param lease The lease of the node ID (must not be null).
+   * @throws DatabaseAccessException if no node ID can be acquired.
+   */
+  public static TimeBasedIdentifierGenerator create(NodeIdLease lease)
+  {
+    return new TimeBasedIdentifierGenerator(lease);
+  }
+
+  /**
+   * Creates a new generator with a fixed node ID.
+   * The caller is responsible that no other generator uses the same node ID.
+   *
+   * @param nodeId The node ID (0 .. {@link #MAX_NODE_ID}).
+   */
+  public static TimeBasedIdentifierGenerator create(int nodeId)
+  {
+    return new TimeBasedIdentifierGenerator(nodeId);
+  }
+
+  // =========================================================================
+  // CONSTRUCTORS
+  // =========================================================================
+  /**
+   * Initialize the new instance with a fixed node ID.
+   *
+   * @param nodeId The node ID (0 .. {@link #MAX_NODE_ID}).
+   */
+  public TimeBasedIdentifierGenerator(int nodeId)
+  {
+    this(nodeId, null, 0L);
+  }
+
+  /**
+   * Initialize the new instance with a node ID from the given lease.
+   * The node ID gets acquired if the lease does not yet hold one.
+   * The lease gets renewed in the background after a third of the lease duration.
+   *
+   * @param lease The lease of the node ID (must not be null).
+   */
+  public TimeBasedIdentifierGenerator(NodeIdLease lease)
+  {
+    this(lease.acquire(), lease, lease.getPreviousExpiryMillis());
+    startHeartbeat();
+  }
+
+  protected TimeBasedIdentifierGenerator(int nodeId, NodeIdLease lease, long notBeforeMillis)
+  {
+    super();
+    if ((nodeId < 0) || (nodeId > MAX_NODE_ID))
+    {
+      throw new IllegalArgumentException(String.format("The node ID must be in the range 0..%d but is %d", MAX_NODE_ID, nodeId));
+    }
+    this.nodeId = nodeId;
+    this.lease = lease;
+    // Forces the first timestamp to be at or after notBeforeMillis
+    this.lastTimestamp = notBeforeMillis - 1;
+    this.nextSequence = SEQUENCES_PER_MILLI;
+  }
+
+  // =========================================================================
+  // PUBLIC INSTANCE METHODS
+  // =========================================================================
+  @Override
+  public long nextIdentifier()
+  {
+    return reserve(1);
+  }
+
+  /**
+   * Returns a range of new consecutive identifiers which all have the same timestamp.
+   *
+   * @param count The number of identifiers to reserve (1 .. {@link #SEQUENCES_PER_MILLI}).
+   * @throws IllegalArgumentException if count is not in the allowed range.
+   */
+  @Override
+  public IdRange reserveIdentifiers(int count)
+  {
+    checkReserveCount(count);
+    if (count > SEQUENCES_PER_MILLI)
+    {
+      throw new IllegalArgumentException(String.format("At most %d identifiers can be reserved at once but requested are %d", SEQUENCES_PER_MILLI, count));
+    }
+    return IdRange.create(reserve(count), count);
+  }
+
+  /**
+   * Stops renewing the lease and releases the node ID.
+   * Calling this method more than once has no effect.
+   */
+  @Override
+  public void close()
+  {
+    synchronized (this)
+    {
+      if (closed)
+      {
+        return;
+      }
+      closed = true;
+    }
+    if (heartbeatExecutor != null)
+    {
+      heartbeatExecutor.shutdownNow();
+    }
+    if (hasLease())
+    {
+      try
+      {
+        getLease().release(lastTimestamp + 1);
+      }
+      catch (DatabaseAccessException e)
+      {
+        logger().warnf(e, "Releasing %s failed", getLease());
+      }
+    }
+  }
+
+  public boolean isClosed()
+  {
+    return this.closed;
+  }
+
+  public int getNodeId()
+  {
+    return this.nodeId;
+  }
+
+  /**
+   * Returns the lease of the node ID or null if the node ID is fixed.
+   */
+  public NodeIdLease getLease()
+  {
+    return this.lease;
+  }
+
+  public long getEpochMillis()
+  {
+    return this.epochMillis;
+  }
+
+  /**
+   * Sets the time (in milliseconds since 1970) the timestamps of the identifiers are relative to.
+   * It must not be changed after the first identifier has been generated.
+   * The default is {@link #DEFAULT_EPOCH_MILLIS}.
+   */
+  public TimeBasedIdentifierGenerator setEpochMillis(long newValue)
+  {
+    this.epochMillis = newValue;
+    return this;
+  }
+
+  public long getMaxClockSkewMillis()
+  {
+    return this.maxClockSkewMillis;
+  }
+
+  /**
+   * Sets how far the timestamps in use may run ahead of the clock after it moved backwards.
+   * The default is {@link #DEFAULT_MAX_CLOCK_SKEW_MILLIS}.
+   */
+  public TimeBasedIdentifierGenerator setMaxClockSkewMillis(long newValue)
+  {
+    if (newValue >= 0)
+    {
+      this.maxClockSkewMillis = newValue;
+    }
+    return this;
+  }
+
+  /**
+   * Returns the timestamp (in milliseconds since 1970) of the given identifier.
+   */
+  public long timestampOf(long id)
+  {
+    return (id >>> (NODE_ID_BITS + SEQUENCE_BITS)) + getEpochMillis();
+  }
+
+  /**
+   * Returns the node ID of the given identifier.
+   */
+  public int nodeIdOf(long id)
+  {
+    return (int)((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s(%d)", getClass().getSimpleName(), getNodeId());
+  }
+
+  // =========================================================================
+  // PROTECTED INSTANCE METHODS
+  // =========================================================================
+  /**
+   * Reserves the given number of sequence numbers within one millisecond and
+   * returns the first identifier.
+   */
+  protected synchronized long reserve(int count)
+  {
+    long now;
+    long timestamp;
+    int sequence;
+
+    if (closed)
+    {
+      throw new IllegalStateException(String.format("%s has been closed", this));
+    }
+    while (true)
+    {
+      now = currentTimeMillis();
+      if (now + getMaxClockSkewMillis() < lastTimestamp)
+      {
+        throw new IdentifierGenerationException("Clock moved backwards by %d ms on node %d", lastTimestamp - now, getNodeId());
+      }
+      timestamp = Math.max(now, lastTimestamp);
+      sequence = 0;
+      if (timestamp == lastTimestamp)
+      {
+        sequence = nextSequence;
+        if (sequence + count > SEQUENCES_PER_MILLI)
+        {
+          timestamp++;
+          sequence = 0;
+        }
+      }
+      if (timestamp <= now + getMaxClockSkewMillis())
+      {
+        break;
+      }
+      waitForClock();
+    }
+    checkTimestamp(timestamp);
+    lastTimestamp = timestamp;
+    nextSequence = sequence + count;
+    return compose(timestamp, sequence);
+  }
+
+  protected void checkTimestamp(long timestamp)
+  {
+    if (hasLease())
+    {
+      if (getLease().isLost())
+      {
+        throw new IdentifierGenerationException("Node ID %d of category '%s' has been taken over by another node", getNodeId(), getLease().getCategory());
+      }
+      if (timestamp >= getLease().getExpiryMillis())
+      {
+        throw new IdentifierGenerationException("Lease of node ID %d of category '%s' has expired", getNodeId(), getLease().getCategory());
+      }
+    }
+    if ((timestamp < getEpochMillis()) || (timestamp - getEpochMillis() > MAX_TIMESTAMP))
+    {
+      throw new IdentifierGenerationException("Timestamp %d is out of range for epoch %d", timestamp, getEpochMillis());
+    }
+  }
+
+  protected long compose(long timestamp, int sequence)
+  {
+    return ((timestamp - getEpochMillis()) << (NODE_ID_BITS + SEQUENCE_BITS)) | ((long)getNodeId() << SEQUENCE_BITS) | sequence;
+  }
+
+  protected void waitForClock()
+  {
+    try
+    {
+      Thread.sleep(1L);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IdentifierGenerationException(e, "Interrupted while waiting for the clock on node %d", getNodeId());
+    }
+  }
+
+  protected void startHeartbeat()
+  {
+    long period;
+
+    period = Math.max(1L, getLease().getLeaseMillis() / 3);
+    heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable runnable)
+      {
+        Thread thread = new Thread(runnable, "pf-db-node-lease-" + getLease().getCategory());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    heartbeatExecutor.scheduleWithFixedDelay(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        renewLease();
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  protected void renewLease()
+  {
+    try
+    {
+      if (!getLease().renew())
+      {
+        heartbeatExecutor.shutdown();
+      }
+    }
+    catch (RuntimeException e)
+    {
+      // The next heartbeat tries again, the lease is still valid for a while
+      logger().warnf(e, "Renewing %s failed", getLease());
+    }
+  }
+
+  protected boolean hasLease()
+  {
+    return getLease() != null;
+  }
+
+  protected long currentTimeMillis()
+  {
+    return System.currentTimeMillis();
+  }
+
+  protected Logger2 logger()
+  {
+    return LoggerProvider.getLogger();
+  }
+}
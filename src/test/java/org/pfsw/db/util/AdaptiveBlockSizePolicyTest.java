@@ -0,0 +1,49 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AdaptiveBlockSizePolicyTest
+{
+  @Test
+  public void test_nextBlockSize__initial_within_bounds()
+  {
+    assertEquals(10, AdaptiveBlockSizePolicy.create(10, 1000, 5000L).nextBlockSize(3, 0L));
+    assertEquals(1000, AdaptiveBlockSizePolicy.create(10, 1000, 5000L).nextBlockSize(5000, 0L));
+    assertEquals(50, AdaptiveBlockSizePolicy.create(10, 1000, 5000L).nextBlockSize(50, 0L));
+  }
+
+  @Test
+  public void test_nextBlockSize__grows_with_high_rate()
+  {
+    AdaptiveBlockSizePolicy policy = AdaptiveBlockSizePolicy.create(10, 1000, 5000L);
+
+    assertEquals(100, policy.nextBlockSize(100, 0L));
+    // 100 IDs consumed in 1 second -> 500 would be ideal, but growth is limited to factor 2
+    assertEquals(200, policy.nextBlockSize(100, 1000L));
+    assertEquals(400, policy.nextBlockSize(100, 2000L));
+    // 400 IDs in 2 seconds -> 1000 IDs per 5 seconds
+    assertEquals(800, policy.nextBlockSize(100, 4000L));
+    assertEquals(1000, policy.nextBlockSize(100, 5000L));
+  }
+
+  @Test
+  public void test_nextBlockSize__shrinks_with_low_rate()
+  {
+    AdaptiveBlockSizePolicy policy = AdaptiveBlockSizePolicy.create(10, 1000, 5000L);
+
+    assertEquals(100, policy.nextBlockSize(100, 0L));
+    // 100 IDs consumed in 8 seconds -> 62 IDs per 5 seconds
+    assertEquals(62, policy.nextBlockSize(100, 8000L));
+    assertEquals(31, policy.nextBlockSize(100, 68000L));
+    assertEquals(15, policy.nextBlockSize(100, 128000L));
+    assertEquals(10, policy.nextBlockSize(100, 188000L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_create__invalid_bounds()
+  {
+    AdaptiveBlockSizePolicy.create(100, 10, 5000L);
+  }
+}
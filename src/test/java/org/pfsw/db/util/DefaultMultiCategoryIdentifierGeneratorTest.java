@@ -53,6 +53,75 @@ public class DefaultMultiCategoryIdentifierGeneratorTest
     assertNewIdentifier(createGenerator3());
   }
   
+  @Test
+  public void test_nextIdentifier__native_sequences()
+  {
+    assertNextIdentifier(createGeneratorBuilder().useNativeSequences().build());
+  }
+
+  @Test
+  public void test_newIdentifier__native_sequences()
+  {
+    assertNewIdentifier(createGeneratorBuilder().tableSpec(createTableSpec()).useNativeSequences().build());
+  }
+
+  @Test
+  public void test_nextIdentifier__coalesced_refills()
+  {
+    assertNextIdentifier(createGeneratorBuilder().coalesceRefills(0).build());
+  }
+
+  @Test
+  public void test_nextIdentifier__warm_up()
+  {
+    assertNextIdentifier(createGeneratorBuilder().warmUp(3).build());
+  }
+
+  @Test
+  public void test_nextIdentifier__refill_scheduler()
+  {
+    DefaultMultiCategoryIdentifierGenerator generator;
+
+    generator = (DefaultMultiCategoryIdentifierGenerator)createGeneratorBuilder().refillScheduler(IdRefillScheduler.create(1)).build();
+    assertNextIdentifier(generator);
+    // Waits for the pending prefetches, which would otherwise update the database of the next test
+    generator.close();
+  }
+
+  @Test
+  public void test_reserveIdentifiers()
+  {
+    MultiCategoryIdentifierGenerator generator = createGenerator1();
+    IdRange range;
+
+    assertEquals(START_ID_2, generator.nextIdentifier("Beta"));
+    range = generator.reserveIdentifiers("Beta", 50);
+    assertEquals(START_ID_2 + 10, range.getStart());
+    assertEquals(50, range.getCount());
+    assertEquals(START_ID_2 + 1, generator.nextIdentifier("Beta"));
+    assertEquals(START_ID_1, generator.reserveIdentifiers("Alpha", 3).getStart());
+    assertEquals(START_ID_1 + 3, generator.nextIdentifier("Alpha"));
+  }
+
+  @Test
+  public void test_close()
+  {
+    DataSource dataSource = createNewDatabase1();
+    DefaultMultiCategoryIdentifierGenerator generator;
+
+    generator = (DefaultMultiCategoryIdentifierGenerator)createGeneratorBuilder(dataSource).build();
+    assertEquals(START_ID_3, generator.nextIdentifier("Gamma"));
+    generator.close();
+    generator = (DefaultMultiCategoryIdentifierGenerator)createGeneratorBuilder(dataSource).tableAlreadyCreated().build();
+    assertEquals(START_ID_3 + 1, generator.nextIdentifier("Gamma"));
+  }
+
+  @Test(expected = IdentifierGenerationException.class)
+  public void test_reserveIdentifiers__unknown_category()
+  {
+    createGenerator1().reserveIdentifiers("Unknown", 5);
+  }
+
   @Test
   public void test_nextIdentifier__not_existing_table()
   {
@@ -0,0 +1,25 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IdBlockAllocationTest
+{
+  @Test
+  public void test_resolve__auto()
+  {
+    assertEquals(IdBlockAllocation.UPDATE_RETURNING, IdBlockAllocation.AUTO.resolve("PostgreSQL"));
+    assertEquals(IdBlockAllocation.UPDATE_RETURNING, IdBlockAllocation.AUTO.resolve("Firebird 3.0"));
+    assertEquals(IdBlockAllocation.UPDATE_RETURNING, IdBlockAllocation.AUTO.resolve("SQLite"));
+    assertEquals(IdBlockAllocation.UPDATE_THEN_SELECT, IdBlockAllocation.AUTO.resolve("H2"));
+    assertEquals(IdBlockAllocation.UPDATE_THEN_SELECT, IdBlockAllocation.AUTO.resolve(null));
+  }
+
+  @Test
+  public void test_resolve__explicit()
+  {
+    assertEquals(IdBlockAllocation.SELECT_FOR_UPDATE, IdBlockAllocation.SELECT_FOR_UPDATE.resolve("PostgreSQL"));
+    assertEquals(IdBlockAllocation.UPDATE_RETURNING, IdBlockAllocation.UPDATE_RETURNING.resolve("H2"));
+  }
+}
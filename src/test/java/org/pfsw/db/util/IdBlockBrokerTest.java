@@ -0,0 +1,258 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pfsw.bif.identifier.IdentifierGenerationException;
+
+public class IdBlockBrokerTest
+{
+  @Test
+  public void test_reserve__two_clients_share_broker_block()
+  {
+    IdBlockBroker broker = IdBlockBroker.create(createNewDatabase1()).setBlockSize(100).start(0);
+    IdBlockBrokerClient client1 = IdBlockBrokerClient.create(broker.getPort());
+    IdBlockBrokerClient client2 = IdBlockBrokerClient.create(broker.getPort());
+
+    try
+    {
+      ObjectIdentifierDB idGen1 = createIdGenerator(client1).build();
+      ObjectIdentifierDB idGen2 = createIdGenerator(client2).build();
+
+      assertEquals(500, idGen1.nextIdentifier());
+      assertEquals(510, idGen2.nextIdentifier());
+      assertEquals(501, idGen1.nextIdentifier());
+      IdRange range = idGen2.reserveIdentifiers(150);
+      assertEquals(150, range.getCount());
+      assertFalse(range.contains(501));
+    }
+    finally
+    {
+      client1.close();
+      client2.close();
+      broker.close();
+    }
+  }
+
+  @Test
+  public void test_reserve__pipelined_from_many_threads() throws Exception
+  {
+    IdBlockBroker broker = IdBlockBroker.create(createNewDatabase1()).setBlockSize(1000).start(0);
+    final IdBlockBrokerClient client = IdBlockBrokerClient.create(broker.getPort());
+    final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+    try
+    {
+      client.initializeCategory("Beta", 1, 5);
+      for (int i = 0; i < 8; i++)
+      {
+        results.add(executor.submit(new Callable<Integer>()
+        {
+          @Override
+          public Integer call()
+          {
+            int count = 0;
+            for (int j = 0; j < 200; j++)
+            {
+              for (long id : client.reserveRange("Beta", 5).toArray())
+              {
+                assertTrue(ids.add(id));
+                count++;
+              }
+            }
+            return count;
+          }
+        }));
+      }
+      for (Future<Integer> result : results)
+      {
+        assertEquals(1000, result.get().intValue());
+      }
+      assertEquals(8000, ids.size());
+    }
+    finally
+    {
+      executor.shutdown();
+      client.close();
+      broker.close();
+    }
+  }
+
+  @Test
+  public void test_reserve__small_ranges_from_broker_block()
+  {
+    IdBlockBroker broker = IdBlockBroker.create(createNewDatabase1()).setBlockSize(10000).start(0);
+    IdBlockBrokerClient client = IdBlockBrokerClient.create(broker.getPort());
+
+    try
+    {
+      assertTrue(client.initializeCategory("Delta", 1, 10));
+      for (int i = 0; i < 100; i++)
+      {
+        assertEquals(1 + (i * 10), client.reserveRange("Delta", 10).getStart());
+      }
+      // All ranges have been cut out of the first block of the broker
+      assertEquals(10001, ObjectIdentifierDB.create(createDataSource1(), "Delta").nextIdentifier());
+    }
+    finally
+    {
+      client.close();
+      broker.close();
+    }
+  }
+
+  @Test
+  public void test_release__last_range_only()
+  {
+    IdBlockBroker broker = IdBlockBroker.create(createNewDatabase1()).start(0);
+    IdBlockBrokerClient client = IdBlockBrokerClient.create(broker.getPort());
+    IdRange range1;
+    IdRange range2;
+
+    try
+    {
+      assertTrue(client.initializeCategory("Epsilon", 1, 10));
+      range1 = client.reserveRange("Epsilon", 10);
+      range2 = client.reserveRange("Epsilon", 10);
+      assertFalse(client.releaseRange("Epsilon", range1));
+      assertTrue(client.releaseRange("Epsilon", range2));
+      assertEquals(range2.getStart(), client.reserveRange("Epsilon", 10).getStart());
+    }
+    finally
+    {
+      client.close();
+      broker.close();
+    }
+  }
+
+  @Test
+  public void test_release__only_by_owning_connection()
+  {
+    IdBlockBroker broker = IdBlockBroker.create(createNewDatabase1()).start(0);
+    IdBlockBrokerClient client1 = IdBlockBrokerClient.create(broker.getPort());
+    IdBlockBrokerClient client2 = IdBlockBrokerClient.create(broker.getPort());
+    IdRange range;
+
+    try
+    {
+      assertTrue(client1.initializeCategory("Zeta", 1, 10));
+      range = client1.reserveRange("Zeta", 10);
+      assertFalse(client2.releaseRange("Zeta", range));
+      // The unused end of the range may be given back
+      assertTrue(client1.releaseRange("Zeta", IdRange.create(range.getStart() + 4, 6)));
+      assertEquals(range.getStart() + 4, client2.reserveRange("Zeta", 10).getStart());
+    }
+    finally
+    {
+      client1.close();
+      client2.close();
+      broker.close();
+    }
+  }
+
+  @Test
+  public void test_reserve__timed_out_range_is_released() throws InterruptedException
+  {
+    final CountDownLatch released = new CountDownLatch(1);
+    IdBlockBroker broker;
+    IdBlockBrokerClient client;
+
+    broker = new IdBlockBroker(createNewDatabase1(), IdGeneratorTableSpec.create())
+    {
+      private volatile boolean delayed = false;
+
+      @Override
+      protected IdRange reserveRange(String category, int count)
+      {
+        if (!delayed)
+        {
+          delayed = true;
+          sleep(500);
+        }
+        return super.reserveRange(category, count);
+      }
+
+      @Override
+      protected boolean releaseRange(String category, IdRange range)
+      {
+        boolean result = super.releaseRange(category, range);
+
+        released.countDown();
+        return result;
+      }
+    }.start(0);
+    client = IdBlockBrokerClient.create(broker.getPort());
+    try
+    {
+      assertTrue(client.initializeCategory("Eta", 1, 10));
+      try
+      {
+        client.setTimeoutMillis(100).reserveRange("Eta", 10);
+        fail("Expected IdentifierGenerationException");
+      }
+      catch (IdentifierGenerationException e)
+      {
+        // expected
+      }
+      assertTrue(released.await(5, TimeUnit.SECONDS));
+      assertEquals(1, client.setTimeoutMillis(5000).reserveRange("Eta", 10).getStart());
+    }
+    finally
+    {
+      client.close();
+      broker.close();
+    }
+  }
+
+  @Test
+  public void test_reserve__broker_closed()
+  {
+    IdBlockBroker broker = IdBlockBroker.create(createNewDatabase1()).start(0);
+    IdBlockBrokerClient client = IdBlockBrokerClient.create(broker.getPort()).setTimeoutMillis(2000);
+
+    assertTrue(client.initializeCategory("Gamma", 1, 10));
+    assertNull(client.reserveRange("Unknown", 10));
+    assertTrue(client.releaseRange("Gamma", client.reserveRange("Gamma", 10)));
+    broker.close();
+    try
+    {
+      client.reserveRange("Gamma", 10);
+      fail("Expected IdentifierGenerationException");
+    }
+    catch (IdentifierGenerationException e)
+    {
+      // expected
+    }
+    finally
+    {
+      client.close();
+    }
+  }
+
+  // ======================== helper methods =================================
+
+  private ObjectIdentifierDBBuilder createIdGenerator(IdBlockStore store)
+  {
+    //@formatter:off
+    return ObjectIdentifierDBBuilder.create(store)
+        .setCategory("Alpha")
+        .setStartId(500)
+        .setBlockSize(10);
+    //@formatter:on
+  }
+}
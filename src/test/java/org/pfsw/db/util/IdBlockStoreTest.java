@@ -0,0 +1,109 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import java.io.File;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+
+public class IdBlockStoreTest
+{
+  @Test
+  public void test_inMemory()
+  {
+    InMemoryIdBlockStore store = InMemoryIdBlockStore.create();
+    ObjectIdentifierDB idGen = createIdGenerator(store).lockFree().build();
+
+    assertEquals("M-00500", idGen.newIdentifier());
+    for (int i = 501; i < 515; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    assertEquals(520, store.getNextId("Alpha"));
+    idGen.close();
+    assertEquals(515, store.getNextId("Alpha"));
+  }
+
+  @Test
+  public void test_inMemory__row_stripes()
+  {
+    InMemoryIdBlockStore store = InMemoryIdBlockStore.create();
+    ObjectIdentifierDB idGen = createIdGenerator(store).rowStripes(2).build();
+
+    idGen.nextIdentifier();
+    assertEquals(-1, store.getNextId("Alpha"));
+    assertTrue(store.getNextId("Alpha#0") >= 0);
+    assertTrue(store.getNextId("Alpha#1") >= 0);
+  }
+
+  @Test
+  public void test_jdbc()
+  {
+    JdbcIdBlockStore store = JdbcIdBlockStore.create(createNewDatabase1()).setBlockAllocation(IdBlockAllocation.OPTIMISTIC);
+    ObjectIdentifierDB idGen1 = createIdGenerator(store).build();
+    ObjectIdentifierDB idGen2 = createIdGenerator(store).build();
+
+    assertEquals(500, idGen1.nextIdentifier());
+    assertEquals(510, idGen2.nextIdentifier());
+    assertEquals(501, idGen1.nextIdentifier());
+    assertEquals(2, idGen1.getAllocationStatistics().getAllocationCount() + idGen2.getAllocationStatistics().getAllocationCount());
+    idGen2.close();
+    idGen1 = createIdGenerator(store).build();
+    assertEquals(511, idGen1.nextIdentifier());
+  }
+
+  @Test
+  public void test_sequence()
+  {
+    DataSource dataSource = createNewDatabase1();
+    ObjectIdentifierDB idGen = createIdGenerator(SequenceIdBlockStore.create(dataSource)).build();
+
+    assertEquals(500, idGen.nextIdentifier());
+    assertEquals(510, createIdGenerator(SequenceIdBlockStore.create(dataSource)).build().nextIdentifier());
+    try
+    {
+      idGen.reserveIdentifiers(11);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void test_file()
+  {
+    File directory = createNewJournalDirectory();
+    FileIdBlockStore store = FileIdBlockStore.create(directory);
+    ObjectIdentifierDB idGen = createIdGenerator(store).build();
+
+    for (int i = 500; i < 525; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    store.close();
+
+    store = FileIdBlockStore.create(directory);
+    idGen = createIdGenerator(store).build();
+    assertEquals(530, idGen.nextIdentifier());
+    store.close();
+  }
+
+  // ======================== helper methods =================================
+
+  private ObjectIdentifierDBBuilder createIdGenerator(IdBlockStore store)
+  {
+    //@formatter:off
+    return ObjectIdentifierDBBuilder.create(store)
+        .setCategory("Alpha")
+        .setPrefix("M-")
+        .setLength(5)
+        .setStartId(500)
+        .setBlockSize(10);
+    //@formatter:on
+  }
+}
@@ -0,0 +1,125 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+public class IdRangeJournalTest
+{
+  @Test
+  public void test_recover__empty_journal() throws IOException
+  {
+    IdRangeJournal journal = IdRangeJournal.open(createNewJournalDirectory(), "Alpha");
+
+    try
+    {
+      assertNull(journal.recover());
+    }
+    finally
+    {
+      journal.close();
+    }
+  }
+
+  @Test
+  public void test_recover__after_abrupt_termination() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    IdRangeJournal journal = IdRangeJournal.open(directory, "Alpha").setChunkSize(10);
+    IdRange range;
+
+    journal.recordRange(IdRange.create(1000, 100));
+    for (long id = 1000; id < 1015; id++)
+    {
+      journal.advance(id);
+    }
+    journal.close();
+
+    journal = IdRangeJournal.open(directory, "Alpha");
+    try
+    {
+      range = journal.recover();
+      assertEquals(1020, range.getStart());
+      assertEquals(1099, range.getLast());
+      // Recovering twice must not return the same IDs again
+      assertNull(journal.recover());
+    }
+    finally
+    {
+      journal.close();
+    }
+  }
+
+  @Test
+  public void test_recover__consumed() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    IdRangeJournal journal = IdRangeJournal.open(directory, "Alpha");
+
+    journal.recordRange(IdRange.create(1, 10));
+    journal.advance(1);
+    journal.markConsumed();
+    journal.close();
+
+    journal = IdRangeJournal.open(directory, "Alpha");
+    try
+    {
+      assertNull(journal.recover());
+    }
+    finally
+    {
+      journal.close();
+    }
+  }
+
+  @Test
+  public void test_recover__corrupted_file() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    IdRangeJournal journal = IdRangeJournal.open(directory, "Alpha");
+    RandomAccessFile file;
+
+    journal.recordRange(IdRange.create(1, 10));
+    journal.close();
+    file = new RandomAccessFile(journal.getFile(), "rw");
+    file.seek(16);
+    file.writeLong(77);
+    file.close();
+
+    journal = IdRangeJournal.open(directory, "Alpha");
+    try
+    {
+      assertNull(journal.recover());
+    }
+    finally
+    {
+      journal.close();
+    }
+  }
+
+  @Test
+  public void test_open__already_in_use() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    IdRangeJournal journal = IdRangeJournal.open(directory, "Alpha");
+
+    try
+    {
+      IdRangeJournal.open(directory, "Alpha");
+      fail("Expected IOException");
+    }
+    catch (IOException e)
+    {
+      assertTrue(e.getMessage().contains("in use"));
+    }
+    finally
+    {
+      journal.close();
+    }
+  }
+}
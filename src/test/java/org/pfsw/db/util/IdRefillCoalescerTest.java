@@ -0,0 +1,99 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+
+public class IdRefillCoalescerTest
+{
+  private static final int CATEGORY_COUNT = 8;
+
+  @Test
+  public void test_reserve__concurrent_refills_share_transaction() throws Exception
+  {
+    DataSource dataSource = createNewDatabase1();
+    IdRefillCoalescer coalescer = IdRefillCoalescer.create(dataSource).setWindowMillis(200);
+    final List<ObjectIdentifierDB> idGenerators = new ArrayList<ObjectIdentifierDB>();
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(CATEGORY_COUNT);
+    List<Future<Long>> results = new ArrayList<Future<Long>>();
+
+    for (int i = 0; i < CATEGORY_COUNT; i++)
+    {
+      ObjectIdentifierDB idGenerator = createIdGenerator(dataSource, "Cat" + i, coalescer).build();
+      // Creates the table and the row without reserving a block
+      assertTrue(idGenerator.isAllInitialized());
+      idGenerators.add(idGenerator);
+    }
+    try
+    {
+      for (final ObjectIdentifierDB idGenerator : idGenerators)
+      {
+        results.add(executor.submit(new Callable<Long>()
+        {
+          @Override
+          public Long call() throws Exception
+          {
+            startSignal.await();
+            return idGenerator.nextIdentifier();
+          }
+        }));
+      }
+      startSignal.countDown();
+      for (Future<Long> result : results)
+      {
+        assertEquals(100L, result.get().longValue());
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+    assertEquals(CATEGORY_COUNT, coalescer.getRefillCount());
+    assertTrue(coalescer.getBatchCount() < CATEGORY_COUNT);
+    for (ObjectIdentifierDB idGenerator : idGenerators)
+    {
+      assertEquals(1, idGenerator.getAllocationStatistics().getAllocationCount());
+      assertEquals(101L, idGenerator.nextIdentifier());
+    }
+  }
+
+  @Test
+  public void test_reserve__optimistic_allocation()
+  {
+    DataSource dataSource = createNewDatabase1();
+    IdRefillCoalescer coalescer = IdRefillCoalescer.create(dataSource).setWindowMillis(0);
+    ObjectIdentifierDB idGen1 = createIdGenerator(dataSource, "Alpha", coalescer).setBlockAllocation(IdBlockAllocation.OPTIMISTIC).build();
+    ObjectIdentifierDB idGen2 = createIdGenerator(dataSource, "Alpha", null).build();
+
+    assertEquals(100, idGen1.nextIdentifier());
+    assertEquals(110, idGen2.nextIdentifier());
+    assertEquals(120, idGen1.reserveIdentifiers(15).getStart());
+    assertEquals(0, idGen1.getAllocationStatistics().getConflictCount());
+    assertEquals(2, coalescer.getBatchCount());
+  }
+
+  // ======================== helper methods =================================
+
+  private ObjectIdentifierDBBuilder createIdGenerator(DataSource dataSource, String category, IdRefillCoalescer coalescer)
+  {
+    //@formatter:off
+    return ObjectIdentifierDBBuilder.create(dataSource)
+        .setCategory(category)
+        .setStartId(100)
+        .setBlockSize(10)
+        .setRefillCoalescer(coalescer);
+    //@formatter:on
+  }
+}
@@ -0,0 +1,111 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class IdRefillSchedulerTest
+{
+  @Test
+  public void test_schedule__earliest_exhaustion_first() throws InterruptedException
+  {
+    IdRefillScheduler scheduler = new IdRefillScheduler(1)
+    {
+      @Override
+      protected long exhaustionDeadline(ObjectIdentifierDB idGenerator)
+      {
+        return idGenerator.getBlockSize();
+      }
+    };
+    final CountDownLatch gate = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+
+    try
+    {
+      scheduler.schedule(createIdGenerator(1), new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          awaitQuietly(gate);
+        }
+      });
+      for (final int blockSize : new int[] { 300, 100, 200 })
+      {
+        scheduler.schedule(createIdGenerator(blockSize), new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            order.add(blockSize);
+            done.countDown();
+          }
+        });
+      }
+      assertEquals(3, scheduler.getQueuedCount());
+      gate.countDown();
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertEquals("[100, 200, 300]", order.toString());
+      assertEquals(4, scheduler.getScheduledCount());
+    }
+    finally
+    {
+      scheduler.close();
+    }
+  }
+
+  @Test
+  public void test_nextIdentifier__prefetched_by_scheduler()
+  {
+    IdRefillScheduler scheduler = IdRefillScheduler.create(1);
+    //@formatter:off
+    ObjectIdentifierDB idGen = ObjectIdentifierDBBuilder.create(createNewDatabase1())
+        .setCategory("Alpha")
+        .setStartId(1)
+        .setBlockSize(10)
+        .lockFree()
+        .setRefillScheduler(scheduler)
+        .build();
+    //@formatter:on
+
+    try
+    {
+      for (int i = 1; i <= 100; i++)
+      {
+        assertEquals(i, idGen.nextIdentifier());
+      }
+      assertTrue(scheduler.getScheduledCount() > 0);
+    }
+    finally
+    {
+      scheduler.close();
+    }
+  }
+
+  // ======================== helper methods =================================
+
+  private ObjectIdentifierDB createIdGenerator(int blockSize)
+  {
+    return ObjectIdentifierDB.create(createDataSource1(), "Alpha").setBlockSize(blockSize);
+  }
+
+  private void awaitQuietly(CountDownLatch latch)
+  {
+    try
+    {
+      latch.await(5, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
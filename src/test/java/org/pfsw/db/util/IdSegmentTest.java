@@ -0,0 +1,46 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IdSegmentTest
+{
+  @Test
+  public void test_reserveExactly()
+  {
+    IdSegment segment = IdSegment.create(IdRange.create(100, 10));
+    IdRange range;
+
+    assertEquals(100, segment.next());
+    range = segment.reserveExactly(8);
+    assertEquals(101, range.getStart());
+    assertEquals(8, range.getCount());
+    assertNull(segment.reserveExactly(2));
+    assertEquals(109, segment.next());
+    assertNull(segment.reserveExactly(1));
+  }
+
+  @Test
+  public void test_reserveExactly__huge_count()
+  {
+    IdSegment segment = IdSegment.create(IdRange.create(100, 10));
+
+    segment.next();
+    assertNull(segment.reserveExactly(Integer.MAX_VALUE));
+    assertEquals(9, segment.getRemainingCount());
+  }
+
+  @Test
+  public void test_release()
+  {
+    IdSegment segment = IdSegment.create(IdRange.create(100, 10));
+    IdRange range1 = segment.reserveExactly(3);
+    IdRange range2 = segment.reserveExactly(3);
+
+    assertFalse(segment.release(range1));
+    assertFalse(segment.release(IdRange.create(200, 3)));
+    assertTrue(segment.release(range2));
+    assertEquals(103, segment.next());
+  }
+}
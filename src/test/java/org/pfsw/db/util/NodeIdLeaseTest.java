@@ -0,0 +1,72 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.pfsw.db.DatabaseAccessException;
+
+public class NodeIdLeaseTest
+{
+  @Test
+  public void test_acquire__lowest_free_node_ids()
+  {
+    DataSource ds = createNewDatabase1();
+    NodeIdLease lease1 = NodeIdLease.create(ds, "Alpha");
+    NodeIdLease lease2 = NodeIdLease.create(ds, "Alpha");
+    NodeIdLease lease3 = NodeIdLease.create(ds, "Beta");
+
+    assertEquals(0, lease1.acquire());
+    assertEquals(0, lease1.acquire());
+    assertEquals(1, lease2.acquire());
+    assertEquals(0, lease3.acquire());
+    assertTrue(lease1.isHeld());
+    assertTrue(lease1.getExpiryMillis() > System.currentTimeMillis());
+    assertEquals(0L, lease1.getPreviousExpiryMillis());
+  }
+
+  @Test
+  public void test_acquire__released_node_id()
+  {
+    DataSource ds = createNewDatabase1();
+    NodeIdLease lease1 = NodeIdLease.create(ds, "Alpha");
+    NodeIdLease lease2 = NodeIdLease.create(ds, "Alpha").setMaxClockSkewMillis(0);
+    long usedUntil = System.currentTimeMillis() - 10;
+
+    assertEquals(0, lease1.acquire());
+    lease1.release(usedUntil);
+    assertFalse(lease1.isHeld());
+    assertEquals(0, lease2.acquire());
+    assertEquals(usedUntil, lease2.getPreviousExpiryMillis());
+  }
+
+  @Test
+  public void test_renew__taken_over() throws InterruptedException
+  {
+    DataSource ds = createNewDatabase1();
+    NodeIdLease lease1 = NodeIdLease.create(ds, "Alpha").setLeaseMillis(1);
+    NodeIdLease lease2 = NodeIdLease.create(ds, "Alpha").setMaxClockSkewMillis(0);
+    long expiry;
+
+    assertEquals(0, lease1.acquire());
+    expiry = lease1.getExpiryMillis();
+    Thread.sleep(10);
+    assertEquals(0, lease2.acquire());
+    assertEquals(expiry, lease2.getPreviousExpiryMillis());
+    assertTrue(lease2.renew());
+    assertFalse(lease1.renew());
+    assertTrue(lease1.isLost());
+    assertFalse(lease1.isHeld());
+  }
+
+  @Test(expected = DatabaseAccessException.class)
+  public void test_acquire__no_free_node_id()
+  {
+    DataSource ds = createNewDatabase1();
+
+    NodeIdLease.create(ds, "Alpha").setMaxNodeCount(1).acquire();
+    NodeIdLease.create(ds, "Alpha").setMaxNodeCount(1).acquire();
+  }
+}
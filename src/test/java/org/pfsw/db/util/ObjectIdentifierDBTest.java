@@ -3,9 +3,22 @@ package org.pfsw.db.util;
 import static org.junit.Assert.*;
 import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
@@ -16,6 +29,18 @@ import org.pfsw.text.StringUtil;
 
 public class ObjectIdentifierDBTest
 {
+  /**
+   * Runs the prefetch in the calling thread, so its result can be checked without waiting.
+   */
+  private static final Executor SYNCHRONOUS_EXECUTOR = new Executor()
+  {
+    @Override
+    public void execute(Runnable command)
+    {
+      command.run();
+    }
+  };
+
   @Test
   public void test_toString()
   {
@@ -117,6 +142,758 @@ public class ObjectIdentifierDBTest
     assertEquals("101", idGen.newIdentifier());
   }
 
+  @Test
+  public void test_nextIdentifier__prefetch()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+    ObjectIdentifierDB otherIdGen;
+
+    idGen.setPrefetchThreshold(3).setPrefetchExecutor(SYNCHRONOUS_EXECUTOR);
+    assertEquals("0001000", idGen.newIdentifier());
+    assertEquals("0001001", idGen.newIdentifier());
+    assertEquals("0001002", idGen.newIdentifier());
+    // Both blocks 1000-1004 and 1005-1009 must be reserved already
+    otherIdGen = createIdGenerator2(true);
+    assertEquals("0001010", otherIdGen.newIdentifier());
+
+    for (int i = 1003; i < 1010; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    assertEquals(1015, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__double_buffered()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setDoubleBuffered(true).setPrefetchExecutor(SYNCHRONOUS_EXECUTOR);
+    assertNull(idGen.getCurrentSegment());
+    assertEquals("0001000", idGen.newIdentifier());
+    assertEquals(0.8, idGen.getCurrentSegment().getFillLevel(), 0.001);
+    assertEquals(1.0, idGen.getStandbySegment().getFillLevel(), 0.001);
+    assertEquals(1005, idGen.getStandbySegment().getRange().getStart());
+    assertEquals("0001010", createIdGenerator2(true).newIdentifier());
+
+    for (int i = 1001; i < 1010; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    assertEquals(1005, idGen.getCurrentSegment().getRange().getStart());
+    assertEquals(0.0, idGen.getCurrentSegment().getFillLevel(), 0.001);
+    assertEquals(1015, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__lock_free_parallel()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setLockFree(true);
+    assertParallelIdsAreUnique(idGen, 1000);
+  }
+
+  @Test
+  public void test_nextIdentifier__double_buffered_parallel()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setDoubleBuffered(true);
+    assertParallelIdsAreUnique(idGen, 1000);
+    // Waits for the pending standby loading, which would otherwise access the database of the next test
+    idGen.close();
+  }
+
+  @Test
+  public void test_nextIdentifier__striped_parallel()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setBlockSize(40).setStripeCount(4);
+    assertParallelIdsAreUnique(idGen, 1000);
+    assertEquals(0, idGen.getStrandedIdCount());
+  }
+
+  @Test
+  public void test_reserveIdentifiers__striped_prefetch_depends_on_current_segment()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+    ObjectIdentifierDB otherIdGen;
+    IdRange range;
+
+    idGen.setBlockSize(40).setStripeCount(4).setPrefetchThreshold(5).setPrefetchExecutor(SYNCHRONOUS_EXECUTOR);
+    assertEquals(1000, idGen.nextIdentifier());
+    range = idGen.reserveIdentifiers(7);
+    assertEquals(1001, range.getStart());
+    assertEquals(1007, range.getLast());
+    // Only 2 IDs are left in the stripe, but 30 in the current segment -> no prefetch yet
+    otherIdGen = createIdGenerator2(true);
+    assertEquals(1040, otherIdGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_getStrandedIdCount()
+  {
+    final ObjectIdentifierDB idGen = createIdGenerator2();
+    Thread thread;
+
+    idGen.setBlockSize(40).setStripeCount(4);
+    assertEquals(1000, idGen.nextIdentifier());
+    assertEquals(1001, idGen.nextIdentifier());
+    assertEquals(8, idGen.getStrandedIdCount());
+
+    thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        assertEquals(1010, idGen.nextIdentifier());
+      }
+    });
+    thread.start();
+    join(thread);
+    assertEquals(17, idGen.getStrandedIdCount());
+    assertEquals(1002, idGen.nextIdentifier());
+    assertEquals(16, idGen.getStrandedIdCount());
+  }
+
+  @Test
+  public void test_nextIdentifier__adaptive_block_size()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setAdaptiveBlockSizePolicy(AdaptiveBlockSizePolicy.create(20, 100, 60000L).setWriteBack(true));
+    assertEquals(1000, idGen.nextIdentifier());
+    assertEquals(1019, idGen.getLastPrefetchedId());
+    assertEquals(20, readBlockSizeColumn(idGen));
+    for (int i = 1001; i <= 1020; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    // Consumed within much less than the target window -> doubled
+    assertEquals(40, idGen.getAdaptiveBlockSizePolicy().getLastBlockSize());
+    assertEquals(1059, idGen.getLastPrefetchedId());
+    assertEquals(40, readBlockSizeColumn(idGen));
+  }
+
+  @Test
+  public void test_reserveIdentifiers__default_mode()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1(10);
+    IdRange range;
+
+    assertEquals("A:0000000500", idGen.newIdentifier());
+    range = idGen.reserveIdentifiers(4);
+    assertEquals(501, range.getStart());
+    assertEquals(504, range.getLast());
+    // Not enough IDs left in the current block: gets a block of its own
+    range = idGen.reserveIdentifiers(25);
+    assertEquals(510, range.getStart());
+    assertEquals(534, range.getLast());
+    assertEquals("A:0000000505", idGen.newIdentifier());
+    for (int i = 506; i < 510; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    assertEquals(535, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_reserveIdentifiers__lock_free()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1(10);
+    IdRange range;
+
+    idGen.setLockFree(true);
+    assertEquals(500, idGen.nextIdentifier());
+    range = idGen.reserveIdentifiers(9);
+    assertEquals(501, range.getStart());
+    assertEquals(509, range.getLast());
+    range = idGen.reserveIdentifiers(1000);
+    assertEquals(510, range.getStart());
+    assertEquals(1000, range.toArray().length);
+    assertEquals(1510, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_reserveIdentifiers__small_ranges_default_mode()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1(10);
+
+    assertSmallRangesFromRegularBlocks(idGen, 50);
+    assertEquals(1000, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_reserveIdentifiers__small_ranges_double_buffered()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1(10);
+
+    idGen.setDoubleBuffered(true).setPrefetchExecutor(SYNCHRONOUS_EXECUTOR);
+    // The last block is already loaded into the standby segment
+    assertSmallRangesFromRegularBlocks(idGen, 51);
+    assertNotNull(idGen.getCurrentSegment());
+    assertEquals(1000, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_reserveIdentifiers__small_ranges_lock_free()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1(10);
+
+    idGen.setLockFree(true);
+    assertSmallRangesFromRegularBlocks(idGen, 50);
+    assertNotNull(idGen.getCurrentSegment());
+    assertEquals(1000, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_reserveIdentifiers__skips_rest_of_block()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1(10);
+    IdRange range;
+
+    assertEquals(500, idGen.nextIdentifier());
+    range = idGen.reserveIdentifiers(7);
+    assertEquals(501, range.getStart());
+    // Only 2 IDs left in the current block: they are skipped
+    range = idGen.reserveIdentifiers(7);
+    assertEquals(510, range.getStart());
+    assertEquals(516, range.getLast());
+    assertEquals(517, idGen.nextIdentifier());
+    assertEquals(2, idGen.getAllocationStatistics().getAllocationCount());
+  }
+
+  @Test
+  public void test_nextIdentifier__update_then_select()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setBlockAllocation(IdBlockAllocation.UPDATE_THEN_SELECT);
+    assertEquals("0001000", idGen.newIdentifier());
+    assertEquals(1004, idGen.getLastPrefetchedId());
+    assertEquals("0001005", createIdGenerator2(true).newIdentifier());
+    for (int i = 1001; i < 1005; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    assertEquals(1010, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__auto_allocation_parallel()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setBlockAllocation(IdBlockAllocation.AUTO).setLockFree(true);
+    assertParallelIdsAreUnique(idGen, 1000);
+  }
+
+  @Test
+  public void test_reserveIdentifiers__update_then_select()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1(10);
+    IdRange range;
+
+    idGen.setBlockAllocation(IdBlockAllocation.UPDATE_THEN_SELECT);
+    assertEquals(500, idGen.nextIdentifier());
+    range = idGen.reserveIdentifiers(25);
+    assertEquals(510, range.getStart());
+    assertEquals(534, range.getLast());
+    assertEquals(501, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__optimistic()
+  {
+    final ObjectIdentifierDB other = createIdGenerator2(true);
+    ObjectIdentifierDB idGen;
+
+    createIdGenerator2().setBlockAllocation(IdBlockAllocation.OPTIMISTIC).nextIdentifier();
+    idGen = new ObjectIdentifierDB(createDataSource1(), "Beta")
+    {
+      private boolean interfered = false;
+
+      @Override
+      protected boolean updateNextIdIfUnchanged(Connection conn, long expectedId, int newBlockSize, boolean withBlockSize) throws SQLException
+      {
+        if (!interfered)
+        {
+          interfered = true;
+          assertEquals(1005, other.nextIdentifier());
+        }
+        return super.updateNextIdIfUnchanged(conn, expectedId, newBlockSize, withBlockSize);
+      }
+    };
+    idGen.setBlockSize(5).setBlockAllocation(IdBlockAllocation.OPTIMISTIC);
+    assertEquals(1010, idGen.nextIdentifier());
+    assertEquals(1, idGen.getAllocationStatistics().getAllocationCount());
+    assertEquals(1, idGen.getAllocationStatistics().getConflictCount());
+    assertEquals(1, idGen.getAllocationStatistics().getRetryCount());
+    assertEquals(0, idGen.getAllocationStatistics().getFailureCount());
+    assertEquals(1006, other.nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__deprecated_insert_category_row_override()
+  {
+    ObjectIdentifierDB idGen = new ObjectIdentifierDB(createNewDatabase1(), "Beta")
+    {
+      @SuppressWarnings("deprecation")
+      @Override
+      protected String sqlInsertCategoryRow(String cat)
+      {
+        return "INSERT INTO " + getTableName() + " VALUES ( '" + cat + "', 7000, 10 )";
+      }
+    };
+
+    assertEquals(7000, idGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__optimistic_retries_exceeded()
+  {
+    ObjectIdentifierDB idGen = new ObjectIdentifierDB(createNewDatabase1(), "Beta")
+    {
+      @Override
+      protected boolean updateNextIdIfUnchanged(Connection conn, long expectedId, int newBlockSize, boolean withBlockSize)
+      {
+        return false;
+      }
+    };
+
+    idGen.setOptimisticMaxRetries(2).setOptimisticBackoffMillis(1).setBlockAllocation(IdBlockAllocation.OPTIMISTIC);
+    try
+    {
+      idGen.nextIdentifier();
+      fail("Expected DatabaseAccessException");
+    }
+    catch (DatabaseAccessException e)
+    {
+      assertEquals(3, idGen.getAllocationStatistics().getConflictCount());
+      assertEquals(2, idGen.getAllocationStatistics().getRetryCount());
+      assertEquals(1, idGen.getAllocationStatistics().getFailureCount());
+      assertEquals(0, idGen.getAllocationStatistics().getAllocationCount());
+    }
+  }
+
+  @Test
+  public void test_nextIdentifier__optimistic_parallel_with_separate_generators()
+  {
+    final Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+    final DataSource dataSource = createDataSource1();
+    Thread[] threads = new Thread[4];
+
+    assertEquals(1000, createIdGenerator2().nextIdentifier());
+    for (int i = 0; i < threads.length; i++)
+    {
+      threads[i] = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          ObjectIdentifierDB idGen;
+
+          idGen = ObjectIdentifierDBBuilder.create(dataSource).setCategory("Beta").setBlockSize(5).optimisticAllocation(50, 2).build();
+          for (int j = 0; j < 50; j++)
+          {
+            ids.add(idGen.nextIdentifier());
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+    {
+      join(thread);
+    }
+    assertEquals(200, ids.size());
+  }
+
+  @Test
+  public void test_close__returns_unused_ids()
+  {
+    ObjectIdentifierDB idGen1 = createIdGenerator1(10);
+    ObjectIdentifierDB idGen2;
+
+    assertEquals(500, idGen1.nextIdentifier());
+    assertEquals(501, idGen1.nextIdentifier());
+    idGen1.close();
+    assertTrue(idGen1.isClosed());
+    idGen2 = ObjectIdentifierDBBuilder.create(createDataSource1()).setCategory("Alpha").setPrefix("A:").setLength(10).build();
+    assertEquals("A:0000000502", idGen2.newIdentifier());
+  }
+
+  @Test
+  public void test_close__later_block_reserved()
+  {
+    ObjectIdentifierDB idGen1 = createIdGenerator2();
+    ObjectIdentifierDB idGen2 = createIdGenerator2(true);
+
+    assertEquals(1000, idGen1.nextIdentifier());
+    assertEquals(1005, idGen2.nextIdentifier());
+    idGen1.close();
+    assertEquals(1010, createIdGenerator2(true).nextIdentifier());
+    idGen2.close();
+    assertEquals(1015, createIdGenerator2(true).nextIdentifier());
+  }
+
+  @Test
+  public void test_close__double_buffered()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setDoubleBuffered(true).setPrefetchExecutor(SYNCHRONOUS_EXECUTOR);
+    assertEquals(1000, idGen.nextIdentifier());
+    assertNotNull(idGen.getStandbySegment());
+    idGen.close();
+    assertEquals(1001, createIdGenerator2(true).nextIdentifier());
+  }
+
+  @Test
+  public void test_close__striped()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    idGen.setBlockSize(40).setStripeCount(4);
+    assertEquals(1000, idGen.nextIdentifier());
+    idGen.close();
+    assertEquals(1001, createIdGenerator2(true).nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__recover_from_range_journal() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    ObjectIdentifierDB idGen;
+
+    idGen = createIdGenerator1Builder(100).rangeJournal(directory, 10).build();
+    for (int i = 500; i < 515; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    // Simulates an abrupt termination
+    idGen.getRangeJournal().close();
+
+    idGen = ObjectIdentifierDBBuilder.create(createDataSource1()).setCategory("Alpha").setBlockSize(100).lockFree().rangeJournal(directory, 10).build();
+    for (int i = 520; i < 600; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    assertEquals(600, idGen.nextIdentifier());
+    idGen.close();
+
+    idGen = ObjectIdentifierDBBuilder.create(createDataSource1()).setCategory("Alpha").setBlockSize(100).rangeJournal(directory, 10).build();
+    assertEquals(601, idGen.nextIdentifier());
+    idGen.close();
+  }
+
+  @Test
+  public void test_nextIdentifier__shared_region()
+  {
+    File directory = createNewJournalDirectory();
+    ObjectIdentifierDB idGen1;
+    ObjectIdentifierDB idGen2;
+    Set<Long> ids = new HashSet<Long>();
+
+    idGen1 = createIdGenerator1Builder(100).sharedRegion(directory, 10).build();
+    idGen2 = ObjectIdentifierDBBuilder.create(createDataSource1()).setCategory("Alpha").setBlockSize(100).sharedRegion(directory, 10).build();
+    for (int i = 0; i < 50; i++)
+    {
+      ids.add(idGen1.nextIdentifier());
+      ids.add(idGen2.nextIdentifier());
+    }
+    assertEquals(100, ids.size());
+    for (long id = 500; id < 600; id++)
+    {
+      assertTrue(ids.contains(id));
+    }
+    // Only one block of 100 has been reserved in the database for both generators
+    assertEquals(1, idGen1.getAllocationStatistics().getAllocationCount() + idGen2.getAllocationStatistics().getAllocationCount());
+    idGen1.close();
+    idGen2.close();
+  }
+
+  @Test
+  public void test_nextIdentifier__shared_region_default_chunk_size()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1Builder(100).sharedRegion(createNewJournalDirectory()).build();
+
+    assertEquals(0, idGen.getSharedChunkSize());
+    for (int i = 500; i < 510; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    // The first chunk is a tenth of the block
+    assertEquals(509, idGen.getLastPrefetchedId());
+    assertEquals(510, idGen.nextIdentifier());
+    // Consumed within much less than a second -> doubled
+    assertEquals(529, idGen.getLastPrefetchedId());
+    idGen.close();
+  }
+
+  @Test
+  public void test_nextIdentifier__stride()
+  {
+    ObjectIdentifierDB idGen0;
+    ObjectIdentifierDB idGen1;
+    Set<Long> ids = new HashSet<Long>();
+    long id;
+
+    idGen0 = createIdGenerator1Builder(10).stride(2, 0).build();
+    idGen1 = ObjectIdentifierDBBuilder.create(createDataSource1()).setCategory("Alpha").setStartId(500).setBlockSize(10).lockFree().stride(2, 1).build();
+    for (int i = 0; i < 25; i++)
+    {
+      id = idGen0.nextIdentifier();
+      assertEquals(0, id % 2);
+      ids.add(id);
+      id = idGen1.nextIdentifier();
+      assertEquals(1, id % 2);
+      ids.add(id);
+    }
+    for (long n = 500; n < 550; n++)
+    {
+      assertTrue(ids.contains(n));
+    }
+    assertEquals("Alpha@1", idGen1.getCategoryRowName());
+    assertEquals(2, countRows(idGen0, "Alpha@%"));
+    assertEquals(0, countRows(idGen0, "Alpha"));
+  }
+
+  @Test
+  public void test_reserveIdentifiers__stride()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1Builder(10).stride(4, 3).build();
+    IdRange range;
+
+    assertEquals(503, idGen.nextIdentifier());
+    range = idGen.reserveIdentifiers(5);
+    assertEquals(507, range.getStart());
+    assertEquals(4, range.getStep());
+    assertEquals(523, range.getLast());
+    assertTrue(range.contains(511));
+    assertFalse(range.contains(512));
+    assertEquals(511, range.toArray()[1]);
+    assertEquals(527, idGen.nextIdentifier());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_setStride__invalid_node_index()
+  {
+    createIdGenerator1Builder(10).stride(2, 2);
+  }
+
+  @Test
+  public void test_nextIdentifier__category_as_bind_parameter()
+  {
+    ObjectIdentifierDB idGen1 = createIdGenerator1Builder(5).setCategory("O'Brien").build();
+    ObjectIdentifierDB idGen2 = ObjectIdentifierDBBuilder.create(createDataSource1()).setCategory("Beta").setStartId(1).build();
+
+    assertEquals(500, idGen1.nextIdentifier());
+    assertEquals(1, idGen2.nextIdentifier());
+    assertEquals(idGen1.sqlSelectNextId(), idGen2.sqlSelectNextId());
+    assertEquals(idGen1.sqlUpdateNextId(), idGen2.sqlUpdateNextId());
+    assertEquals(idGen1.sqlSelectCategory(), idGen2.sqlSelectCategory());
+  }
+
+  @Test
+  public void test_nextIdentifier__persistent_connection() throws SQLException
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1Builder(5).persistentConnection().build();
+    Connection conn;
+
+    for (int i = 0; i < 50; i++)
+    {
+      assertEquals(500 + i, idGen.nextIdentifier());
+    }
+    assertEquals(10, idGen.getAllocationStatistics().getAllocationCount());
+    assertEquals(1, idGen.getDedicatedConnection().getConnectCount());
+    // Simulate a broken connection
+    conn = idGen.getDedicatedConnection().acquire();
+    conn.close();
+    idGen.getDedicatedConnection().release();
+    for (int i = 50; i < 60; i++)
+    {
+      assertEquals(500 + i, idGen.nextIdentifier());
+    }
+    assertEquals(2, idGen.getDedicatedConnection().getConnectCount());
+    idGen.close();
+    assertEquals(560, ObjectIdentifierDB.create(createDataSource1(), "Alpha").nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__data_source_locked_by_other_code() throws Exception
+  {
+    final DataSource dataSource = createNewDatabase1();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    Future<Long> result1;
+    Future<Long> result2;
+
+    try
+    {
+      synchronized (dataSource)
+      {
+        result1 = executor.submit(new Callable<Long>()
+        {
+          @Override
+          public Long call()
+          {
+            return ObjectIdentifierDB.create(dataSource, "Alpha").nextIdentifier();
+          }
+        });
+        result2 = executor.submit(new Callable<Long>()
+        {
+          @Override
+          public Long call()
+          {
+            return ObjectIdentifierDB.create(dataSource, "Beta").nextIdentifier();
+          }
+        });
+        assertEquals(1L, result1.get(10, TimeUnit.SECONDS).longValue());
+        assertEquals(1L, result2.get(10, TimeUnit.SECONDS).longValue());
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void test_nextIdentifier__primary_key() throws SQLException
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1Builder(10).build();
+    Connection conn;
+
+    assertEquals(500, idGen.nextIdentifier());
+    conn = idGen.getDataSource().getConnection();
+    try
+    {
+      assertTrue(idGen.hasPrimaryKey(conn));
+      conn.createStatement().execute("INSERT INTO OIDADMIN VALUES ('Alpha', 1, 1)");
+      fail("Expected SQLException");
+    }
+    catch (SQLException e)
+    {
+      assertTrue(idGen.isDuplicateKey(e));
+    }
+    finally
+    {
+      conn.close();
+    }
+  }
+
+  @Test
+  public void test_nextIdentifier__primary_key_migration() throws SQLException
+  {
+    DataSource dataSource = createNewDatabase1();
+    ObjectIdentifierDB idGen1;
+    ObjectIdentifierDB idGen2;
+    Connection conn;
+
+    executeSql(dataSource, "CREATE TABLE OIDADMIN (CATEGORY VARCHAR(50), NEXTID BIGINT, BLOCKSIZE INTEGER)");
+    // The empty table must be detected as existing
+    idGen1 = ObjectIdentifierDBBuilder.create(dataSource).setCategory("Alpha").setStartId(700).build();
+    assertEquals(700, idGen1.nextIdentifier());
+    idGen2 = ObjectIdentifierDBBuilder.create(dataSource).setCategory("Beta").migratePrimaryKey().build();
+    assertEquals(1, idGen2.nextIdentifier());
+    assertEquals(701, idGen1.nextIdentifier());
+    conn = dataSource.getConnection();
+    try
+    {
+      assertTrue(idGen2.hasPrimaryKey(conn));
+    }
+    finally
+    {
+      conn.close();
+    }
+  }
+
+  @Test(expected = DatabaseAccessException.class)
+  public void test_nextIdentifier__primary_key_migration_with_duplicates()
+  {
+    DataSource dataSource = createNewDatabase1();
+
+    executeSql(dataSource, "CREATE TABLE OIDADMIN (CATEGORY VARCHAR(50), NEXTID BIGINT, BLOCKSIZE INTEGER)");
+    executeSql(dataSource, "INSERT INTO OIDADMIN VALUES ('Alpha', 10, 1)");
+    executeSql(dataSource, "INSERT INTO OIDADMIN VALUES ('Alpha', 20, 1)");
+    ObjectIdentifierDBBuilder.create(dataSource).setCategory("Alpha").migratePrimaryKey().build().nextIdentifier();
+  }
+
+  @Test
+  public void test_warmUp()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1Builder(10).warmUp().build();
+    ObjectIdentifierDB lockFreeIdGen;
+
+    assertEquals(1, idGen.getAllocationStatistics().getAllocationCount());
+    idGen.warmUp();
+    for (int i = 0; i < 10; i++)
+    {
+      assertEquals(500 + i, idGen.nextIdentifier());
+    }
+    assertEquals(1, idGen.getAllocationStatistics().getAllocationCount());
+
+    lockFreeIdGen = ObjectIdentifierDBBuilder.create(createDataSource1()).setCategory("Alpha").setBlockSize(10).lockFree().warmUp().build();
+    assertEquals(510, lockFreeIdGen.getCurrentSegment().getRange().getStart());
+    assertEquals(510, lockFreeIdGen.nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__row_stripes()
+  {
+    ObjectIdentifierDB idGen1;
+    ObjectIdentifierDB idGen2;
+    Set<Long> ids = new HashSet<Long>();
+
+    idGen1 = createIdGenerator1Builder(10).rowStripes(4).build();
+    idGen2 = ObjectIdentifierDBBuilder.create(createDataSource1()).setCategory("Alpha").setBlockSize(10).lockFree().rowStripes(4).build();
+    for (int i = 0; i < 100; i++)
+    {
+      assertTrue(ids.add(idGen1.nextIdentifier()));
+      assertTrue(ids.add(idGen2.nextIdentifier()));
+    }
+    for (Long id : ids)
+    {
+      assertTrue(id >= 500);
+    }
+    assertEquals(4, countRows(idGen1, "Alpha#%"));
+    assertEquals(0, countRows(idGen1, "Alpha"));
+    assertEquals(20, idGen1.getAllocationStatistics().getAllocationCount() + idGen2.getAllocationStatistics().getAllocationCount());
+  }
+
+  @Test
+  public void test_reserveIdentifiers__row_stripes()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator1Builder(10).rowStripes(4).build();
+    IdRange range;
+
+    idGen.nextIdentifier();
+    range = idGen.reserveIdentifiers(10);
+    assertEquals(10, range.getCount());
+    assertEquals(0, range.getStart() % 10);
+    try
+    {
+      idGen.reserveIdentifiers(11);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e)
+    {
+      assertTrue(e.getMessage().contains("row stripes"));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void test_nextIdentifier__after_close()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator2();
+
+    assertEquals(1000, idGen.nextIdentifier());
+    idGen.close();
+    idGen.nextIdentifier();
+  }
+
   @Test(expected = DatabaseAccessException.class)
   public void test_nextIdentifier__missing_table()
   {
@@ -127,6 +904,137 @@ public class ObjectIdentifierDBTest
 
   // ======================== helper methods =================================
 
+  private void assertSmallRangesFromRegularBlocks(ObjectIdentifierDB idGen, long expectedAllocationCount)
+  {
+    IdRange range;
+
+    for (int i = 0; i < 100; i++)
+    {
+      range = idGen.reserveIdentifiers(5);
+      assertEquals(500 + (i * 5), range.getStart());
+      assertEquals(5, range.getCount());
+    }
+    assertEquals(expectedAllocationCount, idGen.getAllocationStatistics().getAllocationCount());
+  }
+
+  private void assertParallelIdsAreUnique(final ObjectIdentifierDB idGen, final long startId)
+  {
+    final int idsPerThread = 100;
+    final Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+    Thread[] threads = new Thread[8];
+
+    for (int i = 0; i < threads.length; i++)
+    {
+      threads[i] = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (int n = 0; n < idsPerThread; n++)
+          {
+            ids.add(idGen.nextIdentifier());
+          }
+        }
+      }, "thread-c" + i);
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+    {
+      join(thread);
+    }
+    assertEquals(threads.length * idsPerThread, ids.size());
+    for (long id = startId; id < startId + ids.size(); id++)
+    {
+      assertTrue(ids.contains(id));
+    }
+  }
+
+  private void executeSql(DataSource dataSource, String sql)
+  {
+    Connection conn = null;
+
+    try
+    {
+      conn = dataSource.getConnection();
+      conn.createStatement().execute(sql);
+      conn.commit();
+    }
+    catch (SQLException e)
+    {
+      throw new RuntimeException(e);
+    }
+    finally
+    {
+      if (conn != null)
+      {
+        try
+        {
+          conn.close();
+        }
+        catch (SQLException e)
+        {
+          // ignore
+        }
+      }
+    }
+  }
+
+  private int countRows(ObjectIdentifierDB idGen, String categoryPattern)
+  {
+    Connection conn = null;
+    ResultSet result;
+
+    try
+    {
+      conn = idGen.getDataSource().getConnection();
+      result = conn.createStatement().executeQuery(String.format("SELECT COUNT(*) FROM OIDADMIN WHERE CATEGORY LIKE '%s'", categoryPattern));
+      assertTrue(result.next());
+      return result.getInt(1);
+    }
+    catch (SQLException e)
+    {
+      throw new RuntimeException(e);
+    }
+    finally
+    {
+      idGen.closeConnection(conn);
+    }
+  }
+
+  private int readBlockSizeColumn(ObjectIdentifierDB idGen)
+  {
+    Connection conn = null;
+    ResultSet result;
+
+    try
+    {
+      conn = idGen.getDataSource().getConnection();
+      result = conn.createStatement().executeQuery(String.format("SELECT BLOCKSIZE FROM OIDADMIN WHERE CATEGORY = '%s'", idGen.getCategory()));
+      assertTrue(result.next());
+      return result.getInt(1);
+    }
+    catch (SQLException e)
+    {
+      throw new RuntimeException(e);
+    }
+    finally
+    {
+      idGen.closeConnection(conn);
+    }
+  }
+
+  private void join(Thread thread)
+  {
+    try
+    {
+      thread.join();
+    }
+    catch (InterruptedException e)
+    {
+      e.printStackTrace();
+    }
+  }
+
   private Runnable createRunnable(final ObjectIdGenerator idGenerator, final Collection<String> ids)
   {
     final ObjectIdGenerator idGen;
@@ -155,6 +1063,11 @@ public class ObjectIdentifierDBTest
   }
 
   private ObjectIdentifierDB createIdGenerator1(int blockSize)
+  {
+    return createIdGenerator1Builder(blockSize).build();
+  }
+
+  private ObjectIdentifierDBBuilder createIdGenerator1Builder(int blockSize)
   {
     //@formatter:off
     return ObjectIdentifierDBBuilder.create(createNewDatabase1())
@@ -162,8 +1075,7 @@ public class ObjectIdentifierDBTest
         .setPrefix("A:")
         .setStartId(500)
         .setLength(10)
-        .setBlockSize(blockSize)
-        .build();
+        .setBlockSize(blockSize);
     //@formatter:on
   }
 
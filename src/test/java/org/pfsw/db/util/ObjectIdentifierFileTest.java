@@ -0,0 +1,253 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.pfsw.bif.identifier.IdentifierGenerationException;
+
+public class ObjectIdentifierFileTest
+{
+  @Test
+  public void test_nextIdentifier__restart_after_close()
+  {
+    File directory = createNewJournalDirectory();
+    ObjectIdentifierFile idGen = ObjectIdentifierFile.open(directory, "Alpha", 100).setBlockSize(10);
+
+    for (int i = 100; i < 125; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    idGen.close();
+    assertTrue(idGen.isClosed());
+
+    idGen = ObjectIdentifierFile.open(directory, "Alpha", 100);
+    idGen.setPrefix("F-");
+    idGen.setLength(5);
+    assertEquals("F-00125", idGen.newIdentifier());
+    idGen.close();
+  }
+
+  @Test
+  public void test_nextIdentifier__high_water_mark_written_ahead() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    ObjectIdentifierFile idGen = ObjectIdentifierFile.open(directory, "Alpha", 100).setBlockSize(10).setBlocksPerForce(3);
+
+    try
+    {
+      assertEquals(100, idGen.nextIdentifier());
+      assertEquals(130, readHighWaterMark(idGen.getFile()));
+      for (int i = 101; i < 130; i++)
+      {
+        assertEquals(i, idGen.nextIdentifier());
+      }
+      assertEquals(1, idGen.getForceCount());
+      assertEquals(130, idGen.nextIdentifier());
+      assertEquals(160, readHighWaterMark(idGen.getFile()));
+      assertEquals(2, idGen.getForceCount());
+    }
+    finally
+    {
+      idGen.close();
+    }
+    assertEquals(131, readHighWaterMark(idGen.getFile()));
+  }
+
+  @Test
+  public void test_reserveIdentifiers()
+  {
+    ObjectIdentifierFile idGen = ObjectIdentifierFile.open(createNewJournalDirectory(), "Alpha", 1).setBlockSize(10);
+    IdRange range;
+
+    try
+    {
+      assertEquals(1, idGen.nextIdentifier());
+      range = idGen.reserveIdentifiers(5);
+      assertEquals(2, range.getStart());
+      range = idGen.reserveIdentifiers(50);
+      assertEquals(11, range.getStart());
+      assertEquals(60, range.getLast());
+      assertEquals(7, idGen.nextIdentifier());
+    }
+    finally
+    {
+      idGen.close();
+    }
+  }
+
+  @Test
+  public void test_reserveIdentifiers__skips_rest_of_block()
+  {
+    ObjectIdentifierFile idGen = ObjectIdentifierFile.open(createNewJournalDirectory(), "Alpha", 1).setBlockSize(10);
+    IdRange range;
+
+    try
+    {
+      assertEquals(1, idGen.nextIdentifier());
+      range = idGen.reserveIdentifiers(5);
+      assertEquals(2, range.getStart());
+      // Only 3 IDs left in the current block: they are skipped
+      range = idGen.reserveIdentifiers(5);
+      assertEquals(11, range.getStart());
+      assertEquals(15, range.getLast());
+      assertEquals(16, idGen.nextIdentifier());
+    }
+    finally
+    {
+      idGen.close();
+    }
+  }
+
+  @Test
+  public void test_nextIdentifier__parallel()
+  {
+    final ObjectIdentifierFile idGen = ObjectIdentifierFile.open(createNewJournalDirectory(), "Alpha", 1).setBlockSize(7);
+    final Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+    Thread[] threads = new Thread[4];
+
+    for (int i = 0; i < threads.length; i++)
+    {
+      threads[i] = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (int j = 0; j < 1000; j++)
+          {
+            ids.add(idGen.nextIdentifier());
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+    {
+      try
+      {
+        thread.join();
+      }
+      catch (InterruptedException e)
+      {
+        fail(e.toString());
+      }
+    }
+    idGen.close();
+    assertEquals(4000, ids.size());
+  }
+
+  @Test
+  public void test_open__already_in_use()
+  {
+    File directory = createNewJournalDirectory();
+    ObjectIdentifierFile idGen = ObjectIdentifierFile.open(directory, "Alpha", 1);
+
+    try
+    {
+      ObjectIdentifierFile.open(directory, "Alpha", 1);
+      fail("Expected IdentifierGenerationException");
+    }
+    catch (IdentifierGenerationException e)
+    {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    finally
+    {
+      idGen.close();
+    }
+  }
+
+  @Test(expected = IdentifierGenerationException.class)
+  public void test_open__corrupted_file() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    ObjectIdentifierFile idGen = ObjectIdentifierFile.open(directory, "Alpha", 1);
+    RandomAccessFile file;
+
+    idGen.nextIdentifier();
+    idGen.close();
+    file = new RandomAccessFile(idGen.getFile(), "rw");
+    file.seek(16);
+    file.writeLong(3);
+    file.seek(40);
+    file.writeLong(3);
+    file.close();
+    ObjectIdentifierFile.open(directory, "Alpha", 1);
+  }
+
+  @Test
+  public void test_open__torn_write_of_last_mark() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    ObjectIdentifierFile idGen = ObjectIdentifierFile.open(directory, "Alpha", 1).setBlockSize(10).setBlocksPerForce(1);
+    RandomAccessFile file;
+
+    for (int i = 1; i <= 11; i++)
+    {
+      assertEquals(i, idGen.nextIdentifier());
+    }
+    assertEquals(21, readHighWaterMark(idGen.getFile()));
+    idGen.close();
+    // The mark of close() is in the second slot, the one of the second block in the first slot
+    file = new RandomAccessFile(idGen.getFile(), "rw");
+    file.seek(40);
+    file.writeLong(5);
+    file.close();
+    idGen = ObjectIdentifierFile.open(directory, "Alpha", 1);
+    try
+    {
+      assertEquals(21, idGen.nextIdentifier());
+    }
+    finally
+    {
+      idGen.close();
+    }
+  }
+
+  @Test
+  public void test_register_in_multi_category_generator()
+  {
+    DefaultMultiCategoryIdentifierGenerator generator = new DefaultMultiCategoryIdentifierGenerator();
+    File directory = createNewJournalDirectory();
+
+    generator.register("Alpha", ObjectIdentifierFile.open(directory, "Alpha", 10));
+    generator.register("Beta", ObjectIdentifierFile.open(directory, "Beta", 20));
+    assertEquals(10, generator.nextIdentifier("Alpha"));
+    assertEquals(20, generator.nextIdentifier("Beta"));
+    generator.close();
+  }
+
+  // ======================== helper methods =================================
+
+  private long readHighWaterMark(File file) throws IOException
+  {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    long sequence;
+    long mark;
+
+    try
+    {
+      // Two slots of sequence, mark and checksum, the higher sequence wins
+      randomAccessFile.seek(8);
+      sequence = randomAccessFile.readLong();
+      mark = randomAccessFile.readLong();
+      randomAccessFile.seek(32);
+      if (randomAccessFile.readLong() > sequence)
+      {
+        mark = randomAccessFile.readLong();
+      }
+      return mark;
+    }
+    finally
+    {
+      randomAccessFile.close();
+    }
+  }
+}
@@ -78,4 +78,26 @@ public class ObjectIdentifierGeneratorTest
     assertEquals("202", idGen.newIdentifier());
     assertEquals("203", idGen.newIdentifier());
   }
+
+  @Test
+  public void test_reserveIdentifiers()
+  {
+    ObjectIdentifierGenerator idGen;
+    IdRange range;
+
+    idGen = new ObjectIdentifierGenerator(200, 2);
+
+    assertEquals("200", idGen.newIdentifier());
+    range = idGen.reserveIdentifiers(3);
+    assertEquals(201, range.getStart());
+    assertEquals(3, range.getCount());
+    assertArrayEquals(new long[] { 201, 202, 203 }, range.toArray());
+    assertEquals("204", idGen.newIdentifier());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_reserveIdentifiers__invalid_count()
+  {
+    new ObjectIdentifierGenerator().reserveIdentifiers(0);
+  }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.pfsw.db.DatabaseAccessException;
+
+public class SequenceIdentifierDBTest
+{
+  @Test
+  public void test_toString()
+  {
+    ObjectIdentifierDB idGen = ObjectIdentifierDBBuilder.createForSequence(createNewDatabase1()).setCategory("order-item").build();
+
+    assertEquals("SequenceIdentifierDB('OIDADMIN_ORDER_ITEM')", idGen.toString());
+    idGen = ObjectIdentifierDBBuilder.createForSequence(createNewDatabase1()).setCategory("Alpha").setSequenceName("SEQ_A").build();
+    assertEquals("SequenceIdentifierDB('SEQ_A')", idGen.toString());
+  }
+
+  @Test
+  public void test_nextIdentifier__blocks()
+  {
+    DataSource dataSource = createNewDatabase1();
+    ObjectIdentifierDB idGen1 = createIdGenerator(dataSource);
+    ObjectIdentifierDB idGen2 = createIdGenerator(dataSource);
+
+    assertEquals("S-00500", idGen1.newIdentifier());
+    assertEquals("S-00510", idGen2.newIdentifier());
+    for (int i = 501; i < 510; i++)
+    {
+      assertEquals(i, idGen1.nextIdentifier());
+    }
+    assertEquals(520, idGen1.nextIdentifier());
+    assertEquals(511, idGen2.nextIdentifier());
+  }
+
+  @Test
+  public void test_nextIdentifier__lock_free_parallel()
+  {
+    final ObjectIdentifierDB idGen = createIdGenerator(createNewDatabase1());
+    final Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+    Thread[] threads = new Thread[4];
+
+    idGen.setLockFree(true);
+    for (int i = 0; i < threads.length; i++)
+    {
+      threads[i] = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (int j = 0; j < 100; j++)
+          {
+            ids.add(idGen.nextIdentifier());
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+    {
+      try
+      {
+        thread.join();
+      }
+      catch (InterruptedException e)
+      {
+        fail(e.toString());
+      }
+    }
+    assertEquals(400, ids.size());
+    assertTrue(ids.contains(500L));
+    assertTrue(ids.contains(899L));
+  }
+
+  @Test
+  public void test_reserveIdentifiers()
+  {
+    ObjectIdentifierDB idGen = createIdGenerator(createNewDatabase1());
+    IdRange range;
+
+    assertEquals(500, idGen.nextIdentifier());
+    range = idGen.reserveIdentifiers(9);
+    assertEquals(501, range.getStart());
+    range = idGen.reserveIdentifiers(10);
+    assertEquals(510, range.getStart());
+    assertEquals(519, range.getLast());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_reserveIdentifiers__more_than_increment()
+  {
+    createIdGenerator(createNewDatabase1()).reserveIdentifiers(11);
+  }
+
+  @Test
+  public void test_nextIdentifier__increment_of_existing_sequence()
+  {
+    DataSource dataSource = createNewDatabase1();
+    ObjectIdentifierDB idGen1 = createIdGenerator(dataSource);
+    ObjectIdentifierDB idGen2 = createIdGeneratorBuilder(dataSource).setBlockSize(20).build();
+
+    assertEquals(500, idGen1.nextIdentifier());
+    // A block of 20 would overlap with the next block of the other generator
+    assertEquals(510, idGen2.nextIdentifier());
+    assertEquals(10, idGen2.getBlockSize());
+    for (int i = 511; i < 520; i++)
+    {
+      assertEquals(i, idGen2.nextIdentifier());
+    }
+    assertEquals(520, idGen2.nextIdentifier());
+    assertEquals(501, idGen1.nextIdentifier());
+  }
+
+  @Test(expected = DatabaseAccessException.class)
+  public void test_nextIdentifier__sequence_cannot_be_created()
+  {
+    createIdGeneratorBuilder(createNewDatabase1()).setSequenceName("UNKNOWN_SCHEMA.SEQ_S").build().nextIdentifier();
+  }
+
+  // ======================== helper methods =================================
+
+  private ObjectIdentifierDB createIdGenerator(DataSource dataSource)
+  {
+    return createIdGeneratorBuilder(dataSource).build();
+  }
+
+  private ObjectIdentifierDBBuilder createIdGeneratorBuilder(DataSource dataSource)
+  {
+    //@formatter:off
+    return ObjectIdentifierDBBuilder.createForSequence(dataSource)
+        .setCategory("Sigma")
+        .setPrefix("S-")
+        .setStartId(500)
+        .setLength(5)
+        .setBlockSize(10);
+    //@formatter:on
+  }
+}
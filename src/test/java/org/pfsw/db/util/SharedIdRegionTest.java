@@ -0,0 +1,168 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+public class SharedIdRegionTest
+{
+  @Test
+  public void test_take__refills_when_drained() throws IOException
+  {
+    SharedIdRegion region = SharedIdRegion.open(createNewJournalDirectory(), "OIDADMIN_Alpha");
+    BlockSource source = new BlockSource(100, 25);
+    IdRange range;
+
+    try
+    {
+      assertEquals(0, region.getRemainingCount());
+      range = region.take(10, source);
+      assertEquals(100, range.getStart());
+      assertEquals(109, range.getLast());
+      assertEquals(15, region.getRemainingCount());
+      assertEquals(110, region.take(10, source).getStart());
+      range = region.take(10, source);
+      assertEquals(120, range.getStart());
+      assertEquals(124, range.getLast());
+      assertEquals(125, region.take(10, source).getStart());
+      assertEquals(2, region.getRefillCount());
+      assertEquals(2, source.calls);
+    }
+    finally
+    {
+      region.close();
+    }
+  }
+
+  @Test
+  public void test_take__shared_by_two_instances() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    SharedIdRegion region1 = SharedIdRegion.open(directory, "OIDADMIN_Alpha");
+    SharedIdRegion region2 = SharedIdRegion.open(directory, "OIDADMIN_Alpha");
+    BlockSource source = new BlockSource(1, 100);
+
+    try
+    {
+      assertEquals(1, region1.take(10, source).getStart());
+      assertEquals(11, region2.take(10, source).getStart());
+      assertEquals(21, region1.take(10, source).getStart());
+      assertEquals(70, region2.getRemainingCount());
+      assertEquals(1, region1.getRefillCount());
+      assertEquals(0, region2.getRefillCount());
+    }
+    finally
+    {
+      region1.close();
+      region2.close();
+    }
+  }
+
+  @Test
+  public void test_take__survives_reopen() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    SharedIdRegion region = SharedIdRegion.open(directory, "OIDADMIN_Alpha");
+    BlockSource source = new BlockSource(1, 100);
+
+    region.take(30, source);
+    region.close();
+    region = SharedIdRegion.open(directory, "OIDADMIN_Alpha");
+    try
+    {
+      assertEquals(31, region.take(30, source).getStart());
+      assertEquals(1, source.calls);
+    }
+    finally
+    {
+      region.close();
+    }
+  }
+
+  @Test
+  public void test_take__forces_high_water_mark() throws IOException
+  {
+    File directory = createNewJournalDirectory();
+    SharedIdRegion region = SharedIdRegion.open(directory, "OIDADMIN_Alpha").setChunksPerForce(3);
+    SharedIdRegion reopened;
+    BlockSource source = new BlockSource(1, 100);
+
+    try
+    {
+      assertEquals(1, region.take(10, source).getStart());
+      assertEquals(1, region.getForceCount());
+      assertEquals(11, region.take(10, source).getStart());
+      assertEquals(21, region.take(10, source).getStart());
+      assertEquals(1, region.getForceCount());
+      assertEquals(31, region.take(10, source).getStart());
+      assertEquals(2, region.getForceCount());
+      // Like a restart after an OS crash, the IDs up to the mark might have been handed out
+      reopened = SharedIdRegion.open(directory, "OIDADMIN_Alpha");
+      try
+      {
+        assertEquals(61, reopened.take(10, source).getStart());
+      }
+      finally
+      {
+        reopened.close();
+      }
+    }
+    finally
+    {
+      region.close();
+    }
+  }
+
+  @Test
+  public void test_take__refill_returns_null() throws IOException
+  {
+    SharedIdRegion region = SharedIdRegion.open(createNewJournalDirectory(), "OIDADMIN_Alpha");
+
+    try
+    {
+      assertNull(region.take(10, new Callable<IdRange>()
+      {
+        @Override
+        public IdRange call()
+        {
+          return null;
+        }
+      }));
+      assertEquals(0, region.getRemainingCount());
+    }
+    finally
+    {
+      region.close();
+    }
+  }
+
+  // ======================== helper classes =================================
+
+  private static class BlockSource implements Callable<IdRange>
+  {
+    private long nextStart;
+    private final int blockSize;
+    int calls = 0;
+
+    BlockSource(long start, int blockSize)
+    {
+      this.nextStart = start;
+      this.blockSize = blockSize;
+    }
+
+    @Override
+    public IdRange call()
+    {
+      IdRange block = IdRange.create(nextStart, blockSize);
+
+      nextStart = block.getLast() + 1;
+      calls++;
+      return block;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package org.pfsw.db.util;
+
+import static org.junit.Assert.*;
+import static org.pfsw.db.util.testhelper.UnitTestHelper.*;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.pfsw.bif.identifier.IdentifierGenerationException;
+
+public class TimeBasedIdentifierGeneratorTest
+{
+  private static final long NOW = 1800000000000L;
+
+  @Test
+  public void test_nextIdentifier__ascending()
+  {
+    TimeBasedIdentifierGenerator idGen = TimeBasedIdentifierGenerator.create(5);
+    long start = System.currentTimeMillis();
+    long last = -1;
+    long id;
+
+    for (int i = 0; i < 10000; i++)
+    {
+      id = idGen.nextIdentifier();
+      assertTrue(id > last);
+      last = id;
+    }
+    assertEquals(5, idGen.nodeIdOf(last));
+    assertTrue(idGen.timestampOf(last) >= start);
+    assertTrue(idGen.timestampOf(last) <= System.currentTimeMillis() + idGen.getMaxClockSkewMillis());
+  }
+
+  @Test
+  public void test_nextIdentifier__sequence_exhausted()
+  {
+    ManualClockGenerator idGen = new ManualClockGenerator(1);
+    long id = 0;
+
+    for (int i = 0; i < TimeBasedIdentifierGenerator.SEQUENCES_PER_MILLI; i++)
+    {
+      id = idGen.nextIdentifier();
+      assertEquals(NOW, idGen.timestampOf(id));
+    }
+    id = idGen.nextIdentifier();
+    assertEquals(NOW + 1, idGen.timestampOf(id));
+    assertEquals(1, idGen.nodeIdOf(id));
+  }
+
+  @Test
+  public void test_nextIdentifier__clock_moved_backwards()
+  {
+    ManualClockGenerator idGen = new ManualClockGenerator(1);
+    long id1;
+    long id2;
+
+    id1 = idGen.nextIdentifier();
+    idGen.clock = NOW - 500;
+    id2 = idGen.nextIdentifier();
+    assertTrue(id2 > id1);
+    assertEquals(NOW, idGen.timestampOf(id2));
+    idGen.clock = NOW - 5000;
+    try
+    {
+      idGen.nextIdentifier();
+      fail("Expected IdentifierGenerationException");
+    }
+    catch (IdentifierGenerationException e)
+    {
+      assertTrue(e.getMessage().contains("backwards"));
+    }
+  }
+
+  @Test
+  public void test_reserveIdentifiers()
+  {
+    ManualClockGenerator idGen = new ManualClockGenerator(3);
+    IdRange range;
+
+    idGen.nextIdentifier();
+    range = idGen.reserveIdentifiers(TimeBasedIdentifierGenerator.SEQUENCES_PER_MILLI);
+    assertEquals(NOW + 1, idGen.timestampOf(range.getStart()));
+    assertEquals(NOW + 1, idGen.timestampOf(range.getLast()));
+    assertEquals(idGen.timestampOf(range.getLast()) + 1, idGen.timestampOf(idGen.nextIdentifier()));
+  }
+
+  @Test
+  public void test_nextIdentifier__leased_node_ids()
+  {
+    DataSource ds = createNewDatabase1();
+    TimeBasedIdentifierGenerator idGen1 = TimeBasedIdentifierGenerator.create(ds, "Alpha");
+    TimeBasedIdentifierGenerator idGen2 = TimeBasedIdentifierGenerator.create(ds, "Alpha");
+    DefaultMultiCategoryIdentifierGenerator multiGen = new DefaultMultiCategoryIdentifierGenerator();
+
+    assertEquals(0, idGen1.getNodeId());
+    assertEquals(1, idGen2.getNodeId());
+    assertEquals(1, idGen2.nodeIdOf(idGen2.nextIdentifier()));
+    multiGen.register("Alpha", idGen1);
+    assertEquals(0, idGen1.nodeIdOf(multiGen.nextIdentifier("Alpha")));
+    idGen1.close();
+    assertTrue(idGen1.isClosed());
+    assertFalse(idGen1.getLease().isHeld());
+    idGen2.close();
+  }
+
+  @Test
+  public void test_nextIdentifier__lease_expired()
+  {
+    DataSource ds = createNewDatabase1();
+    TimeBasedIdentifierGenerator idGen;
+
+    idGen = new TimeBasedIdentifierGenerator(NodeIdLease.create(ds, "Alpha"))
+    {
+      @Override
+      protected long currentTimeMillis()
+      {
+        return System.currentTimeMillis() + 2 * NodeIdLease.DEFAULT_LEASE_MILLIS;
+      }
+    };
+    try
+    {
+      idGen.nextIdentifier();
+      fail("Expected IdentifierGenerationException");
+    }
+    catch (IdentifierGenerationException e)
+    {
+      assertTrue(e.getMessage().contains("expired"));
+    }
+    finally
+    {
+      idGen.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_create__invalid_node_id()
+  {
+    TimeBasedIdentifierGenerator.create(TimeBasedIdentifierGenerator.MAX_NODE_ID + 1);
+  }
+
+  // ======================== helper classes =================================
+
+  private static class ManualClockGenerator extends TimeBasedIdentifierGenerator
+  {
+    long clock = NOW;
+
+    ManualClockGenerator(int nodeId)
+    {
+      super(nodeId);
+    }
+
+    @Override
+    protected long currentTimeMillis()
+    {
+      return clock;
+    }
+  }
+}
@@ -20,6 +20,7 @@ public class UnitTestHelper
   public static final boolean DEBUG = "true".equals(System.getProperty("unittest.debug", "false"));
   
   public static final String DB_FILE_PATH = getTempFolder() + "/database/h2/unittest/pf-db";
+  public static final String JOURNAL_DIR_PATH = getTempFolder() + "/journal/unittest";
 
   public static DataSource createNewDatabase1()
   {
@@ -32,6 +33,20 @@ public class UnitTestHelper
     return new DataSourceProxy("jdbc:h2:file:" + DB_FILE_PATH, "sa", "");
   }
   
+  public static File createNewJournalDirectory()
+  {
+    File directory = new File(JOURNAL_DIR_PATH);
+    File[] files;
+
+    directory.mkdirs();
+    files = directory.listFiles();
+    for (File file : files)
+    {
+      deleteFile(file.getPath());
+    }
+    return directory;
+  }
+
   public static void deleteH2Database(String databasePath)
   {
     deleteFile(databasePath + ".trace.db");